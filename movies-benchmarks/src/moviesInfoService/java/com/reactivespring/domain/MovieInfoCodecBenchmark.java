@@ -0,0 +1,68 @@
+package com.reactivespring.domain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a movie info as the service answers it and decoding the body of a POST.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MovieInfoCodecBenchmark {
+
+    private static final ResolvableType MOVIE_INFO_TYPE = ResolvableType.forClass(MovieInfo.class);
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private Jackson2JsonEncoder encoder;
+    private Jackson2JsonDecoder decoder;
+    private MovieInfo movieInfo;
+    private byte[] movieInfoJson;
+
+    @Setup
+    public void setUp() {
+        var objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        encoder = new Jackson2JsonEncoder(objectMapper);
+        decoder = new Jackson2JsonDecoder(objectMapper);
+        movieInfo = new MovieInfo("abc", "Dark Knight Rises", 2012,
+                List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+
+        var buffer = encodeMovieInfo();
+        movieInfoJson = new byte[buffer.readableByteCount()];
+        buffer.read(movieInfoJson);
+        DataBufferUtils.release(buffer);
+    }
+
+    @Benchmark
+    public DataBuffer encodeMovieInfo() {
+        return encoder.encodeValue(movieInfo, bufferFactory, MOVIE_INFO_TYPE, MediaType.APPLICATION_JSON, null);
+    }
+
+    @Benchmark
+    public Object decodeMovieInfo() {
+        return decoder.decode(bufferFactory.wrap(movieInfoJson), MOVIE_INFO_TYPE, MediaType.APPLICATION_JSON, null);
+    }
+}
@@ -0,0 +1,55 @@
+package com.reactivespring.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The UriComponentsBuilder round trip ReviewsRestClient makes for every lookup, parsing the configured
+ * base url each time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ReviewsUrlBenchmark {
+
+    private static final String REVIEWS_URL = "http://localhost:8081/v1/reviews";
+
+    @Param({"1", "100"})
+    int movieCount;
+
+    private List<String> movieIds;
+
+    @Setup
+    public void setUp() {
+        movieIds = IntStream.range(0, movieCount)
+                .mapToObj(i -> String.valueOf(1000 + i))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public String reviewsByMovieUrl() {
+        return ReviewsRestClient.reviewsByMovieUrl(REVIEWS_URL, movieIds.get(0));
+    }
+
+    @Benchmark
+    public String reviewsByMoviesUrl() {
+        return ReviewsRestClient.reviewsByMoviesUrl(REVIEWS_URL, movieIds);
+    }
+}
@@ -0,0 +1,99 @@
+package com.reactivespring.domain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The JSON work of GET /v1/movies/{id}: decoding the movie info and the reviews the downstream services
+ * answer, the reviews as the tokenized array bodyToFlux reads, and encoding the Movie answered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MovieCodecBenchmark {
+
+    private static final ResolvableType MOVIE_TYPE = ResolvableType.forClass(Movie.class);
+    private static final ResolvableType MOVIE_INFO_TYPE = ResolvableType.forClass(MovieInfo.class);
+    private static final ResolvableType REVIEW_TYPE = ResolvableType.forClass(Review.class);
+
+    @Param({"0", "10", "100"})
+    int reviewCount;
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private Jackson2JsonEncoder encoder;
+    private Jackson2JsonDecoder decoder;
+    private Movie movie;
+    private byte[] movieInfoJson;
+    private byte[] reviewsJson;
+
+    @Setup
+    public void setUp() {
+        var objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        encoder = new Jackson2JsonEncoder(objectMapper);
+        decoder = new Jackson2JsonDecoder(objectMapper);
+
+        var movieInfo = new MovieInfo("abc", "Batman Begins", 2005,
+                List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+        var reviews = IntStream.range(0, reviewCount)
+                .mapToObj(i -> new Review(String.valueOf(i), 1L, "Awesome Movie " + i, 8.5))
+                .collect(Collectors.toList());
+        movie = new Movie(movieInfo, reviews);
+        movieInfoJson = toBytes(encode(movieInfo, MOVIE_INFO_TYPE));
+        reviewsJson = toBytes(encode(reviews, ResolvableType.forClassWithGenerics(List.class, Review.class)));
+    }
+
+    @Benchmark
+    public DataBuffer encodeMovie() {
+        return encode(movie, MOVIE_TYPE);
+    }
+
+    @Benchmark
+    public Object decodeMovieInfo() {
+        return decoder.decode(bufferFactory.wrap(movieInfoJson), MOVIE_INFO_TYPE, MediaType.APPLICATION_JSON, null);
+    }
+
+    @Benchmark
+    public List<Object> decodeReviews() {
+        return decoder.decode(Flux.just(bufferFactory.wrap(reviewsJson)), REVIEW_TYPE, MediaType.APPLICATION_JSON, null)
+                .collectList()
+                .block();
+    }
+
+    private DataBuffer encode(Object value, ResolvableType type) {
+        return encoder.encodeValue(value, bufferFactory, type, MediaType.APPLICATION_JSON, null);
+    }
+
+    private static byte[] toBytes(DataBuffer buffer) {
+        var bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        DataBufferUtils.release(buffer);
+        return bytes;
+    }
+}
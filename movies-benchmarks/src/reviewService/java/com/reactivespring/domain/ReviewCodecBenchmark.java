@@ -0,0 +1,65 @@
+package com.reactivespring.domain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a review as the service answers it and decoding the body of a POST or PUT.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ReviewCodecBenchmark {
+
+    private static final ResolvableType REVIEW_TYPE = ResolvableType.forClass(Review.class);
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private Jackson2JsonEncoder encoder;
+    private Jackson2JsonDecoder decoder;
+    private Review review;
+    private byte[] reviewJson;
+
+    @Setup
+    public void setUp() {
+        var objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        encoder = new Jackson2JsonEncoder(objectMapper);
+        decoder = new Jackson2JsonDecoder(objectMapper);
+        review = new Review("6154b7a3e5ba4a1f7c8d9e0f", 1L, "Awesome Movie", 9.0);
+
+        var buffer = encodeReview();
+        reviewJson = new byte[buffer.readableByteCount()];
+        buffer.read(reviewJson);
+        DataBufferUtils.release(buffer);
+    }
+
+    @Benchmark
+    public DataBuffer encodeReview() {
+        return encoder.encodeValue(review, bufferFactory, REVIEW_TYPE, MediaType.APPLICATION_JSON, null);
+    }
+
+    @Benchmark
+    public Object decodeReview() {
+        return decoder.decode(bufferFactory.wrap(reviewJson), REVIEW_TYPE, MediaType.APPLICATION_JSON, null);
+    }
+}
@@ -0,0 +1,59 @@
+package com.reactivespring.exceptionHandler;
+
+import com.reactivespring.exception.ReviewDataException;
+import com.reactivespring.exception.ReviewNotFoundException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning an exception into the status and plain text body of the error response. Every invocation
+ * needs a fresh exchange, exchangeOnly measures that part on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GlobalErrorHandlerBenchmark {
+
+    private final GlobalErrorHandler globalErrorHandler = new GlobalErrorHandler();
+    private final ReviewDataException dataException =
+            new ReviewDataException("rating.movieInfoId : must not be null,rating.negative : please pass a non-negative value");
+    private final ReviewNotFoundException notFoundException =
+            new ReviewNotFoundException("Review not found for given Review id 6154b7a3e5ba4a1f7c8d9e0f");
+
+    @Benchmark
+    public MockServerWebExchange exchangeOnly() {
+        return exchange();
+    }
+
+    @Benchmark
+    public MockServerWebExchange reviewDataException() {
+        var exchange = exchange();
+        globalErrorHandler.handle(exchange, dataException).block();
+        return exchange;
+    }
+
+    @Benchmark
+    public MockServerWebExchange reviewNotFoundException() {
+        var exchange = exchange();
+        globalErrorHandler.handle(exchange, notFoundException).block();
+        return exchange;
+    }
+
+    private static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.put("/v1/reviews/6154b7a3e5ba4a1f7c8d9e0f"));
+    }
+}
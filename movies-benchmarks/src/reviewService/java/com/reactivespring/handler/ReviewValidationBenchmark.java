@@ -0,0 +1,68 @@
+package com.reactivespring.handler;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewDataException;
+import com.reactivespring.stream.StreamSubscriberPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.ReflectionUtils;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bean Validation of one review in ReviewHandler.validate, for a valid review and for one that fails
+ * both constraints and is answered with a ReviewDataException.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ReviewValidationBenchmark {
+
+    private ReviewHandler reviewHandler;
+    private Review validReview;
+    private Review invalidReview;
+
+    @Setup
+    public void setUp() {
+        reviewHandler = new ReviewHandler(null, null, null, null, new SimpleMeterRegistry(),
+                StreamSubscriberPolicy.Overflow.DROP_OLDEST, 256, 10000, Duration.ofSeconds(15));
+        var validatorField = ReflectionUtils.findField(ReviewHandler.class, "validator");
+        ReflectionUtils.makeAccessible(validatorField);
+        ReflectionUtils.setField(validatorField, reviewHandler,
+                Validation.buildDefaultValidatorFactory().getValidator());
+
+        validReview = new Review(null, 1L, "Awesome Movie", 9.0);
+        invalidReview = new Review(null, null, "Awesome Movie", -9.0);
+    }
+
+    @Benchmark
+    public Review validReview() {
+        reviewHandler.validate(validReview);
+        return validReview;
+    }
+
+    @Benchmark
+    public Object invalidReview() {
+        try {
+            reviewHandler.validate(invalidReview);
+            return invalidReview;
+        } catch (ReviewDataException e) {
+            return e;
+        }
+    }
+}
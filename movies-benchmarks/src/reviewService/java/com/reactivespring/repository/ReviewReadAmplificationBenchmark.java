@@ -0,0 +1,221 @@
+package com.reactivespring.repository;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBucket;
+import com.reactivespring.service.ReviewBucketMigration;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfig;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Reads of the review endpoints against the review collection and against review buckets, on a real
+ * mongod: the embedded one, or the one given with -Dbenchmark.mongoUri (its "benchmark" database is dropped).
+ * Besides reads per second each benchmark reports the documents and BSON bytes the driver received,
+ * divided by the reads per second they give the read amplification of a layout. Counting re-encodes the
+ * received documents, which costs both layouts alike. firstPage receives the same page from both, the
+ * bucketed layout as the one or two buckets holding it. The bucket layout is built with
+ * ReviewBucketMigration from the seeded review collection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReviewReadAmplificationBenchmark {
+
+    private static final int MOVIES = 10;
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"document", "bucketed"})
+    public String layout;
+
+    @Param({"100", "10000"})
+    public int reviewsPerMovie;
+
+    @Param({"200"})
+    public int maxReviewsPerBucket;
+
+    private final AtomicLong documentsReceived = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private MongodExecutable mongod;
+    private MongoClient mongoClient;
+    private ReviewReactorRepositoryImpl repository;
+    private List<String> reviewIds;
+    private int next;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Received {
+        public long documents;
+        public long bytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var mongoUri = System.getProperty("benchmark.mongoUri");
+        if (mongoUri == null) {
+            var port = Network.getFreeServerPort();
+            mongod = MongodStarter.getDefaultInstance().prepare(MongodConfig.builder()
+                    .version(Version.Main.PRODUCTION)
+                    .net(new Net(port, Network.localhostIsIPv6()))
+                    .build());
+            mongod.start();
+            mongoUri = "mongodb://localhost:" + port;
+        }
+        mongoClient = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(mongoUri))
+                .addCommandListener(new ReceivedDocuments())
+                .build());
+        var mongoTemplate = new ReactiveMongoTemplate(mongoClient, "benchmark");
+        mongoTemplate.getMongoDatabase().flatMap(database -> Mono.from(database.drop())).block();
+        var indexResolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        for (var entityType : List.of(Review.class, ReviewBucket.class)) {
+            indexResolver.resolveIndexFor(entityType)
+                    .forEach(index -> mongoTemplate.indexOps(entityType).ensureIndex(index).block());
+        }
+
+        reviewIds = seed(mongoTemplate);
+        var bucketed = layout.equals("bucketed");
+        if (bucketed) {
+            new ReviewBucketMigration(mongoTemplate, false, maxReviewsPerBucket).migrate().block();
+        }
+        repository = new ReviewReactorRepositoryImpl(mongoTemplate, bucketed, maxReviewsPerBucket);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mongoClient.close();
+        if (mongod != null) {
+            mongod.stop();
+        }
+    }
+
+    /**
+     * GET /v1/reviews?movieInfoId=
+     */
+    @Benchmark
+    public List<Review> movieReviews(Received received) {
+        return counted(received, () -> repository.findReviewsByMovieInfoId(nextMovieInfoId()).collectList().block());
+    }
+
+    /**
+     * GET /v1/reviews?movieInfoId=&limit=20, the handler asks for one review more
+     */
+    @Benchmark
+    public List<Review> firstPage(Received received) {
+        return counted(received, () -> repository.findPage(nextMovieInfoId(), null, 21).collectList().block());
+    }
+
+    /**
+     * The lookup of PUT, PATCH and DELETE /v1/reviews/{id}
+     */
+    @Benchmark
+    public Review reviewById(Received received) {
+        var reviewId = reviewIds.get(next++ % reviewIds.size());
+        return counted(received, () -> repository.findById(reviewId).block());
+    }
+
+    private long nextMovieInfoId() {
+        return next++ % MOVIES;
+    }
+
+    private <T> T counted(Received received, Supplier<T> read) {
+        var documentsBefore = documentsReceived.get();
+        var bytesBefore = bytesReceived.get();
+        var result = read.get();
+        received.documents += documentsReceived.get() - documentsBefore;
+        received.bytes += bytesReceived.get() - bytesBefore;
+        return result;
+    }
+
+    /**
+     * reviewsPerMovie reviews for each movie, with a comment of a typical length; the ids of a sample of them.
+     */
+    private List<String> seed(ReactiveMongoTemplate mongoTemplate) {
+        var random = new Random(42);
+        var sampleIds = new ArrayList<String>();
+        var batch = new ArrayList<Review>(BATCH_SIZE);
+        for (long movieInfoId = 0; movieInfoId < MOVIES; movieInfoId++) {
+            for (int i = 0; i < reviewsPerMovie; i++) {
+                batch.add(new Review(null, movieInfoId, "Review " + i + " " + "x".repeat(80 + random.nextInt(120)),
+                        Math.round(random.nextDouble() * 100) / 10.0));
+                if (batch.size() == BATCH_SIZE) {
+                    insert(mongoTemplate, batch, sampleIds);
+                }
+            }
+        }
+        insert(mongoTemplate, batch, sampleIds);
+        return sampleIds;
+    }
+
+    private static void insert(ReactiveMongoTemplate mongoTemplate, List<Review> batch, List<String> sampleIds) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        var inserted = mongoTemplate.insert(new ArrayList<>(batch), Review.class).collectList().block();
+        for (int i = 0; i < inserted.size(); i += 10) {
+            sampleIds.add(inserted.get(i).getReviewId());
+        }
+        batch.clear();
+    }
+
+    /**
+     * Counts the documents of every batch of a find, getMore or aggregate reply and their size as BSON.
+     */
+    private class ReceivedDocuments implements CommandListener {
+        @Override
+        public void commandSucceeded(CommandSucceededEvent event) {
+            var cursor = event.getResponse().getDocument("cursor", null);
+            if (cursor == null) {
+                return;
+            }
+            var batch = cursor.containsKey("firstBatch") ? cursor.getArray("firstBatch") : cursor.getArray("nextBatch", null);
+            if (batch == null) {
+                return;
+            }
+            documentsReceived.addAndGet(batch.size());
+            for (var document : batch) {
+                bytesReceived.addAndGet(new RawBsonDocument((BsonDocument) document, new BsonDocumentCodec())
+                        .getByteBuffer().remaining());
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * A used Idempotency-Key, {@code id} being the scope and the key. The response is missing while the
+ * first request with the key is still being written. Removed by a TTL index on {@code createdAt}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document("idempotencyKey")
+public class IdempotencyRecord {
+
+    @Id
+    private String id;
+    /** SHA-256 of the request body, a key is only replayed for the same request */
+    private String requestHash;
+    private Object response;
+    private Date createdAt;
+}
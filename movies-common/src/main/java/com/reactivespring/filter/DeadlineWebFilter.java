@@ -0,0 +1,46 @@
+package com.reactivespring.filter;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Honors the X-Request-Timeout-Ms header movies-service forwards with the milliseconds its caller still
+ * waits. Once they have passed the exchange is cancelled, the response body included, which cancels the
+ * Mongo query and closes its cursor; a 504 is answered if nothing has been sent yet.
+ */
+@Component
+public class DeadlineWebFilter implements WebFilter {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var header = exchange.getRequest().getHeaders().getFirst(TIMEOUT_HEADER);
+        if (header == null) {
+            return chain.filter(exchange);
+        }
+        long timeoutMillis;
+        try {
+            timeoutMillis = Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    TIMEOUT_HEADER + " must be a number of milliseconds : " + header));
+        }
+        if (timeoutMillis <= 0) {
+            return Mono.error(DeadlineWebFilter::deadlineExceeded);
+        }
+        return chain.filter(exchange)
+                .timeout(Duration.ofMillis(timeoutMillis), Mono.error(DeadlineWebFilter::deadlineExceeded));
+    }
+
+    private static ResponseStatusException deadlineExceeded() {
+        return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Deadline exceeded");
+    }
+}
@@ -0,0 +1,179 @@
+package com.reactivespring.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.domain.IdempotencyRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.function.Supplier;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Writes a create request carrying an Idempotency-Key header only once. The first request with a key
+ * claims it with a pending {@link IdempotencyRecord} and stores its response there once written, a retry
+ * with the same key gets that response back without writing again. A duplicate arriving while the first
+ * request is still being written waits for it: within this instance through the front cache, across
+ * instances by polling the record.
+ * Records expire after {@code ttl} through a TTL index. A pending record older than {@code pendingTimeout}
+ * is taken over, its writer is gone. A failed write releases the key, a write whose response could not be
+ * stored keeps it pending. Reusing a key for a different request answers 422.
+ */
+@Component
+@Slf4j
+public class IdempotentWrites {
+
+    public static final String HEADER = "Idempotency-Key";
+    static final int MAX_KEY_LENGTH = 255;
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(50);
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration pendingTimeout;
+    private final Cache<String, Claim> claims;
+    private final Mono<Void> ttlIndex;
+
+    public IdempotentWrites(ReactiveMongoTemplate mongoTemplate, ObjectMapper objectMapper,
+                            @Value("${idempotency.ttl:24h}") Duration ttl,
+                            @Value("${idempotency.cacheSize:10000}") long cacheSize,
+                            @Value("${idempotency.pendingTimeout:30s}") Duration pendingTimeout) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.pendingTimeout = pendingTimeout;
+        this.claims = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.ttlIndex = Mono.defer(() -> mongoTemplate.indexOps(IdempotencyRecord.class)
+                        .ensureIndex(new Index("createdAt", Sort.Direction.ASC).expire(ttl)))
+                .doOnError(ex -> log.warn("Could not create the TTL index of the idempotency keys", ex))
+                .onErrorResume(ex -> Mono.empty())
+                .then()
+                .cache();
+    }
+
+    /**
+     * Runs {@code write} unless a request with the same key was already written in {@code scope}, in which
+     * case its response is answered instead. Without a key every request is written.
+     */
+    public <T> Mono<T> execute(String scope, String key, Object request, Class<T> responseType,
+                               Supplier<Mono<T>> write) {
+        if (key == null) {
+            return write.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    HEADER + " must have 1 to " + MAX_KEY_LENGTH + " characters"));
+        }
+        var id = scope + ":" + key;
+        var requestHash = hash(request);
+        return Mono.defer(() -> {
+            var claim = claims.get(id, claimedId -> new Claim(claimedId, requestHash, write));
+            if (!claim.requestHash.equals(requestHash)) {
+                return Mono.error(keyReused());
+            }
+            return claim.response.map(responseType::cast);
+        });
+    }
+
+    private Mono<Object> claimOrReplay(String id, String requestHash, Supplier<? extends Mono<?>> write) {
+        var pending = new IdempotencyRecord(id, requestHash, null, new Date());
+        return ttlIndex.then(mongoTemplate.insert(pending)
+                        .map(inserted -> true)
+                        .onErrorResume(DuplicateKeyException.class, ex -> Mono.just(false)))
+                .flatMap(claimed -> claimed ? write(pending, write) : replay(id, requestHash, write));
+    }
+
+    private Mono<Object> write(IdempotencyRecord pending, Supplier<? extends Mono<?>> write) {
+        return write.get()
+                .<Object>map(response -> response)
+                .onErrorResume(ex -> mongoTemplate.remove(pendingRecord(pending), IdempotencyRecord.class)
+                        .then(Mono.error(ex)))
+                .flatMap(response -> mongoTemplate.save(new IdempotencyRecord(pending.getId(),
+                                pending.getRequestHash(), response, pending.getCreatedAt()))
+                        .thenReturn(response)
+                        // written already, releasing the key would let a retry write it again
+                        .onErrorResume(ex -> {
+                            log.warn("Could not store the response of idempotency key {}, it stays pending",
+                                    pending.getId(), ex);
+                            return Mono.just(response);
+                        }));
+    }
+
+    /**
+     * Answers the stored response, or waits while the record is pending. Once the record is gone, the
+     * first request failed or the record expired, the key is claimed again.
+     */
+    private Mono<Object> replay(String id, String requestHash, Supplier<? extends Mono<?>> write) {
+        return mongoTemplate.findById(id, IdempotencyRecord.class)
+                .flatMap(record -> {
+                    if (!record.getRequestHash().equals(requestHash)) {
+                        return Mono.error(keyReused());
+                    }
+                    if (record.getResponse() != null) {
+                        return Mono.just(record.getResponse());
+                    }
+                    if (record.getCreatedAt().toInstant().isBefore(Instant.now().minus(pendingTimeout))) {
+                        log.warn("Taking over the idempotency key {}, pending since {}", id, record.getCreatedAt());
+                        return mongoTemplate.remove(pendingRecord(record), IdempotencyRecord.class)
+                                .then(Mono.empty());
+                    }
+                    return Mono.delay(POLL_INTERVAL).then(Mono.empty());
+                })
+                .switchIfEmpty(Mono.defer(() -> claimOrReplay(id, requestHash, write)));
+    }
+
+    private static Query pendingRecord(IdempotencyRecord record) {
+        return new Query(where("_id").is(record.getId())
+                .and("createdAt").is(record.getCreatedAt())
+                .and("response").exists(false));
+    }
+
+    private String hash(Object request) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not hash the request", e);
+        }
+    }
+
+    private static ResponseStatusException keyReused() {
+        return new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                HEADER + " was already used for a different request");
+    }
+
+    /**
+     * The request holding a key in this instance, duplicates share its cached response. Dropped again
+     * when the write fails so a retry can claim the key.
+     */
+    private final class Claim {
+        private final String requestHash;
+        private final Mono<Object> response;
+
+        Claim(String id, String requestHash, Supplier<? extends Mono<?>> write) {
+            this.requestHash = requestHash;
+            this.response = claimOrReplay(id, requestHash, write)
+                    .doOnError(ex -> claims.asMap().remove(id, this))
+                    .cache();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.reactivespring.stream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Keeps idle NDJSON streams alive. It serializes to nothing, so it goes out as an empty line,
+ * which NDJSON readers skip.
+ */
+@JsonSerialize(using = StreamHeartbeat.EmptySerializer.class)
+public final class StreamHeartbeat {
+
+    public static final StreamHeartbeat INSTANCE = new StreamHeartbeat();
+
+    private StreamHeartbeat() {
+    }
+
+    static class EmptySerializer extends JsonSerializer<StreamHeartbeat> {
+        @Override
+        public void serialize(StreamHeartbeat heartbeat, JsonGenerator generator, SerializerProvider provider) {
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.reactivespring.util;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.event.CommandEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.mongodb.DefaultMongoCommandTagsProvider;
+import io.micrometer.core.instrument.binder.mongodb.MongoCommandTagsProvider;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adds a collection tag to the mongodb.driver.commands timer. Only the started event carries the command
+ * document, so the collection is remembered per request id until the metrics listener asks for the tags of
+ * the matching succeeded or failed event. Commands not naming a collection are tagged "none".
+ */
+@Component
+public class MongoCollectionTagsProvider implements MongoCommandTagsProvider, CommandListener,
+        MongoClientSettingsBuilderCustomizer {
+
+    private static final Set<String> COLLECTION_COMMANDS = Set.of(
+            "aggregate", "count", "distinct", "find", "findAndModify", "insert", "update", "delete",
+            "create", "drop", "createIndexes", "dropIndexes", "listIndexes", "collMod");
+
+    private final MongoCommandTagsProvider defaults = new DefaultMongoCommandTagsProvider();
+    private final Map<Integer, String> collections = new ConcurrentHashMap<>();
+
+    @Override
+    public void customize(MongoClientSettings.Builder builder) {
+        builder.addCommandListener(this);
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        collections.put(event.getRequestId(), collection(event));
+    }
+
+    @Override
+    public Iterable<Tag> commandTags(CommandEvent event) {
+        var collection = collections.remove(event.getRequestId());
+        return Tags.of(defaults.commandTags(event))
+                .and("collection", collection == null ? "none" : collection);
+    }
+
+    private static String collection(CommandStartedEvent event) {
+        if (COLLECTION_COMMANDS.contains(event.getCommandName())) {
+            var value = event.getCommand().get(event.getCommandName());
+            if (value != null && value.isString()) {
+                return value.asString().getValue();
+            }
+        } else if ("getMore".equals(event.getCommandName())) {
+            var value = event.getCommand().get("collection");
+            if (value != null && value.isString()) {
+                return value.asString().getValue();
+            }
+        }
+        return "none";
+    }
+}
@@ -0,0 +1,71 @@
+package com.reactivespring.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+
+class DeadlineWebFilterTest {
+
+    AtomicBoolean queryCancelled = new AtomicBoolean();
+    AtomicInteger queries = new AtomicInteger();
+
+    // stands in for a Mongo query that has not returned its first batch yet
+    WebTestClient webTestClient = WebTestClient
+            .bindToRouterFunction(RouterFunctions
+                    .route(GET("/slow"), request -> ServerResponse.ok().body(Flux.<String>never()
+                            .doOnSubscribe(subscription -> queries.incrementAndGet())
+                            .doOnCancel(() -> queryCancelled.set(true)), String.class))
+                    .andRoute(GET("/fast"), request -> ServerResponse.ok().bodyValue("done")))
+            .webFilter(new DeadlineWebFilter())
+            .build();
+
+    @Test
+    void slowQueryIsCancelledAtTheDeadline() {
+        webTestClient.get()
+                .uri("/slow")
+                .header(DeadlineWebFilter.TIMEOUT_HEADER, "100")
+                .exchange()
+                .expectStatus().isEqualTo(504);
+
+        assertTrue(queryCancelled.get());
+    }
+
+    @Test
+    void requestWithinDeadlineIsServed() {
+        webTestClient.get()
+                .uri("/fast")
+                .header(DeadlineWebFilter.TIMEOUT_HEADER, "1000")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("done");
+    }
+
+    @Test
+    void expiredDeadlineIsNotServed() {
+        webTestClient.get()
+                .uri("/slow")
+                .header(DeadlineWebFilter.TIMEOUT_HEADER, "0")
+                .exchange()
+                .expectStatus().isEqualTo(504);
+
+        assertEquals(0, queries.get());
+    }
+
+    @Test
+    void malformedDeadlineIsBadRequest() {
+        webTestClient.get()
+                .uri("/fast")
+                .header(DeadlineWebFilter.TIMEOUT_HEADER, "soon")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+}
@@ -0,0 +1,152 @@
+package com.reactivespring.repository;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import reactor.core.publisher.Flux;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs queries, captures the find commands they send and records the ones whose explained winning plan
+ * contains a COLLSCAN. Needs {@link CommandCapture} imported into the test context.
+ * <p>
+ * Query methods are the find and count methods taking arguments: findAll without any is a scan on purpose,
+ * and the findAnd* methods modify documents with findAndModify. Bridge methods of redeclared repository
+ * methods are skipped, the redeclaration itself is run.
+ */
+public class QueryIndexCoverage {
+
+    static final List<BsonDocument> findCommands = new CopyOnWriteArrayList<>();
+
+    @TestConfiguration
+    public static class CommandCapture {
+        @Bean
+        MongoClientSettingsBuilderCustomizer captureFindCommands() {
+            return builder -> builder.addCommandListener(new CommandListener() {
+                @Override
+                public void commandStarted(CommandStartedEvent event) {
+                    if (event.getCommandName().equals("find")) {
+                        findCommands.add(event.getCommand().clone());
+                    }
+                }
+            });
+        }
+    }
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final List<String> violations = new ArrayList<>();
+
+    public QueryIndexCoverage(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public void ensureIndexes(Class<?>... entityTypes) {
+        var resolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        for (var entityType : entityTypes) {
+            resolver.resolveIndexFor(entityType)
+                    .forEach(index -> mongoTemplate.indexOps(entityType).ensureIndex(index).block());
+        }
+    }
+
+    /**
+     * Runs every query method {@code repositoryInterface} declares in this project on {@code repository}.
+     */
+    public void checkQueryMethods(Class<?> repositoryInterface, Object repository) throws Exception {
+        var queryMethods = projectQueryMethods(repositoryInterface);
+        assertFalse(queryMethods.isEmpty(), repositoryInterface.getSimpleName() + " has no query methods");
+
+        for (var method : queryMethods) {
+            check(repositoryInterface.getSimpleName() + "." + method.getName(),
+                    (Publisher<?>) method.invoke(repository, sampleArguments(method)));
+        }
+    }
+
+    public void check(String name, Publisher<?> query) {
+        findCommands.clear();
+        Flux.from(query).blockLast();
+
+        assertFalse(findCommands.isEmpty(), name + " did not issue a find command");
+        for (var command : findCommands) {
+            var plan = explain(command);
+            if (plan.contains("COLLSCAN")) {
+                violations.add(name + " -> " + command.get("filter") + " : " + plan);
+            }
+        }
+    }
+
+    public void assertEveryQueryUsesAnIndex() {
+        assertTrue(violations.isEmpty(), "queries without index support:\n" + String.join("\n", violations));
+    }
+
+    static List<Method> projectQueryMethods(Class<?> repositoryInterface) {
+        var methods = new ArrayList<Method>();
+        for (var method : repositoryInterface.getMethods()) {
+            if (method.getDeclaringClass().getPackageName().startsWith("com.reactivespring")
+                    && Publisher.class.isAssignableFrom(method.getReturnType())
+                    && isQuery(method)) {
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    static boolean isQuery(Method method) {
+        var name = method.getName();
+        return (name.startsWith("find") && !name.startsWith("findAnd") || name.startsWith("count"))
+                && method.getParameterCount() > 0
+                && !method.isBridge();
+    }
+
+    static Object[] sampleArguments(Method method) {
+        var types = method.getGenericParameterTypes();
+        return Arrays.stream(types).map(QueryIndexCoverage::sampleValue).toArray();
+    }
+
+    static Object sampleValue(Type type) {
+        if (type instanceof ParameterizedType
+                && Collection.class.isAssignableFrom((Class<?>) ((ParameterizedType) type).getRawType())) {
+            return List.of(sampleValue(((ParameterizedType) type).getActualTypeArguments()[0]));
+        }
+        if (type == String.class) {
+            return "sample";
+        }
+        if (type == Integer.class || type == int.class) {
+            return 2005;
+        }
+        if (type == Long.class || type == long.class) {
+            return 1L;
+        }
+        throw new IllegalArgumentException("no sample value for " + type + ", extend sampleValue");
+    }
+
+    private String explain(BsonDocument findCommand) {
+        var find = new Document();
+        for (var key : List.of("find", "filter", "sort", "projection", "limit", "skip")) {
+            if (findCommand.containsKey(key)) {
+                find.put(key, findCommand.get(key));
+            }
+        }
+        var explainCommand = new Document("explain", find).append("verbosity", "queryPlanner");
+        return mongoTemplate.executeCommand(explainCommand)
+                .map(result -> result.get("queryPlanner", Document.class).get("winningPlan", Document.class).toJson())
+                .block();
+    }
+}
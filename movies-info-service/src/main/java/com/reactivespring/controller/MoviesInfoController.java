@@ -1,16 +1,32 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.service.IdempotentWrites;
 import com.reactivespring.service.MoviesInfoService;
+import com.reactivespring.stream.MovieInfoEventLog;
+import com.reactivespring.stream.StreamSubscriberPolicy;
+import com.reactivespring.util.PageToken;
+import com.reactivespring.util.ServerTiming;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebInputException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/v1")
@@ -18,15 +34,45 @@ public class MoviesInfoController {
 
     private MoviesInfoService moviesInfoService;
 
-    Sinks.Many<MovieInfo> movieInfoSink = Sinks.many().replay().all();
+    MovieInfoEventLog movieInfoEventLog;
 
-    public MoviesInfoController(MoviesInfoService moviesInfoService) {
+    StreamSubscriberPolicy movieInfoStreamPolicy;
+
+    private Validator validator;
+
+    private IdempotentWrites idempotentWrites;
+
+    @Value("${serverTiming.enabled:false}")
+    private boolean serverTimingEnabled;
+
+    public MoviesInfoController(MoviesInfoService moviesInfoService,
+                                Validator validator,
+                                IdempotentWrites idempotentWrites,
+                                MeterRegistry meterRegistry,
+                                @Value("${moviesinfo.stream.capacity:10000}") int streamCapacity,
+                                @Value("${moviesinfo.stream.overflow:DROP_OLDEST}") StreamSubscriberPolicy.Overflow streamOverflow,
+                                @Value("${moviesinfo.stream.bufferSize:1000}") int streamBufferSize,
+                                @Value("${moviesinfo.stream.maxSubscribers:1000}") int streamMaxSubscribers,
+                                @Value("${moviesinfo.stream.heartbeat:15s}") Duration streamHeartbeat) {
         this.moviesInfoService = moviesInfoService;
+        this.validator = validator;
+        this.idempotentWrites = idempotentWrites;
+        this.movieInfoEventLog = new MovieInfoEventLog(streamCapacity);
+        this.movieInfoEventLog.bindTo(meterRegistry);
+        this.movieInfoStreamPolicy = new StreamSubscriberPolicy("moviesinfo", streamOverflow, streamBufferSize,
+                streamMaxSubscribers, streamHeartbeat, meterRegistry);
     }
     @GetMapping("/moviesinfo")
-    public Flux<MovieInfo> getAllMovieInfo(@RequestParam(value = "year", required = false) Integer year,
+    public Flux<MovieInfo> getAllMovieInfo(@RequestParam(value = "ids", required = false) List<String> ids,
+                                           @RequestParam(value = "year", required = false) Integer year,
                                            @RequestParam(value = "name", required = false) String name){
-        if(year != null){
+        if(ids != null){
+            if (year != null || name != null) {
+                throw new ServerWebInputException("ids : not supported together with year or name");
+            }
+            return ServerTiming.timed(serverTimingEnabled, ServerTiming.Phase.MONGO,
+                    moviesInfoService.getMovieInfosByIds(ids));
+        } else if(year != null){
             return moviesInfoService.getMovieByYear(year);
         } else if (name != null) {
             return moviesInfoService.getMovieByName(name);
@@ -34,35 +80,110 @@ public class MoviesInfoController {
         return moviesInfoService.getAllMovieInfos();
     }
 
+    @GetMapping(value = "/moviesinfo", params = "limit")
+    public Mono<ResponseEntity<List<MovieInfo>>> getMovieInfoPage(@RequestParam(value = "ids", required = false) List<String> ids,
+                                                                  @RequestParam(value = "year", required = false) Integer year,
+                                                                  @RequestParam(value = "name", required = false) String name,
+                                                                  @RequestParam(value = "limit") int limit,
+                                                                  @RequestParam(value = "next", required = false) String next){
+        if (ids != null) {
+            throw new ServerWebInputException("ids : not supported together with limit");
+        }
+        var pageSize = PageToken.validateLimit(limit);
+        var afterId = next == null ? null : PageToken.decode(next);
+
+        return moviesInfoService.getMovieInfoPage(year, name, afterId, pageSize)
+                .collectList()
+                .map(movieInfos -> {
+                    if (movieInfos.size() <= pageSize) {
+                        return ResponseEntity.ok().body(movieInfos);
+                    }
+                    var page = movieInfos.subList(0, pageSize);
+                    return ResponseEntity.ok()
+                            .header(PageToken.NEXT_TOKEN_HEADER, PageToken.encode(page.get(pageSize - 1).getMovieInfoId()))
+                            .body(page);
+                });
+    }
+
     @GetMapping("moviesinfo/{id}")
     public Mono<ResponseEntity<MovieInfo>> getMovieById(@PathVariable String id){
-        return moviesInfoService.getMovieInfoById(id)
+        return ServerTiming.timed(serverTimingEnabled, ServerTiming.Phase.MONGO, moviesInfoService.getMovieInfoById(id))
                 .map(ResponseEntity.ok()::body)
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
     }
 
+    /**
+     * Resumes after the event id, epoch:sequence, given as Last-Event-ID header or lastEventId query
+     * parameter, without either it starts at the oldest retained event. An id from before a restart
+     * is answered with a GAP.
+     * Emits {@link MovieInfoEvent}s and heartbeats, which are empty lines.
+     */
     @GetMapping(value = "moviesinfo/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
-    public Flux<MovieInfo> streamMovies(){
-        return movieInfoSink.asFlux();
+    public Flux<Object> streamMovies(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+                                     @RequestParam(value = "lastEventId", required = false) String lastEventId){
+        var lastSeenEventId = lastEventIdHeader != null ? lastEventIdHeader : lastEventId;
+        return movieInfoStreamPolicy.apply(movieInfoEventLog.eventsAfter(lastSeenEventId, movieInfoStreamPolicy));
     }
 
 
     @PostMapping("/moviesinfo")
     @ResponseStatus(HttpStatus.CREATED)
-    public Mono<MovieInfo> addMovieInfo(@RequestBody @Valid MovieInfo movieInfo){
-        return moviesInfoService.addMovieInfo(movieInfo)
-                .doOnNext(savedInfo -> movieInfoSink.tryEmitNext(savedInfo));
+    public Mono<MovieInfo> addMovieInfo(@RequestBody @Valid MovieInfo movieInfo,
+                                        @RequestHeader(value = IdempotentWrites.HEADER, required = false) String idempotencyKey){
+        return idempotentWrites.execute("moviesinfo", idempotencyKey, movieInfo, MovieInfo.class,
+                () -> moviesInfoService.addMovieInfo(movieInfo)
+                        .doOnNext(savedInfo -> movieInfoEventLog.append(savedInfo)));
+    }
+
+    /**
+     * Streams one {@link MovieInfoBulkResult} per non blank line of the NDJSON upload while it is being read,
+     * each written batch reaches the stream subscribers as a whole.
+     */
+    @PostMapping(value = "/moviesinfo/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieInfoBulkResult> addMovieInfos(@RequestBody Flux<String> lines){
+        return moviesInfoService.addMovieInfos(lines, movieInfoEventLog::appendAll);
     }
 
     @PostMapping("moviesinfo/{id}")
     public Mono<ResponseEntity<MovieInfo>> updateMovieInfo(@RequestBody MovieInfo updatedMovieInfo, @PathVariable String id){
         return moviesInfoService.updateMovieInfo(updatedMovieInfo, id)
+                .doOnNext(savedInfo -> movieInfoEventLog.append(savedInfo))
                 .map(ResponseEntity.ok()::body)
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
     }
 
+    /**
+     * Partial update, fields missing from the body keep their value.
+     */
+    @PatchMapping("moviesinfo/{id}")
+    public Mono<ResponseEntity<MovieInfo>> patchMovieInfo(@RequestBody MovieInfo changes, @PathVariable String id){
+        validateChanges(changes);
+        return moviesInfoService.patchMovieInfo(changes, id)
+                .doOnNext(savedInfo -> movieInfoEventLog.append(savedInfo))
+                .map(ResponseEntity.ok()::body)
+                .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    private void validateChanges(MovieInfo changes) {
+        var violations = new HashSet<ConstraintViolation<MovieInfo>>();
+        if (changes.getName() != null) {
+            violations.addAll(validator.validateProperty(changes, "name"));
+        }
+        if (changes.getYear() != null) {
+            violations.addAll(validator.validateProperty(changes, "year"));
+        }
+        if (changes.getCast() != null) {
+            violations.addAll(validator.validateProperty(changes, "cast"));
+        }
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(Set.copyOf(violations));
+        }
+    }
+
     @DeleteMapping("/moviesinfo/{id}")
     public Mono<Void> deleteMovieInfo(@PathVariable String id){
-        return moviesInfoService.deleteMovieInfoById(id);
+        return moviesInfoService.deleteMovieInfoById(id)
+                .doOnSuccess(deleted -> movieInfoEventLog.appendDelete(id));
     }
 }
@@ -0,0 +1,27 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of the moviesinfo/bulk response, {@code line} counts the lines of the upload from 1.
+ * Either the id of the inserted MovieInfo or the reason the line was rejected is set.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoBulkResult {
+
+    private long line;
+    private String movieInfoId;
+    private String error;
+
+    public static MovieInfoBulkResult inserted(long line, String movieInfoId) {
+        return new MovieInfoBulkResult(line, movieInfoId, null);
+    }
+
+    public static MovieInfoBulkResult rejected(long line, String error) {
+        return new MovieInfoBulkResult(line, null, error);
+    }
+}
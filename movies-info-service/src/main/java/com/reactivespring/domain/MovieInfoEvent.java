@@ -0,0 +1,38 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of the moviesinfo/stream feed. A {@code DELETE} event carries only the movieInfoId of the
+ * deleted MovieInfo. A {@code GAP} event means the events up to and including
+ * {@code sequence} are no longer retained, or were skipped because the subscriber fell behind, and the
+ * subscriber has to resynchronise.
+ * Sequences start over whenever the service restarts, {@code epoch} tells these histories apart: the
+ * stream is resumed with {@code epoch:sequence} of the last seen event as Last-Event-ID.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoEvent {
+
+    public enum Type { MOVIE_INFO, DELETE, GAP }
+
+    private String epoch;
+    private long sequence;
+    private Type type;
+    private MovieInfo movieInfo;
+
+    public static MovieInfoEvent movieInfo(String epoch, long sequence, MovieInfo movieInfo) {
+        return new MovieInfoEvent(epoch, sequence, Type.MOVIE_INFO, movieInfo);
+    }
+
+    public static MovieInfoEvent delete(String epoch, long sequence, String movieInfoId) {
+        return new MovieInfoEvent(epoch, sequence, Type.DELETE, new MovieInfo(movieInfoId, null, null, null, null));
+    }
+
+    public static MovieInfoEvent gap(String epoch, long sequence) {
+        return new MovieInfoEvent(epoch, sequence, Type.GAP, null);
+    }
+}
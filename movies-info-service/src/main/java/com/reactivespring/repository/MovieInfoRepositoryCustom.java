@@ -0,0 +1,28 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+public interface MovieInfoRepositoryCustom {
+
+    /**
+     * Keyset page in _id order. {@code year}, {@code name} and {@code afterId} are optional.
+     */
+    Flux<MovieInfo> findPage(Integer year, String name, String afterId, int limit);
+
+    /**
+     * Sets name, year, cast and release_date in one findAndModify and emits the updated document, empty when
+     * there is none with this id. A null field is removed, or left as it is when {@code partial}.
+     */
+    Mono<MovieInfo> findAndUpdate(String id, MovieInfo changes, boolean partial);
+
+    /**
+     * Inserts with one unordered insertMany and sets the ids of the inserted movie infos, like save does.
+     * Emits the reason each document that was not inserted failed, by its index in the list.
+     */
+    Mono<Map<Integer, String>> insertUnordered(List<MovieInfo> movieInfos);
+}
@@ -0,0 +1,94 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.util.PageToken;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class MovieInfoRepositoryImpl implements MovieInfoRepositoryCustom {
+
+    private ReactiveMongoTemplate mongoTemplate;
+
+    public MovieInfoRepositoryImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Flux<MovieInfo> findPage(Integer year, String name, String afterId, int limit) {
+        var query = new Query();
+        if (year != null) {
+            query.addCriteria(where("year").is(year));
+        }
+        if (name != null) {
+            query.addCriteria(where("name").is(name));
+        }
+        if (afterId != null) {
+            query.addCriteria(PageToken.idAfter(afterId));
+        }
+        query.with(Sort.by("_id")).limit(limit);
+        return mongoTemplate.find(query, MovieInfo.class);
+    }
+
+    @Override
+    public Mono<MovieInfo> findAndUpdate(String id, MovieInfo changes, boolean partial) {
+        var update = new Update();
+        setOrUnset(update, "name", changes.getName(), partial);
+        setOrUnset(update, "year", changes.getYear(), partial);
+        setOrUnset(update, "cast", changes.getCast(), partial);
+        setOrUnset(update, "release_date", changes.getRelease_date(), partial);
+        var byId = new Query(where("_id").is(id));
+        if (update.getUpdateObject().isEmpty()) {
+            // an empty update document would replace the whole movie info
+            return mongoTemplate.findOne(byId, MovieInfo.class);
+        }
+        return mongoTemplate.findAndModify(byId, update, FindAndModifyOptions.options().returnNew(true), MovieInfo.class);
+    }
+
+    @Override
+    public Mono<Map<Integer, String>> insertUnordered(List<MovieInfo> movieInfos) {
+        var documents = new ArrayList<Document>(movieInfos.size());
+        for (var movieInfo : movieInfos) {
+            var document = new Document();
+            mongoTemplate.getConverter().write(movieInfo, document);
+            documents.add(document);
+        }
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(MovieInfo.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(result -> Map.<Integer, String>of())
+                // unordered, so every document without a write error was inserted
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        .collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage))))
+                .doOnNext(failed -> {
+                    for (var i = 0; i < movieInfos.size(); i++) {
+                        if (!failed.containsKey(i)) {
+                            // the driver adds the generated _id to the document it inserts
+                            movieInfos.get(i).setMovieInfoId(String.valueOf(documents.get(i).get("_id")));
+                        }
+                    }
+                });
+    }
+
+    private static void setOrUnset(Update update, String field, Object value, boolean partial) {
+        if (value != null) {
+            update.set(field, value);
+        } else if (!partial) {
+            update.unset(field);
+        }
+    }
+}
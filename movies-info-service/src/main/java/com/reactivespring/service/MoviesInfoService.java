@@ -1,40 +1,136 @@
 package com.reactivespring.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBulkResult;
 import com.reactivespring.repository.MovieInfoRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
 @Service
 public class MoviesInfoService {
 
     private MovieInfoRepository movieInfoRepository;
+    private ObjectMapper objectMapper;
+    private Validator validator;
+    private int bulkBatchSize;
 
-    public MoviesInfoService(MovieInfoRepository movieInfoRepository) {
+    public MoviesInfoService(MovieInfoRepository movieInfoRepository, ObjectMapper objectMapper, Validator validator,
+                             @Value("${moviesinfo.bulk.batchSize:1000}") int bulkBatchSize) {
         this.movieInfoRepository = movieInfoRepository;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.bulkBatchSize = bulkBatchSize;
     }
     public Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo){
         return movieInfoRepository.save(movieInfo);
     }
 
+    /**
+     * Validates every non blank NDJSON line and inserts the valid ones with one insertMany per batch of
+     * moviesinfo.bulk.batchSize lines. Answers one result per line in upload order, batch by batch while
+     * the upload is still being read. The next batch is only read once the previous one is written, so
+     * memory does not grow with the size of the upload. {@code inserted} receives the movie infos of
+     * every written batch.
+     */
+    public Flux<MovieInfoBulkResult> addMovieInfos(Flux<String> lines, Consumer<List<MovieInfo>> inserted) {
+        return lines.index()
+                .filter(line -> !line.getT2().isBlank())
+                .map(line -> parse(line.getT1() + 1, line.getT2()))
+                .buffer(bulkBatchSize)
+                .concatMap(batch -> insertBatch(batch, inserted), 1);
+    }
+
+    private BulkLine parse(long line, String json) {
+        MovieInfo movieInfo;
+        try {
+            movieInfo = objectMapper.readValue(json, MovieInfo.class);
+        } catch (JsonProcessingException e) {
+            return new BulkLine(line, null, "line is not a movieInfo : " + e.getOriginalMessage());
+        }
+        if (movieInfo == null) {
+            return new BulkLine(line, null, "line is not a movieInfo : null");
+        }
+        var constraintViolations = validator.validate(movieInfo);
+        if (!constraintViolations.isEmpty()) {
+            return new BulkLine(line, null, constraintViolations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining(",")));
+        }
+        return new BulkLine(line, movieInfo, null);
+    }
+
+    private Flux<MovieInfoBulkResult> insertBatch(List<BulkLine> batch, Consumer<List<MovieInfo>> inserted) {
+        var movieInfos = batch.stream()
+                .filter(line -> line.movieInfo != null)
+                .map(line -> line.movieInfo)
+                .collect(Collectors.toList());
+        var insert = movieInfos.isEmpty()
+                ? Mono.just(Map.<Integer, String>of())
+                : movieInfoRepository.insertUnordered(movieInfos);
+
+        return insert.flatMapIterable(failed -> {
+            var results = new ArrayList<MovieInfoBulkResult>(batch.size());
+            var insertedInfos = new ArrayList<MovieInfo>(movieInfos.size());
+            var index = 0;
+            for (var line : batch) {
+                if (line.movieInfo == null) {
+                    results.add(MovieInfoBulkResult.rejected(line.line, line.error));
+                    continue;
+                }
+                var error = failed.get(index++);
+                if (error != null) {
+                    results.add(MovieInfoBulkResult.rejected(line.line, error));
+                } else {
+                    results.add(MovieInfoBulkResult.inserted(line.line, line.movieInfo.getMovieInfoId()));
+                    insertedInfos.add(line.movieInfo);
+                }
+            }
+            inserted.accept(insertedInfos);
+            return results;
+        });
+    }
+
     public Flux<MovieInfo> getAllMovieInfos() {
         return movieInfoRepository.findAll();
     }
 
+    /**
+     * Fetches one element more than asked for, its presence tells whether there is a next page.
+     */
+    public Flux<MovieInfo> getMovieInfoPage(Integer year, String name, String afterId, int limit) {
+        return movieInfoRepository.findPage(year, name, afterId, limit + 1);
+    }
+
     public Mono<MovieInfo> getMovieInfoById(String id) {
         return movieInfoRepository.findById(id);
     }
 
+    public Flux<MovieInfo> getMovieInfosByIds(List<String> ids) {
+        return movieInfoRepository.findAllById(ids);
+    }
+
     public Mono<MovieInfo> updateMovieInfo(MovieInfo updatedMovieInfo, String id) {
-        return movieInfoRepository.findById(id)
-                .flatMap(movieInfo -> {
-                    movieInfo.setCast(updatedMovieInfo.getCast());
-                    movieInfo.setYear(updatedMovieInfo.getYear());
-                    movieInfo.setName(updatedMovieInfo.getName());
-                    movieInfo.setRelease_date(updatedMovieInfo.getRelease_date());
-                    return movieInfoRepository.save(movieInfo);
-                });
+        return movieInfoRepository.findAndUpdate(id, updatedMovieInfo, false);
+    }
+
+    /**
+     * Only the fields present in {@code changes} are set.
+     */
+    public Mono<MovieInfo> patchMovieInfo(MovieInfo changes, String id) {
+        return movieInfoRepository.findAndUpdate(id, changes, true);
     }
 
     public Mono<Void> deleteMovieInfoById(String id) {
@@ -48,4 +144,19 @@ public class MoviesInfoService {
     public Flux<MovieInfo> getMovieByName(String name) {
         return movieInfoRepository.findByName(name);
     }
+
+    /**
+     * A parsed line of a bulk upload, either a valid movieInfo or the reason it was rejected.
+     */
+    private static class BulkLine {
+        private final long line;
+        private final MovieInfo movieInfo;
+        private final String error;
+
+        BulkLine(long line, MovieInfo movieInfo, String error) {
+            this.line = line;
+            this.movieInfo = movieInfo;
+            this.error = error;
+        }
+    }
 }
@@ -0,0 +1,230 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-capacity log of MovieInfo changes. Every appended MovieInfo or deletion gets the next sequence
+ * number and overwrites the oldest retained one once the log is full.
+ * Subscribers keep their own cursor and read from the log whenever they are notified of a new event,
+ * so memory is bounded by the capacity no matter how many events were published or how slow a
+ * subscriber is. A subscriber whose cursor was overwritten receives a GAP event first.
+ * Sequences start at 1 for every log, each log has its own random epoch so a subscriber resuming with
+ * an event id of another log, e.g. from before a restart, receives a GAP instead of other events.
+ * Once bound to a MeterRegistry it publishes the subscribers of the notification sink as
+ * stream.sink.subscribers and failed notifications by result as stream.emit.failures.
+ */
+public class MovieInfoEventLog implements MeterBinder {
+
+    private final String epoch = UUID.randomUUID().toString();
+    private final MovieInfoEvent[] ring;
+    private final Sinks.Many<Long> appended = Sinks.many().multicast().directBestEffort();
+    private final Map<Sinks.EmitResult, Long> emitFailures = new EnumMap<>(Sinks.EmitResult.class);
+    private long lastSequence;
+
+    public MovieInfoEventLog(int capacity) {
+        this.ring = new MovieInfoEvent[capacity];
+        for (var emitResult : Sinks.EmitResult.values()) {
+            emitFailures.put(emitResult, 0L);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        Gauge.builder("stream.sink.subscribers", appended, Sinks.Many::currentSubscriberCount)
+                .tag("stream", "moviesinfo")
+                .tag("sink", "all")
+                .register(meterRegistry);
+        for (var emitResult : Sinks.EmitResult.values()) {
+            if (emitResult.isFailure() && emitResult != Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+                FunctionCounter.builder("stream.emit.failures", this, eventLog -> eventLog.emitFailures(emitResult))
+                        .tag("stream", "moviesinfo")
+                        .tag("result", emitResult.name().toLowerCase())
+                        .register(meterRegistry);
+            }
+        }
+    }
+
+    private synchronized long emitFailures(Sinks.EmitResult emitResult) {
+        return emitFailures.get(emitResult);
+    }
+
+    public synchronized long append(MovieInfo movieInfo) {
+        var sequence = ++lastSequence;
+        ring[(int) (sequence % ring.length)] = MovieInfoEvent.movieInfo(epoch, sequence, movieInfo);
+        notifyAppended(sequence);
+        return sequence;
+    }
+
+    public synchronized long appendDelete(String movieInfoId) {
+        var sequence = ++lastSequence;
+        ring[(int) (sequence % ring.length)] = MovieInfoEvent.delete(epoch, sequence, movieInfoId);
+        notifyAppended(sequence);
+        return sequence;
+    }
+
+    /**
+     * Appends a batch with a single notification, subscribers read all of it in one go.
+     */
+    public synchronized long appendAll(List<MovieInfo> movieInfos) {
+        for (var movieInfo : movieInfos) {
+            var sequence = ++lastSequence;
+            ring[(int) (sequence % ring.length)] = MovieInfoEvent.movieInfo(epoch, sequence, movieInfo);
+        }
+        if (!movieInfos.isEmpty()) {
+            notifyAppended(lastSequence);
+        }
+        return lastSequence;
+    }
+
+    private void notifyAppended(long sequence) {
+        // emitted while holding the lock so emissions are serialized
+        var emitResult = appended.tryEmitNext(sequence);
+        if (emitResult.isFailure()) {
+            emitFailures.merge(emitResult, 1L, Long::sum);
+        }
+    }
+
+    public synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    public String epoch() {
+        return epoch;
+    }
+
+    /**
+     * Streams every retained event, then live events.
+     */
+    public Flux<MovieInfoEvent> events() {
+        return events(null);
+    }
+
+    /**
+     * Streams the events after {@code lastSeenSequence}, then live events.
+     * A null sequence starts at the oldest retained event without a GAP.
+     */
+    public Flux<MovieInfoEvent> events(Long lastSeenSequence) {
+        return events(lastSeenSequence, null);
+    }
+
+    /**
+     * Streams the events after the one with id {@code lastEventId}, {@code epoch:sequence} of an event of
+     * this log. A null id starts at the oldest retained event without a GAP, an id of another epoch or
+     * not of that form after a GAP.
+     * Once the subscriber has read its backlog the overflow policy applies, as for
+     * {@link #events(Long, StreamSubscriberPolicy)}.
+     */
+    public Flux<MovieInfoEvent> eventsAfter(String lastEventId, StreamSubscriberPolicy policy) {
+        return events(lastEventId == null ? null : sequenceOf(lastEventId), policy);
+    }
+
+    /**
+     * The sequence of an event id of this log, or else one that is never retained.
+     */
+    private long sequenceOf(String lastEventId) {
+        var separator = lastEventId.lastIndexOf(':');
+        if (separator > 0 && lastEventId.substring(0, separator).equals(epoch)) {
+            try {
+                return Long.parseLong(lastEventId.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                // answered with a GAP like an id of another epoch
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Like {@link #events(Long)}, but once the subscriber has read its backlog the overflow policy
+     * applies whenever it is more than the policy's buffer size behind.
+     */
+    public Flux<MovieInfoEvent> events(Long lastSeenSequence, StreamSubscriberPolicy policy) {
+        return Flux.defer(() -> {
+            var cursor = new AtomicLong(lastSeenSequence == null ? firstRetainedSequence() - 1 : lastSeenSequence);
+            var backlogRead = new AtomicBoolean();
+            // live notifications are subscribed before the initial read so no append can slip in between
+            return Flux.merge(appended.asFlux(), Mono.just(0L))
+                    .onBackpressureLatest()
+                    .concatMapIterable(notification -> readAfter(cursor, backlogRead.getAndSet(true) ? policy : null), 1);
+        });
+    }
+
+    private synchronized List<MovieInfoEvent> readAfter(AtomicLong cursor, StreamSubscriberPolicy policy) {
+        var events = new ArrayList<MovieInfoEvent>();
+        var firstRetained = firstRetainedSequence();
+        var from = cursor.get() + 1;
+        if (from < firstRetained || from > lastSequence + 1) {
+            // overwritten, of another epoch, or beyond the last one
+            events.add(MovieInfoEvent.gap(epoch, firstRetained - 1));
+            from = firstRetained;
+        }
+        var behind = lastSequence - from + 1;
+        if (policy != null && behind > policy.getBufferSize()) {
+            switch (policy.getOverflow()) {
+                case DISCONNECT:
+                    throw policy.disconnect(behind);
+                case CONFLATE:
+                    readConflated(events, from, policy);
+                    cursor.set(lastSequence);
+                    return events;
+                default:
+                    var skipped = behind - policy.getBufferSize();
+                    policy.dropped(skipped);
+                    from += skipped;
+                    if (events.isEmpty()) {
+                        events.add(MovieInfoEvent.gap(epoch, from - 1));
+                    }
+            }
+        }
+        for (var sequence = from; sequence <= lastSequence; sequence++) {
+            events.add(ring[(int) (sequence % ring.length)]);
+        }
+        cursor.set(lastSequence);
+        return events;
+    }
+
+    /**
+     * Adds the latest event per movieInfoId in sequence order, only the newest buffer size of them
+     * after a GAP when there are more.
+     */
+    private void readConflated(List<MovieInfoEvent> events, long from, StreamSubscriberPolicy policy) {
+        var latest = new LinkedHashMap<String, MovieInfoEvent>();
+        for (var sequence = from; sequence <= lastSequence; sequence++) {
+            var event = ring[(int) (sequence % ring.length)];
+            latest.remove(event.getMovieInfo().getMovieInfoId());
+            latest.put(event.getMovieInfo().getMovieInfoId(), event);
+        }
+        policy.conflated(lastSequence - from + 1 - latest.size());
+
+        List<MovieInfoEvent> kept = new ArrayList<>(latest.values());
+        var skipped = kept.size() - policy.getBufferSize();
+        if (skipped > 0) {
+            policy.dropped(skipped);
+            if (events.isEmpty()) {
+                events.add(MovieInfoEvent.gap(epoch, kept.get(skipped - 1).getSequence()));
+            }
+            kept = kept.subList(skipped, kept.size());
+        }
+        events.addAll(kept);
+    }
+
+    private synchronized long firstRetainedSequence() {
+        return Math.max(1, lastSequence - ring.length + 1);
+    }
+}
@@ -0,0 +1,135 @@
+package com.reactivespring.stream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides what a stream subscriber gets when it reads slower than events are published.
+ * Subscribers read from the shared {@link MovieInfoEventLog}, so a subscriber's buffer is the part of
+ * the log it has not read yet; once that is more than {@code bufferSize} events the {@link Overflow}
+ * policy applies.
+ * Also caps the number of concurrent subscribers and sends a heartbeat after
+ * {@code heartbeatInterval} without events.
+ */
+@Slf4j
+public class StreamSubscriberPolicy {
+
+    public enum Overflow {
+        /** skips to the newest {@code bufferSize} events after a GAP */
+        DROP_OLDEST,
+        /** ends the subscription, the client is expected to resume with its last sequence */
+        DISCONNECT,
+        /** keeps only the latest unread event per movieInfoId, skips the oldest after a GAP when still behind */
+        CONFLATE
+    }
+
+    private final String stream;
+    private final Overflow overflow;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final Duration heartbeatInterval;
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final Counter dropped;
+    private final Counter conflated;
+    private final Counter disconnected;
+    private final Counter rejected;
+
+    public StreamSubscriberPolicy(String stream, Overflow overflow, int bufferSize, int maxSubscribers,
+                                  Duration heartbeatInterval, MeterRegistry meterRegistry) {
+        this.stream = stream;
+        this.overflow = overflow;
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.heartbeatInterval = heartbeatInterval;
+        this.dropped = counter("stream.events.dropped", meterRegistry);
+        this.conflated = counter("stream.events.conflated", meterRegistry);
+        this.disconnected = counter("stream.subscribers.disconnected", meterRegistry);
+        this.rejected = counter("stream.subscribers.rejected", meterRegistry);
+        Gauge.builder("stream.subscribers", subscribers, AtomicInteger::get)
+                .tag("stream", stream)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Applies the subscriber cap and heartbeats to one subscriber of {@code events}. The result may
+     * contain {@link StreamHeartbeat}s besides the events.
+     */
+    public Flux<Object> apply(Flux<?> events) {
+        return Flux.defer(() -> {
+            if (subscribers.incrementAndGet() > maxSubscribers) {
+                subscribers.decrementAndGet();
+                rejected.increment();
+                return Flux.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Too many subscribers on the " + stream + " stream"));
+            }
+            return withHeartbeats(events)
+                    .doFinally(signalType -> subscribers.decrementAndGet());
+        });
+    }
+
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int subscriberCount() {
+        return subscribers.get();
+    }
+
+    void dropped(long events) {
+        dropped.increment(events);
+    }
+
+    void conflated(long events) {
+        conflated.increment(events);
+    }
+
+    RuntimeException disconnect(long behind) {
+        disconnected.increment();
+        log.warn("Disconnecting a subscriber of the {} stream, {} events behind", stream, behind);
+        return Exceptions.failWithOverflow("Subscriber is " + behind + " events behind");
+    }
+
+    /**
+     * Checks once per interval whether anything was sent during the last interval, so an idle stream
+     * gets a heartbeat after one to two intervals. Prefetching a single event leaves unread events
+     * in the log, where the overflow policy sees them.
+     */
+    private Flux<Object> withHeartbeats(Flux<?> events) {
+        if (heartbeatInterval.isZero()) {
+            return events.cast(Object.class);
+        }
+        return Flux.defer(() -> {
+            var scheduler = Schedulers.parallel();
+            var lastSent = new AtomicLong(scheduler.now(TimeUnit.NANOSECONDS));
+            var heartbeats = Flux.interval(heartbeatInterval, scheduler)
+                    .onBackpressureDrop()
+                    .filter(tick -> scheduler.now(TimeUnit.NANOSECONDS) - lastSent.get() >= heartbeatInterval.toNanos())
+                    .map(tick -> StreamHeartbeat.INSTANCE);
+            return Flux.merge(1, events, heartbeats)
+                    .doOnNext(sent -> lastSent.set(scheduler.now(TimeUnit.NANOSECONDS)));
+        });
+    }
+
+    private Counter counter(String name, MeterRegistry meterRegistry) {
+        return Counter.builder(name)
+                .tag("stream", stream)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,53 @@
+package com.reactivespring.util;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.web.server.ServerWebInputException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Opaque keyset pagination token: the _id of the last document of the previous page.
+ */
+public class PageToken {
+
+    public static final String NEXT_TOKEN_HEADER = "X-Next-Token";
+    public static final int MAX_LIMIT = 1000;
+    private static final ObjectId MIN_OBJECT_ID = new ObjectId(new byte[12]);
+
+    public static String encode(String lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(lastId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decode(String token) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ServerWebInputException("next : invalid page token");
+        }
+    }
+
+    public static int validateLimit(int limit) {
+        if (limit <= 0) {
+            throw new ServerWebInputException("limit : must be a positive value");
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    /**
+     * Matches every _id sorting after {@code lastId}. Ids that look like an ObjectId are stored as one,
+     * other ids as strings, and strings sort before every ObjectId.
+     */
+    public static Criteria idAfter(String lastId) {
+        if (ObjectId.isValid(lastId)) {
+            return where("_id").gt(new ObjectId(lastId));
+        }
+        return new Criteria().orOperator(
+                where("_id").gt(lastId),
+                where("_id").gte(MIN_OBJECT_ID));
+    }
+}
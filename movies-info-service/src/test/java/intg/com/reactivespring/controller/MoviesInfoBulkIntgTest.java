@@ -0,0 +1,89 @@
+package com.reactivespring.controller;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import com.reactivespring.repository.MovieInfoRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "moviesinfo.bulk.batchSize=2")
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+class MoviesInfoBulkIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    MoviesInfoController moviesInfoController;
+
+    @AfterEach
+    void tearDown() {
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void addMovieInfos() {
+        movieInfoRepository.save(new MovieInfo("abc", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))).block();
+        var sequenceBefore = moviesInfoController.movieInfoEventLog.lastSequence();
+        var upload = String.join("\n",
+                "{\"name\":\"Batman Begins\",\"year\":2005,\"cast\":[\"Christian Bale\"],\"release_date\":\"2005-06-15\"}",
+                "not json",
+                "",
+                "{\"name\":\"\",\"year\":-1}",
+                "{\"movieInfoId\":\"abc\",\"name\":\"Dark Knight Rises\",\"year\":2012}",
+                "{\"name\":\"The Dark Knight\",\"year\":2008}") + "\n";
+
+        var results = webTestClient
+                .post()
+                .uri("/v1/moviesinfo/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(upload)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieInfoBulkResult.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertNotNull(results);
+        assertEquals(List.of(1L, 2L, 4L, 5L, 6L), results.stream().map(MovieInfoBulkResult::getLine)
+                .collect(Collectors.toList()));
+        assertNotNull(results.get(0).getMovieInfoId());
+        assertNull(results.get(0).getError());
+        assertTrue(results.get(1).getError().startsWith("line is not a movieInfo"));
+        assertEquals("movieInfo.name cannot be empty,movieInfo.year must be a Positive value", results.get(2).getError());
+        assertTrue(results.get(3).getError().contains("duplicate key"));
+        assertNotNull(results.get(4).getMovieInfoId());
+
+        StepVerifier.create(movieInfoRepository.findById(results.get(0).getMovieInfoId()))
+                .expectNext(new MovieInfo(results.get(0).getMovieInfoId(), "Batman Begins",
+                        2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15")))
+                .verifyComplete();
+        StepVerifier.create(movieInfoRepository.count())
+                .expectNext(3L)
+                .verifyComplete();
+        assertEquals(sequenceBefore + 2, moviesInfoController.movieInfoEventLog.lastSequence());
+    }
+}
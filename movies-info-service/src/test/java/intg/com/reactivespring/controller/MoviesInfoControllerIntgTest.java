@@ -1,7 +1,9 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
 import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.util.PageToken;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,13 +13,17 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "moviesinfo.stream.heartbeat=50ms")
 @ActiveProfiles("test")
 @AutoConfigureWebTestClient
 class MoviesInfoControllerIntgTest {
@@ -28,6 +34,9 @@ class MoviesInfoControllerIntgTest {
     @Autowired
     WebTestClient webTestClient;
 
+    @Autowired
+    MoviesInfoController moviesInfoController;
+
     static String MOVIES_INFO_URL = "/v1/moviesinfo/";
     static String MOVIE_BY_ID = "/v1/movie/";
     @BeforeEach
@@ -118,6 +127,51 @@ class MoviesInfoControllerIntgTest {
                 });
     }
 
+    @Test
+    void patchMovieInfo() {
+        var movieId = "abc";
+
+        webTestClient
+                .patch()
+                .uri(MOVIES_INFO_URL + "{id}", movieId)
+                .bodyValue(Map.of("year", 2013))
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody(MovieInfo.class)
+                .isEqualTo(new MovieInfo("abc", "Dark Knight Rises",
+                        2013, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")));
+
+        StepVerifier.create(movieInfoRepository.findById(movieId))
+                .expectNextMatches(movieInfo -> movieInfo.getYear() == 2013
+                        && movieInfo.getName().equals("Dark Knight Rises"))
+                .verifyComplete();
+    }
+
+    @Test
+    void patchMovieInfoInvalid() {
+        webTestClient
+                .patch()
+                .uri(MOVIES_INFO_URL + "{id}", "abc")
+                .bodyValue(Map.of("name", "", "year", -1))
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("movieInfo.name cannot be empty,movieInfo.year must be a Positive value");
+    }
+
+    @Test
+    void patchMovieInfoNotFound() {
+        webTestClient
+                .patch()
+                .uri(MOVIES_INFO_URL + "{id}", "def")
+                .bodyValue(Map.of("year", 2013))
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
     @Test
     void deleteMovieInfo() {
         var movieId = "abc";
@@ -138,6 +192,37 @@ class MoviesInfoControllerIntgTest {
                 .hasSize(2);
     }
 
+    @Test
+    void deleteMovieInfoIsStreamed() {
+        var eventLog = moviesInfoController.movieInfoEventLog;
+        var lastSequence = eventLog.lastSequence();
+
+        webTestClient
+                .delete()
+                .uri(MOVIES_INFO_URL + "{id}", "abc")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful();
+
+        var events = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "stream")
+                .header("Last-Event-ID", eventLog.epoch() + ":" + lastSequence)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(MovieInfoEvent.class)
+                .getResponseBody();
+
+        StepVerifier.create(events)
+                .assertNext(event -> {
+                    assertEquals(MovieInfoEvent.Type.DELETE, event.getType());
+                    assertEquals("abc", event.getMovieInfo().getMovieInfoId());
+                })
+                .thenCancel()
+                .verify();
+    }
+
     @Test
     void updateMovieInfoNotFound() {
         var movieId = "def";
@@ -179,6 +264,22 @@ class MoviesInfoControllerIntgTest {
                 .expectBodyList(MovieInfo.class)
                 .hasSize(1);
     }
+    @Test
+    void getMovieInfosByIds(){
+        var uri = UriComponentsBuilder.fromUriString(MOVIES_INFO_URL)
+                .queryParam("ids", "abc,def")
+                .buildAndExpand().toUri();
+
+        webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
     @Test
     void getMovieInfoByName(){
         var movieName = "Batman Begins";
@@ -196,4 +297,131 @@ class MoviesInfoControllerIntgTest {
                 .hasSize(1);
     }
 
-}
\ No newline at end of file
+    @Test
+    void getMovieInfoPages(){
+        var firstPage = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2)
+                .returnResult();
+        var next = firstPage.getResponseHeaders().getFirst(PageToken.NEXT_TOKEN_HEADER);
+        assertNotNull(next);
+
+        var secondPage = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=2&next={next}", next)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1)
+                .returnResult();
+        assertNull(secondPage.getResponseHeaders().getFirst(PageToken.NEXT_TOKEN_HEADER));
+
+        var names = new HashSet<String>();
+        firstPage.getResponseBody().forEach(movieInfo -> names.add(movieInfo.getName()));
+        secondPage.getResponseBody().forEach(movieInfo -> names.add(movieInfo.getName()));
+        assertEquals(3, names.size());
+    }
+
+    @Test
+    void getMovieInfoPageByYear(){
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?year=2005&limit=10")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader().doesNotExist(PageToken.NEXT_TOKEN_HEADER)
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void streamMovieInfoResumesAfterLastEventId() {
+        var eventLog = moviesInfoController.movieInfoEventLog;
+        var lastSequence = eventLog.lastSequence();
+        for (var name : List.of("Big Short", "Vice")) {
+            webTestClient
+                    .post()
+                    .uri(MOVIES_INFO_URL)
+                    .bodyValue(new MovieInfo(null, name, 2015, List.of("Christian Bale"), LocalDate.parse("2015-12-11")))
+                    .exchange()
+                    .expectStatus()
+                    .isCreated();
+        }
+
+        var events = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "stream")
+                .header("Last-Event-ID", eventLog.epoch() + ":" + (lastSequence + 1))
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(MovieInfoEvent.class)
+                .getResponseBody();
+
+        StepVerifier.create(events)
+                .assertNext(event -> {
+                    assertEquals(lastSequence + 2, event.getSequence());
+                    assertEquals("Vice", event.getMovieInfo().getName());
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void streamMovieInfoSignalsGapForEventIdFromBeforeARestart() {
+        var events = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "stream")
+                .header("Last-Event-ID", "epoch-before-restart:1")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(MovieInfoEvent.class)
+                .getResponseBody();
+
+        StepVerifier.create(events)
+                .assertNext(event -> {
+                    assertEquals(MovieInfoEvent.Type.GAP, event.getType());
+                    assertEquals(moviesInfoController.movieInfoEventLog.epoch(), event.getEpoch());
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void streamMovieInfoSkipsHeartbeatsWhileIdle() {
+        var eventLog = moviesInfoController.movieInfoEventLog;
+        var lastSequence = eventLog.lastSequence();
+
+        var events = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "stream")
+                .header("Last-Event-ID", eventLog.epoch() + ":" + lastSequence)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(MovieInfoEvent.class)
+                .getResponseBody();
+
+        StepVerifier.create(events)
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(200))
+                .then(() -> webTestClient
+                        .post()
+                        .uri(MOVIES_INFO_URL)
+                        .bodyValue(new MovieInfo(null, "Ford v Ferrari", 2019, List.of("Christian Bale"), LocalDate.parse("2019-11-15")))
+                        .exchange()
+                        .expectStatus()
+                        .isCreated())
+                .assertNext(event -> assertEquals("Ford v Ferrari", event.getMovieInfo().getName()))
+                .thenCancel()
+                .verify();
+    }
+}
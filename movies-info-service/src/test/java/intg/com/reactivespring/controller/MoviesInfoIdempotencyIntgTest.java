@@ -0,0 +1,114 @@
+package com.reactivespring.controller;
+
+import com.reactivespring.domain.IdempotencyRecord;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.repository.MovieInfoRepository;
+import com.reactivespring.service.IdempotentWrites;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+class MoviesInfoIdempotencyIntgTest {
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    MoviesInfoController moviesInfoController;
+
+    static String MOVIES_INFO_URL = "/v1/moviesinfo";
+
+    @AfterEach
+    void tearDown() {
+        movieInfoRepository.deleteAll().block();
+        mongoTemplate.dropCollection(IdempotencyRecord.class).block();
+    }
+
+    @Test
+    void retryGetsTheFirstResponse() {
+        var movieInfo = new MovieInfo(null, "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+        var sequenceBefore = moviesInfoController.movieInfoEventLog.lastSequence();
+
+        var first = addMovieInfo("retry-key", movieInfo);
+        var retried = addMovieInfo("retry-key", movieInfo);
+
+        assertEquals(first, retried);
+        StepVerifier.create(movieInfoRepository.count())
+                .expectNext(1L)
+                .verifyComplete();
+        assertEquals(sequenceBefore + 1, moviesInfoController.movieInfoEventLog.lastSequence());
+    }
+
+    @Test
+    void concurrentDuplicatesWaitForTheFirst() {
+        var webClient = WebClient.create("http://localhost:" + port);
+
+        var movieInfoIds = Flux.range(0, 10)
+                .flatMap(i -> webClient.post()
+                        .uri(MOVIES_INFO_URL)
+                        .header(IdempotentWrites.HEADER, "concurrent-key")
+                        .bodyValue(new MovieInfo(null, "Batman Begins", 2005, List.of("Christian Bale"), null))
+                        .retrieve()
+                        .bodyToMono(MovieInfo.class)
+                        .map(MovieInfo::getMovieInfoId))
+                .distinct()
+                .collectList()
+                .block();
+
+        assertEquals(1, movieInfoIds.size());
+        StepVerifier.create(movieInfoRepository.count())
+                .expectNext(1L)
+                .verifyComplete();
+    }
+
+    @Test
+    void keyReusedForADifferentRequest() {
+        addMovieInfo("reused-key", new MovieInfo(null, "Batman Begins", 2005, List.of("Christian Bale"), null));
+
+        webTestClient.post()
+                .uri(MOVIES_INFO_URL)
+                .header(IdempotentWrites.HEADER, "reused-key")
+                .bodyValue(new MovieInfo(null, "The Dark Knight", 2008, List.of("Christian Bale"), null))
+                .exchange()
+                .expectStatus().isEqualTo(422);
+    }
+
+    private MovieInfo addMovieInfo(String idempotencyKey, MovieInfo movieInfo) {
+        return webTestClient.post()
+                .uri(MOVIES_INFO_URL)
+                .header(IdempotentWrites.HEADER, idempotencyKey)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(MovieInfo.class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
@@ -0,0 +1,59 @@
+package com.reactivespring.controller;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.repository.MovieInfoRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@AutoConfigureMetrics
+class MoviesInfoMetricsIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @AfterEach
+    void tearDown() {
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void prometheusScrapeHasRouteDownstreamAndStreamMetrics() {
+        movieInfoRepository.save(new MovieInfo("abc", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))).block();
+        webTestClient.get()
+                .uri("/v1/moviesinfo/{id}", "abc")
+                .exchange()
+                .expectStatus().isOk();
+
+        var scrape = webTestClient.get()
+                .uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertTrue(scrape.contains("http_server_requests_seconds_bucket{application=\"movies-info-service\","
+                + "exception=\"None\",method=\"GET\",outcome=\"SUCCESS\",status=\"200\",uri=\"/v1/moviesinfo/{id}\""), scrape);
+        assertTrue(scrape.matches("(?s).*mongodb_driver_commands_seconds_bucket\\{[^}]*collection=\"movieInfo\",command=\"find\".*"));
+        assertTrue(scrape.contains("stream_sink_subscribers{application=\"movies-info-service\",sink=\"all\",stream=\"moviesinfo\",}"));
+        assertTrue(scrape.contains("stream_emit_failures_total{application=\"movies-info-service\",result=\"fail_overflow\",stream=\"moviesinfo\",}"));
+    }
+}
@@ -0,0 +1,40 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Runs every query method declared in this project's repositories and fails when one of them
+ * is planned as a COLLSCAN, see {@link QueryIndexCoverage}.
+ */
+@DataMongoTest
+@ActiveProfiles("test")
+@Import(QueryIndexCoverage.CommandCapture.class)
+class QueryIndexCoverageIntgTest {
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    ReactiveMongoTemplate mongoTemplate;
+
+    QueryIndexCoverage coverage;
+
+    @BeforeEach
+    void ensureIndexes() {
+        coverage = new QueryIndexCoverage(mongoTemplate);
+        coverage.ensureIndexes(MovieInfo.class);
+    }
+
+    @Test
+    void everyRepositoryQueryUsesAnIndex() throws Exception {
+        coverage.checkQueryMethods(MovieInfoRepository.class, movieInfoRepository);
+        coverage.assertEveryQueryUsesAnIndex();
+    }
+}
@@ -1,12 +1,17 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.service.IdempotentWrites;
 import com.reactivespring.service.MoviesInfoService;
+import com.reactivespring.util.PageToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -19,6 +24,7 @@ import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest(controllers = MoviesInfoController.class)
+@Import({SimpleMeterRegistry.class, IdempotentWrites.class})
 @AutoConfigureWebTestClient
 class MoviesInfoControllerTest {
 
@@ -28,6 +34,9 @@ class MoviesInfoControllerTest {
     @MockBean
     private MoviesInfoService moviesInfoService;
 
+    @MockBean
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
     static String MOVIES_INFO_URL = "/v1/moviesinfo/";
 
     @Test
@@ -52,6 +61,73 @@ class MoviesInfoControllerTest {
                 .hasSize(3);
     }
 
+    @Test
+    void getMovieInfosByIds() {
+        var movieinfos = List.of(new MovieInfo("abc", "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                new MovieInfo("def", "The Dark Knight",
+                        2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")));
+
+        when(moviesInfoService.getMovieInfosByIds(List.of("abc", "def", "ghi"))).thenReturn(Flux.fromIterable(movieinfos));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?ids=abc,def,ghi")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getMovieInfoPage() {
+        var movieinfos = List.of(new MovieInfo("a", "Batman Begins",
+                        2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                new MovieInfo("b", "The Dark Knight",
+                        2008, List.of("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")),
+                new MovieInfo("c", "Dark Knight Rises",
+                        2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")));
+
+        when(moviesInfoService.getMovieInfoPage(null, null, null, 2)).thenReturn(Flux.fromIterable(movieinfos));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader().valueEquals(PageToken.NEXT_TOKEN_HEADER, PageToken.encode("b"))
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getMovieInfoPage_invalidLimit() {
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=0")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getMovieInfosByIds_withOtherFilter() {
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?ids=a,b&limit=10")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?ids=a,b&year=2005")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
     @Test
     void getMovieById() {
         var movieInfo = new MovieInfo("123", "Batman Begins",
@@ -0,0 +1,246 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MovieInfoEventLogTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void replaysRetainedEventsThenLiveEvents() {
+        var eventLog = new MovieInfoEventLog(10);
+        eventLog.append(movieInfo("1"));
+        eventLog.append(movieInfo("2"));
+
+        StepVerifier.create(eventLog.events())
+                .assertNext(event -> assertEquals(1, event.getSequence()))
+                .assertNext(event -> assertEquals(2, event.getSequence()))
+                .then(() -> eventLog.append(movieInfo("3")))
+                .assertNext(event -> assertEquals("3", event.getMovieInfo().getMovieInfoId()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void resumesAfterLastSeenSequence() {
+        var eventLog = new MovieInfoEventLog(10);
+        for (int i = 1; i <= 5; i++) {
+            eventLog.append(movieInfo(String.valueOf(i)));
+        }
+
+        StepVerifier.create(eventLog.events(3L))
+                .assertNext(event -> assertEquals(4, event.getSequence()))
+                .assertNext(event -> assertEquals(5, event.getSequence()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void signalsGapWhenResumeSequenceWasEvicted() {
+        var eventLog = new MovieInfoEventLog(3);
+        for (int i = 1; i <= 10; i++) {
+            eventLog.append(movieInfo(String.valueOf(i)));
+        }
+
+        StepVerifier.create(eventLog.events(2L))
+                .assertNext(event -> {
+                    assertEquals(MovieInfoEvent.Type.GAP, event.getType());
+                    assertEquals(7, event.getSequence());
+                })
+                .assertNext(event -> assertEquals(8, event.getSequence()))
+                .assertNext(event -> assertEquals(9, event.getSequence()))
+                .assertNext(event -> assertEquals(10, event.getSequence()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void appendAllNotifiesOnceForTheBatch() {
+        var eventLog = new MovieInfoEventLog(10);
+        eventLog.append(movieInfo("1"));
+
+        StepVerifier.create(eventLog.events(1L).map(MovieInfoEvent::getSequence))
+                .then(() -> assertEquals(4, eventLog.appendAll(List.of(movieInfo("2"), movieInfo("3"), movieInfo("4")))))
+                .expectNext(2L, 3L, 4L)
+                .then(() -> assertEquals(4, eventLog.appendAll(List.of())))
+                .expectNoEvent(Duration.ofMillis(50))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void signalsGapForSequenceFromBeforeRestart() {
+        var eventLog = new MovieInfoEventLog(3);
+        eventLog.append(movieInfo("1"));
+
+        StepVerifier.create(eventLog.events(500L))
+                .assertNext(event -> assertEquals(MovieInfoEvent.Type.GAP, event.getType()))
+                .assertNext(event -> assertEquals(1, event.getSequence()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void resumesAfterEventIdOfTheSameEpoch() {
+        var eventLog = new MovieInfoEventLog(10);
+        for (int i = 1; i <= 3; i++) {
+            eventLog.append(movieInfo(String.valueOf(i)));
+        }
+
+        StepVerifier.create(eventLog.eventsAfter(eventLog.epoch() + ":2", null))
+                .assertNext(event -> {
+                    assertEquals(eventLog.epoch(), event.getEpoch());
+                    assertEquals(3, event.getSequence());
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void signalsGapForEventIdOfAnotherEpoch() {
+        var beforeRestart = new MovieInfoEventLog(10);
+        var afterRestart = new MovieInfoEventLog(10);
+        for (int i = 1; i <= 3; i++) {
+            beforeRestart.append(movieInfo("old" + i));
+            afterRestart.append(movieInfo("new" + i));
+        }
+
+        // the same sequence, but another history
+        StepVerifier.create(afterRestart.eventsAfter(beforeRestart.epoch() + ":2", null))
+                .assertNext(event -> {
+                    assertEquals(MovieInfoEvent.Type.GAP, event.getType());
+                    assertEquals(afterRestart.epoch(), event.getEpoch());
+                })
+                .assertNext(event -> assertEquals("new1", event.getMovieInfo().getMovieInfoId()))
+                .assertNext(event -> assertEquals("new2", event.getMovieInfo().getMovieInfoId()))
+                .assertNext(event -> assertEquals("new3", event.getMovieInfo().getMovieInfoId()))
+                .thenCancel()
+                .verify();
+        StepVerifier.create(afterRestart.eventsAfter("2", null))
+                .assertNext(event -> assertEquals(MovieInfoEvent.Type.GAP, event.getType()))
+                .assertNext(event -> assertEquals(1, event.getSequence()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void heapStaysFlatAfterAMillionEvents() {
+        var eventLog = new MovieInfoEventLog(1000);
+        var subscription = eventLog.events().subscribe();
+        var movieInfo = movieInfo("1");
+
+        for (int i = 0; i < 10_000; i++) {
+            eventLog.append(movieInfo);
+        }
+        var baseline = usedHeapAfterGc();
+
+        for (int i = 0; i < 1_000_000; i++) {
+            eventLog.append(new MovieInfo(String.valueOf(i), "Batman Begins",
+                    2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15")));
+        }
+        var after = usedHeapAfterGc();
+        subscription.dispose();
+
+        assertEquals(1_010_000, eventLog.lastSequence());
+        var growthMb = (after - baseline) / (1024 * 1024);
+        assertTrue(growthMb < 16, "heap grew by " + growthMb + "MB");
+    }
+
+    @Test
+    void dropOldestSkipsToTheNewestEventsOfASlowSubscriber() {
+        var eventLog = new MovieInfoEventLog(100);
+        var policy = policy(StreamSubscriberPolicy.Overflow.DROP_OLDEST);
+
+        StepVerifier.create(eventLog.events(null, policy), 0)
+                .then(() -> {
+                    for (int i = 1; i <= 6; i++) {
+                        eventLog.append(movieInfo(String.valueOf(i)));
+                    }
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .assertNext(event -> assertEquals(1, event.getSequence()))
+                .assertNext(event -> {
+                    assertEquals(MovieInfoEvent.Type.GAP, event.getType());
+                    assertEquals(4, event.getSequence());
+                })
+                .assertNext(event -> assertEquals(5, event.getSequence()))
+                .assertNext(event -> assertEquals(6, event.getSequence()))
+                .thenCancel()
+                .verify();
+
+        assertEquals(3.0, meterRegistry.get("stream.events.dropped").counter().count());
+    }
+
+    @Test
+    void conflateKeepsTheLatestEventPerMovieInfoOfASlowSubscriber() {
+        var eventLog = new MovieInfoEventLog(100);
+        var policy = policy(StreamSubscriberPolicy.Overflow.CONFLATE);
+
+        StepVerifier.create(eventLog.events(null, policy), 0)
+                .then(() -> List.of("a", "a", "b", "a", "c").forEach(id -> eventLog.append(movieInfo(id))))
+                .thenRequest(Long.MAX_VALUE)
+                .assertNext(event -> assertEquals(1, event.getSequence()))
+                .assertNext(event -> {
+                    assertEquals(MovieInfoEvent.Type.GAP, event.getType());
+                    assertEquals(3, event.getSequence());
+                })
+                .assertNext(event -> assertEquals(4, event.getSequence()))
+                .assertNext(event -> assertEquals(5, event.getSequence()))
+                .thenCancel()
+                .verify();
+
+        assertEquals(1.0, meterRegistry.get("stream.events.conflated").counter().count());
+        assertEquals(1.0, meterRegistry.get("stream.events.dropped").counter().count());
+    }
+
+    @Test
+    void disconnectEndsASlowSubscriberButNotItsResume() {
+        var eventLog = new MovieInfoEventLog(100);
+        var policy = policy(StreamSubscriberPolicy.Overflow.DISCONNECT);
+
+        StepVerifier.create(eventLog.events(null, policy), 0)
+                .then(() -> {
+                    for (int i = 1; i <= 4; i++) {
+                        eventLog.append(movieInfo(String.valueOf(i)));
+                    }
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .assertNext(event -> assertEquals(1, event.getSequence()))
+                .expectError()
+                .verify();
+
+        StepVerifier.create(eventLog.events(1L, policy))
+                .expectNextCount(3)
+                .thenCancel()
+                .verify();
+        assertEquals(1.0, meterRegistry.get("stream.subscribers.disconnected").counter().count());
+    }
+
+    private StreamSubscriberPolicy policy(StreamSubscriberPolicy.Overflow overflow) {
+        return new StreamSubscriberPolicy("moviesinfo", overflow, 2, 10, Duration.ZERO, meterRegistry);
+    }
+
+    private static long usedHeapAfterGc() {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static MovieInfo movieInfo(String id) {
+        return new MovieInfo(id, "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+    }
+}
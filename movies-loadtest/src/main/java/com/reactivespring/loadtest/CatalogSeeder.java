@@ -0,0 +1,137 @@
+package com.reactivespring.loadtest;
+
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes a synthetic catalog the way the services map it: movie infos with the ids 1 to movies, and
+ * reviews spread over them by a Zipf distribution. The movie of rank k gets a share of the reviews
+ * proportional to 1/k^zipfExponent; ranks are assigned to movie ids in a shuffled order so popular
+ * movies are not all at the start of the id range. Documents are generated as they are written, in
+ * unordered insertMany batches, so memory does not grow with the size of the catalog.
+ * The review stats of movies-review-service are not maintained.
+ */
+@Slf4j
+public class CatalogSeeder {
+
+    static final String MOVIE_INFO_COLLECTION = "movieInfo";
+    static final String REVIEW_COLLECTION = "review";
+    private static final InsertManyOptions UNORDERED = new InsertManyOptions().ordered(false);
+    private static final List<String> CAST = List.of("Christian Bale", "Michael Cane", "Tom Hardy",
+            "Anne Hathaway", "Gary Oldman", "Morgan Freeman", "Cillian Murphy", "Heath Ledger");
+
+    private final MongoDatabase database;
+    private final LoadTestOptions options;
+
+    public CatalogSeeder(MongoDatabase database, LoadTestOptions options) {
+        this.database = database;
+        this.options = options;
+    }
+
+    public void seed() {
+        var movieInfos = database.getCollection(MOVIE_INFO_COLLECTION);
+        var reviews = database.getCollection(REVIEW_COLLECTION);
+        Mono.from(movieInfos.drop()).then(Mono.from(reviews.drop())).block();
+
+        var start = System.nanoTime();
+        var movieInfoCount = write(movieInfos, Flux.range(1, options.getMovies()).map(this::movieInfo));
+        log.info("Wrote {} movie infos in {} ms", movieInfoCount, (System.nanoTime() - start) / 1_000_000);
+
+        start = System.nanoTime();
+        var random = new Random(options.getRandomSeed());
+        var movieIds = shuffledMovieIds(random);
+        var counts = zipfCounts(options.getMovies(), options.getReviews(), options.getZipfExponent());
+        var reviewDocuments = Flux.range(0, options.getMovies())
+                .concatMap(rank -> Flux.range(0, counts[rank])
+                        .map(i -> review(movieIds[rank], i, random)));
+        var reviewCount = write(reviews, reviewDocuments);
+        log.info("Wrote {} reviews in {} ms, the most reviewed movie has {}", reviewCount,
+                (System.nanoTime() - start) / 1_000_000, counts[0]);
+    }
+
+    private long write(MongoCollection<Document> collection, Flux<Document> documents) {
+        var written = new AtomicLong();
+        var reportEvery = Math.max(1, 1_000_000 / options.getBatchSize());
+        documents.buffer(options.getBatchSize())
+                .flatMap(batch -> Mono.from(collection.insertMany(batch, UNORDERED)).thenReturn(batch.size()),
+                        options.getWriteConcurrency())
+                .index()
+                .doOnNext(batch -> {
+                    written.addAndGet(batch.getT2());
+                    if ((batch.getT1() + 1) % reportEvery == 0) {
+                        log.info("{} : {} documents written", collection.getNamespace().getCollectionName(), written.get());
+                    }
+                })
+                .blockLast();
+        return written.get();
+    }
+
+    /**
+     * Reviews per rank, rounded down with the rest going one each to the highest ranks.
+     */
+    static int[] zipfCounts(int movies, long reviews, double exponent) {
+        var weights = new double[movies];
+        var total = 0.0;
+        for (int rank = 0; rank < movies; rank++) {
+            weights[rank] = 1.0 / Math.pow(rank + 1, exponent);
+            total += weights[rank];
+        }
+        var counts = new int[movies];
+        long assigned = 0;
+        for (int rank = 0; rank < movies; rank++) {
+            counts[rank] = (int) (reviews * weights[rank] / total);
+            assigned += counts[rank];
+        }
+        for (int rank = 0; assigned < reviews; rank = (rank + 1) % movies) {
+            counts[rank]++;
+            assigned++;
+        }
+        return counts;
+    }
+
+    private long[] shuffledMovieIds(Random random) {
+        var movieIds = new long[options.getMovies()];
+        for (int i = 0; i < movieIds.length; i++) {
+            movieIds[i] = i + 1;
+        }
+        for (int i = movieIds.length - 1; i > 0; i--) {
+            var j = random.nextInt(i + 1);
+            var movieId = movieIds[i];
+            movieIds[i] = movieIds[j];
+            movieIds[j] = movieId;
+        }
+        return movieIds;
+    }
+
+    private Document movieInfo(int movieId) {
+        var year = 1950 + movieId % 75;
+        var releaseDate = LocalDate.of(year, 1 + movieId % 12, 1 + movieId % 28);
+        return new Document("_id", String.valueOf(movieId))
+                .append("name", "Movie " + movieId)
+                .append("year", year)
+                .append("cast", List.of(CAST.get(movieId % CAST.size()), CAST.get((movieId + 3) % CAST.size())))
+                .append("release_date", Date.from(releaseDate.atStartOfDay(ZoneId.systemDefault()).toInstant()))
+                .append("_class", "com.reactivespring.domain.MovieInfo");
+    }
+
+    private static Document review(long movieId, int index, Random random) {
+        return new Document("_id", new ObjectId())
+                .append("movieInfoId", movieId)
+                .append("comment", "Review " + index + " of movie " + movieId)
+                .append("rating", random.nextInt(101) / 10.0)
+                .append("_class", "com.reactivespring.domain.Review");
+    }
+}
@@ -0,0 +1,67 @@
+package com.reactivespring.loadtest;
+
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfig;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.IFeatureAwareVersion;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.distribution.Versions;
+import de.flapdoodle.embed.process.runtime.Network;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+
+/**
+ * The flapdoodle mongod the integration tests run on, or the external database given as mongoUri.
+ */
+@Slf4j
+public class EmbeddedMongo implements AutoCloseable {
+
+    private final String connectionString;
+    private final MongodExecutable executable;
+
+    private EmbeddedMongo(String connectionString, MongodExecutable executable) {
+        this.connectionString = connectionString;
+        this.executable = executable;
+    }
+
+    public static EmbeddedMongo start(LoadTestOptions options) throws IOException {
+        if (options.getMongoUri() != null) {
+            log.info("Using the database at {}", options.getMongoUri());
+            return new EmbeddedMongo(options.getMongoUri(), null);
+        }
+        var port = Network.getFreeServerPort();
+        var config = MongodConfig.builder()
+                .version(version(options.getMongoVersion()))
+                .net(new Net(port, Network.localhostIsIPv6()))
+                .build();
+        var executable = MongodStarter.getDefaultInstance().prepare(config);
+        executable.start();
+        log.info("Started embedded MongoDB {} on port {}", options.getMongoVersion(), port);
+        return new EmbeddedMongo("mongodb://localhost:" + port, executable);
+    }
+
+    /**
+     * Known versions come with the features flapdoodle needs to start them, as in Spring Boot.
+     */
+    private static IFeatureAwareVersion version(String version) {
+        for (var known : Version.values()) {
+            if (known.asInDownloadPath().equals(version)) {
+                return known;
+            }
+        }
+        return Versions.withFeatures(de.flapdoodle.embed.process.distribution.Version.of(version));
+    }
+
+    public String connectionString() {
+        return connectionString;
+    }
+
+    @Override
+    public void close() {
+        if (executable != null) {
+            executable.stop();
+        }
+    }
+}
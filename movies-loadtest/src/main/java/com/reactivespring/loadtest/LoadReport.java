@@ -0,0 +1,85 @@
+package com.reactivespring.loadtest;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The machine readable result of a run, written as JSON. Latencies are in milliseconds and measured
+ * from the time a request was due to be sent, so a backlog shows up in them instead of being hidden.
+ */
+@Data
+public class LoadReport {
+
+    private String startedAt;
+    private Dataset dataset;
+    private Map<String, String> endpoints = new LinkedHashMap<>();
+    private Map<String, Integer> mix;
+    private List<Stage> stages = new ArrayList<>();
+    /** the highest throughput any stage achieved */
+    private double saturationThroughput;
+    /** the highest target rate of a stage that was not saturated, 0 when every stage was */
+    private double maxSustainedRate;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Dataset {
+        private int movies;
+        private long reviews;
+        private double zipfExponent;
+        private long randomSeed;
+        private boolean seeded;
+        private long seedMillis;
+    }
+
+    @Data
+    public static class Stage {
+        private double targetRate;
+        private long durationMillis;
+        private long sent;
+        private long completed;
+        private long errors;
+        /** not sent because maxInFlight requests were outstanding */
+        private long dropped;
+        /** successful responses per second */
+        private double throughput;
+        private boolean saturated;
+        private Latency latency;
+        private Map<String, Latency> latencyByEndpoint = new LinkedHashMap<>();
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Latency {
+        private long count;
+        private double meanMillis;
+        private double p50Millis;
+        private double p90Millis;
+        private double p99Millis;
+        private double p999Millis;
+        private double p9999Millis;
+        private double maxMillis;
+
+        /**
+         * From a histogram of microseconds.
+         */
+        public static Latency of(Histogram histogram) {
+            return new Latency(histogram.getTotalCount(),
+                    histogram.getMean() / 1000.0,
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(90) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getValueAtPercentile(99.99) / 1000.0,
+                    histogram.getMaxValue() / 1000.0);
+        }
+    }
+}
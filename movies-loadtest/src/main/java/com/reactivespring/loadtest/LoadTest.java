@@ -0,0 +1,112 @@
+package com.reactivespring.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mongodb.reactivestreams.client.MongoClients;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Starts movies-info-service, movies-review-service and movies-service in this JVM on one database, seeds
+ * a synthetic catalog, then runs one open model stage per configured rate after a warmup at the first
+ * rate, and writes a {@link LoadReport}. See {@link LoadTestOptions} for the arguments.
+ */
+@Slf4j
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        var options = LoadTestOptions.parse(args);
+        var report = new LoadReport();
+        report.setStartedAt(Instant.now().toString());
+        report.setMix(options.getMix());
+
+        try (var mongo = EmbeddedMongo.start(options)) {
+            report.setDataset(seed(mongo, options));
+
+            var mongoArgs = List.of("--spring.data.mongodb.uri=" + mongo.connectionString(),
+                    "--spring.data.mongodb.database=" + options.getDatabase());
+            try (var moviesInfoService = ServiceLauncher.start("moviesInfoService",
+                    "com.reactivespring.MoviesInfoServiceApplication", serviceArgs(mongoArgs));
+                 var reviewService = ServiceLauncher.start("reviewService",
+                         "com.reactivespring.MoviesReviewServiceApplication", serviceArgs(mongoArgs));
+                 var moviesService = ServiceLauncher.start("moviesService",
+                         "com.reactivespring.MoviesServiceApplication", serviceArgs(List.of(
+                                 "--restClient.moviesInfoUrl=" + moviesInfoService.baseUrl() + "/v1/moviesinfo",
+                                 "--restClient.movieReviewsUrl=" + reviewService.baseUrl() + "/v1/reviews")))) {
+
+                report.getEndpoints().put("movies", moviesService.baseUrl() + "/v1/movies/{id}");
+                report.getEndpoints().put("moviesinfo", moviesInfoService.baseUrl() + "/v1/moviesinfo/{id}");
+                report.getEndpoints().put("reviews", reviewService.baseUrl() + "/v1/reviews?movieInfoId={id}");
+                var endpoints = new LinkedHashMap<String, IntFunction<String>>();
+                report.getEndpoints().forEach((name, template) ->
+                        endpoints.put(name, movieId -> template.replace("{id}", String.valueOf(movieId))));
+
+                try (var load = new OpenModelLoad(options, endpoints)) {
+                    log.info("Warming up at {} requests per second for {}", options.getRates().get(0), options.getWarmup());
+                    load.run(options.getRates().get(0), options.getWarmup());
+                    for (var rate : options.getRates()) {
+                        var stage = load.run(rate, options.getStageDuration());
+                        log.info("{} requests per second : {} per second answered, p99 {} ms, {} errors, {} dropped{}",
+                                rate, Math.round(stage.getThroughput()), stage.getLatency().getP99Millis(),
+                                stage.getErrors(), stage.getDropped(), stage.isSaturated() ? ", saturated" : "");
+                        report.getStages().add(stage);
+                    }
+                }
+            }
+        }
+
+        summarize(report);
+        write(report, new File(options.getReport()));
+    }
+
+    private static LoadReport.Dataset seed(EmbeddedMongo mongo, LoadTestOptions options) {
+        var dataset = new LoadReport.Dataset(options.getMovies(), options.getReviews(), options.getZipfExponent(),
+                options.getRandomSeed(), !options.isSkipSeed(), 0);
+        if (options.isSkipSeed()) {
+            return dataset;
+        }
+        try (var client = MongoClients.create(mongo.connectionString())) {
+            var start = System.nanoTime();
+            new CatalogSeeder(client.getDatabase(options.getDatabase()), options).seed();
+            dataset.setSeedMillis((System.nanoTime() - start) / 1_000_000);
+        }
+        return dataset;
+    }
+
+    /**
+     * The profiles of the services point them at a local database, none is active here. Logging is
+     * reduced to warnings so it does not take part in the measurement.
+     */
+    private static List<String> serviceArgs(List<String> args) {
+        var serviceArgs = new ArrayList<>(args);
+        serviceArgs.add("--server.port=0");
+        serviceArgs.add("--spring.profiles.active=loadtest");
+        serviceArgs.add("--spring.main.banner-mode=off");
+        serviceArgs.add("--logging.level.root=WARN");
+        return serviceArgs;
+    }
+
+    private static void summarize(LoadReport report) {
+        for (var stage : report.getStages()) {
+            report.setSaturationThroughput(Math.max(report.getSaturationThroughput(), stage.getThroughput()));
+            if (!stage.isSaturated()) {
+                report.setMaxSustainedRate(Math.max(report.getMaxSustainedRate(), stage.getTargetRate()));
+            }
+        }
+    }
+
+    private static void write(LoadReport report, File file) throws Exception {
+        if (file.getAbsoluteFile().getParentFile() != null) {
+            file.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, report);
+        log.info("Saturation throughput {} per second, report written to {}",
+                Math.round(report.getSaturationThroughput()), file.getAbsolutePath());
+    }
+}
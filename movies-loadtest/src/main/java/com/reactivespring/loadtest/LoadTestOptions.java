@@ -0,0 +1,113 @@
+package com.reactivespring.loadtest;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Settings of a load test run, each can be given as a --name=value argument.
+ */
+@Data
+public class LoadTestOptions {
+
+    // synthetic catalog
+    private int movies = 100_000;
+    private long reviews = 10_000_000;
+    /** skew of the reviews per movie, the movie of rank k gets a share proportional to 1/k^zipfExponent */
+    private double zipfExponent = 1.0;
+    private long randomSeed = 42;
+    private int batchSize = 10_000;
+    private int writeConcurrency = 4;
+    /** reuses the catalog already in the database, with an external mongoUri */
+    private boolean skipSeed = false;
+
+    // database, embedded unless mongoUri is given
+    private String mongoUri;
+    private String mongoVersion = "3.5.5";
+    private String database = "loadtest";
+
+    // open model load, every rate in requests per second is one stage
+    private List<Double> rates = List.of(250.0, 500.0, 1000.0, 2000.0, 4000.0);
+    private Duration warmup = Duration.ofSeconds(10);
+    private Duration stageDuration = Duration.ofSeconds(30);
+    /** weight of each endpoint in the request mix */
+    private Map<String, Integer> mix = mix("movies=6,moviesinfo=2,reviews=2");
+    private int maxConnections = 500;
+    /** requests not sent because this many are outstanding are reported as dropped */
+    private int maxInFlight = 10_000;
+    private Duration requestTimeout = Duration.ofSeconds(10);
+    /** a stage is saturated once less than this share of its target rate completes */
+    private double saturationThreshold = 0.95;
+
+    private String report = System.getProperty("loadtest.report", "loadtest-report.json");
+
+    public static LoadTestOptions parse(String[] args) {
+        var options = new LoadTestOptions();
+        for (var arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Arguments are given as --name=value : " + arg);
+            }
+            var name = arg.substring(2, arg.indexOf('='));
+            var value = arg.substring(arg.indexOf('=') + 1);
+            options.set(name, value);
+        }
+        return options;
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "movies": movies = Integer.parseInt(value); break;
+            case "reviews": reviews = Long.parseLong(value); break;
+            case "zipfExponent": zipfExponent = Double.parseDouble(value); break;
+            case "randomSeed": randomSeed = Long.parseLong(value); break;
+            case "batchSize": batchSize = Integer.parseInt(value); break;
+            case "writeConcurrency": writeConcurrency = Integer.parseInt(value); break;
+            case "skipSeed": skipSeed = Boolean.parseBoolean(value); break;
+            case "mongoUri": mongoUri = value; break;
+            case "mongoVersion": mongoVersion = value; break;
+            case "database": database = value; break;
+            case "rates":
+                rates = Arrays.stream(value.split(",")).map(String::trim).map(Double::valueOf)
+                        .collect(Collectors.toList());
+                break;
+            case "warmup": warmup = duration(value); break;
+            case "stageDuration": stageDuration = duration(value); break;
+            case "mix": mix = mix(value); break;
+            case "maxConnections": maxConnections = Integer.parseInt(value); break;
+            case "maxInFlight": maxInFlight = Integer.parseInt(value); break;
+            case "requestTimeout": requestTimeout = duration(value); break;
+            case "saturationThreshold": saturationThreshold = Double.parseDouble(value); break;
+            case "report": report = value; break;
+            default: throw new IllegalArgumentException("Unknown option : " + name);
+        }
+    }
+
+    /**
+     * movies=6,moviesinfo=2,reviews=2, kept in the order given so a seeded run picks the same requests.
+     */
+    static Map<String, Integer> mix(String value) {
+        return Arrays.stream(value.split(","))
+                .map(entry -> entry.trim().split("="))
+                .collect(Collectors.toMap(entry -> entry[0], entry -> Integer.valueOf(entry[1]),
+                        (first, second) -> second, LinkedHashMap::new));
+    }
+
+    /**
+     * 500ms, 30s or 2m.
+     */
+    static Duration duration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        } else if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        } else if (value.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        throw new IllegalArgumentException("Durations are given as 500ms, 30s or 2m : " + value);
+    }
+}
@@ -0,0 +1,150 @@
+package com.reactivespring.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Recorder;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+/**
+ * Sends requests at a fixed arrival rate whether or not earlier ones were answered, as independent users
+ * would, instead of waiting for a response before sending the next one. Each request is timed from the
+ * moment it was due, so time spent queued behind a slow service counts against the service.
+ * The movie of every request is picked uniformly from the catalog, the endpoint by the weights of the mix.
+ */
+@Slf4j
+public class OpenModelLoad implements AutoCloseable {
+
+    private final LoadTestOptions options;
+    private final Map<String, IntFunction<String>> endpoints;
+    private final String[] names;
+    private final int[] cumulativeWeights;
+    private final ConnectionProvider connectionProvider;
+    private final HttpClient httpClient;
+    private final Random random;
+
+    public OpenModelLoad(LoadTestOptions options, Map<String, IntFunction<String>> endpoints) {
+        this.options = options;
+        this.endpoints = endpoints;
+        this.names = options.getMix().keySet().toArray(String[]::new);
+        this.cumulativeWeights = new int[names.length];
+        var total = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (!endpoints.containsKey(names[i])) {
+                throw new IllegalArgumentException("Unknown endpoint in the mix : " + names[i]);
+            }
+            total += options.getMix().get(names[i]);
+            cumulativeWeights[i] = total;
+        }
+        this.connectionProvider = ConnectionProvider.builder("loadtest")
+                .maxConnections(options.getMaxConnections())
+                .pendingAcquireMaxCount(-1)
+                .pendingAcquireTimeout(options.getRequestTimeout())
+                .build();
+        this.httpClient = HttpClient.create(connectionProvider)
+                .responseTimeout(options.getRequestTimeout());
+        this.random = new Random(options.getRandomSeed());
+    }
+
+    public LoadReport.Stage run(double rate, Duration duration) throws InterruptedException {
+        var overall = new Recorder(3);
+        var byEndpoint = new LinkedHashMap<String, Recorder>();
+        for (var name : names) {
+            byEndpoint.put(name, new Recorder(3));
+        }
+        var completed = new AtomicLong();
+        var errors = new AtomicLong();
+        var inFlight = new AtomicInteger();
+        var lastCompletion = new AtomicLong();
+        long sent = 0;
+        long dropped = 0;
+
+        var start = System.nanoTime();
+        var end = start + duration.toNanos();
+        for (long i = 0; ; i++) {
+            var due = start + (long) (i * 1_000_000_000.0 / rate);
+            if (due >= end) {
+                break;
+            }
+            var wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (inFlight.get() >= options.getMaxInFlight()) {
+                dropped++;
+                continue;
+            }
+            var name = pickEndpoint();
+            var url = endpoints.get(name).apply(1 + random.nextInt(options.getMovies()));
+            var recorder = byEndpoint.get(name);
+            inFlight.incrementAndGet();
+            sent++;
+            request(url)
+                    .doFinally(signal -> inFlight.decrementAndGet())
+                    .subscribe(status -> {
+                        var now = System.nanoTime();
+                        lastCompletion.accumulateAndGet(now, Math::max);
+                        if (status >= 400) {
+                            errors.incrementAndGet();
+                            return;
+                        }
+                        completed.incrementAndGet();
+                        var micros = (now - due) / 1000;
+                        recorder.recordValue(micros);
+                        overall.recordValue(micros);
+                    }, error -> errors.incrementAndGet());
+        }
+
+        var giveUp = System.nanoTime() + options.getRequestTimeout().toNanos() * 2;
+        while (inFlight.get() > 0 && System.nanoTime() < giveUp) {
+            Thread.sleep(10);
+        }
+
+        var stage = new LoadReport.Stage();
+        stage.setTargetRate(rate);
+        stage.setDurationMillis(duration.toMillis());
+        stage.setSent(sent);
+        stage.setCompleted(completed.get());
+        stage.setErrors(errors.get());
+        stage.setDropped(dropped);
+        var elapsedNanos = Math.max(duration.toNanos(), lastCompletion.get() - start);
+        stage.setThroughput(completed.get() * 1_000_000_000.0 / elapsedNanos);
+        stage.setSaturated(dropped > 0
+                || completed.get() < options.getSaturationThreshold() * rate * duration.toNanos() / 1_000_000_000.0);
+        stage.setLatency(LoadReport.Latency.of(overall.getIntervalHistogram()));
+        byEndpoint.forEach((name, recorder) ->
+                stage.getLatencyByEndpoint().put(name, LoadReport.Latency.of(recorder.getIntervalHistogram())));
+        return stage;
+    }
+
+    private String pickEndpoint() {
+        var pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return names[i];
+            }
+        }
+        return names[names.length - 1];
+    }
+
+    private Mono<Integer> request(String url) {
+        return httpClient.get()
+                .uri(url)
+                .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                .timeout(options.getRequestTimeout());
+    }
+
+    @Override
+    public void close() {
+        connectionProvider.dispose();
+    }
+}
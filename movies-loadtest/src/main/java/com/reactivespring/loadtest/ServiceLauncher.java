@@ -0,0 +1,107 @@
+package com.reactivespring.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a service in this JVM from its own runtime classpath, given as the loadtest.classpath.&lt;name&gt;
+ * system property. The services share package and class names, so each gets a class loader whose parent
+ * is the platform class loader and sees neither the other services nor the harness; Spring is reached
+ * through reflection for the same reason.
+ */
+@Slf4j
+public class ServiceLauncher implements AutoCloseable {
+
+    private final String name;
+    private final URLClassLoader classLoader;
+    private final Object context;
+    private final int port;
+
+    private ServiceLauncher(String name, URLClassLoader classLoader, Object context, int port) {
+        this.name = name;
+        this.classLoader = classLoader;
+        this.context = context;
+        this.port = port;
+    }
+
+    public static ServiceLauncher start(String name, String mainClass, List<String> args) throws Exception {
+        var classpath = System.getProperty("loadtest.classpath." + name);
+        if (classpath == null) {
+            throw new IllegalStateException("loadtest.classpath." + name + " is not set, run the loadTest Gradle task");
+        }
+        var classLoader = new URLClassLoader(name, urls(classpath), ClassLoader.getPlatformClassLoader());
+        var thread = Thread.currentThread();
+        var previous = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            var start = System.nanoTime();
+            var context = classLoader.loadClass("org.springframework.boot.SpringApplication")
+                    .getMethod("run", Class.class, String[].class)
+                    .invoke(null, classLoader.loadClass(mainClass), args.toArray(String[]::new));
+            var environment = classLoader.loadClass("org.springframework.context.ConfigurableApplicationContext")
+                    .getMethod("getEnvironment")
+                    .invoke(context);
+            var port = classLoader.loadClass("org.springframework.core.env.PropertyResolver")
+                    .getMethod("getProperty", String.class)
+                    .invoke(environment, "local.server.port");
+            log.info("Started {} on port {} in {} ms", name, port, (System.nanoTime() - start) / 1_000_000);
+            return new ServiceLauncher(name, classLoader, context, Integer.parseInt((String) port));
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+    }
+
+    private static URL[] urls(String classpath) throws MalformedURLException {
+        var urls = new ArrayList<URL>();
+        for (var entry : classpath.split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                urls.add(new File(entry).toURI().toURL());
+            }
+        }
+        return urls.toArray(URL[]::new);
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + port;
+    }
+
+    /**
+     * Stops the service. Being interrupted while it shuts down leaves it to the JVM exit, with the
+     * interrupt flag restored.
+     */
+    @Override
+    public void close() throws IOException {
+        var thread = Thread.currentThread();
+        var previous = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            classLoader.loadClass("org.springframework.context.ConfigurableApplicationContext")
+                    .getMethod("close")
+                    .invoke(context);
+            log.info("Stopped {}", name);
+        } catch (InvocationTargetException e) {
+            if (!(e.getCause() instanceof InterruptedException)) {
+                throw new IllegalStateException("Could not stop " + name, e.getCause());
+            }
+            thread.interrupt();
+            log.warn("Interrupted while stopping {}", name);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not stop " + name, e);
+        } finally {
+            thread.setContextClassLoader(previous);
+            classLoader.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Up to reviews.bucketing.maxReviewsPerBucket reviews of one movie, stored together when
+ * reviews.bucketing.enabled is set. {@code count} is the number of reviews in the bucket, {@code rated}
+ * the number of those with a rating and {@code sum} the sum of their ratings, so a movie's count and
+ * mean can be read from its bucket headers without the reviews. {@code firstId} and {@code lastId} bound
+ * the _ids of its reviews, reviews are appended to the latest bucket of a movie so buckets mostly hold
+ * consecutive id ranges and can be paged in firstId order.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document("reviewBucket")
+@CompoundIndexes({
+        @CompoundIndex(name = "movieInfoId_firstId", def = "{'movieInfoId': 1, 'firstId': 1}"),
+        @CompoundIndex(name = "movieInfoId_lastId_firstId", def = "{'movieInfoId': 1, 'lastId': 1, 'firstId': 1}"),
+        @CompoundIndex(name = "firstId", def = "{'firstId': 1}"),
+        @CompoundIndex(name = "lastId_firstId", def = "{'lastId': 1, 'firstId': 1}"),
+        @CompoundIndex(name = "reviews_id", def = "{'reviews._id': 1}")
+})
+public class ReviewBucket {
+
+    @Id
+    private String id;
+    private Long movieInfoId;
+    private int count;
+    private int rated;
+    private double sum;
+    private Object firstId;
+    private Object lastId;
+    private List<Review> reviews = new ArrayList<>();
+
+    /**
+     * Ids that look like an ObjectId are stored as one, like the _id of a review document.
+     */
+    public static Object idValue(String reviewId) {
+        return ObjectId.isValid(reviewId) ? new ObjectId(reviewId) : reviewId;
+    }
+
+    /**
+     * The order MongoDB sorts stored ids in: strings before ObjectIds.
+     */
+    public static int compareIds(Object id, Object other) {
+        if (id instanceof ObjectId && other instanceof ObjectId) {
+            return ((ObjectId) id).compareTo((ObjectId) other);
+        }
+        if (id instanceof ObjectId || other instanceof ObjectId) {
+            return id instanceof ObjectId ? 1 : -1;
+        }
+        return ((String) id).compareTo((String) other);
+    }
+}
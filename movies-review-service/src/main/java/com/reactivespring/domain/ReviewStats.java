@@ -0,0 +1,56 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rating statistics of one movie, covering every review that carries a rating.
+ * The histogram is keyed by the whole part of the rating ("9" counts ratings in [9, 10)). ratingCounts
+ * counts every distinct rating, keyed by {@link #ratingKey}, so a removed min or max can be replaced
+ * without reading the reviews. version counts the writes to the document. Both are internal and not part
+ * of the JSON.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class ReviewStats {
+
+    @Id
+    private Long movieInfoId;
+    private long count;
+    private double sum;
+    private Double min;
+    private Double max;
+    private Map<String, Long> histogram = new TreeMap<>();
+    @JsonIgnore
+    private Map<String, Long> ratingCounts = new TreeMap<>();
+    @JsonIgnore
+    private long version;
+
+    public static ReviewStats empty(Long movieInfoId) {
+        return new ReviewStats(movieInfoId, 0, 0, null, null, new TreeMap<>(), new TreeMap<>(), 0);
+    }
+
+    /**
+     * The rating as a field name, which must not contain the dots of a path.
+     */
+    public static String ratingKey(double rating) {
+        return String.valueOf(rating).replace('.', '_');
+    }
+
+    public static double rating(String ratingKey) {
+        return Double.parseDouble(ratingKey.replace('_', '.'));
+    }
+
+    public Double getMean() {
+        return count == 0 ? null : sum / count;
+    }
+}
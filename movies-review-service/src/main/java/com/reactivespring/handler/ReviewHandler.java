@@ -4,8 +4,18 @@ import com.reactivespring.domain.Review;
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
 import com.reactivespring.repository.ReviewReactorRepository;
+import com.reactivespring.service.IdempotentWrites;
+import com.reactivespring.service.ReviewStatsService;
+import com.reactivespring.service.ReviewWriteBatcher;
+import com.reactivespring.stream.ReviewStreamGap;
+import com.reactivespring.stream.ReviewStreamRegistry;
+import com.reactivespring.stream.StreamSubscriberPolicy;
+import com.reactivespring.util.PageToken;
+import com.reactivespring.util.ServerTiming;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
@@ -13,10 +23,14 @@ import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Component
@@ -25,26 +39,62 @@ public class ReviewHandler {
 
     @Autowired
     private Validator validator;
-    Sinks.Many<Review> reviewSink = Sinks.many().replay().latest();
+    ReviewStreamRegistry reviewStreamRegistry = new ReviewStreamRegistry();
+    StreamSubscriberPolicy reviewStreamPolicy;
     private ReviewReactorRepository reviewReactorRepository;
+    private ReviewStatsService reviewStatsService;
+    private ReviewWriteBatcher reviewWriteBatcher;
+    private IdempotentWrites idempotentWrites;
 
-    public ReviewHandler(ReviewReactorRepository reviewReactorRepository) {
+    @Value("${serverTiming.enabled:false}")
+    private boolean serverTimingEnabled;
+
+    public ReviewHandler(ReviewReactorRepository reviewReactorRepository, ReviewStatsService reviewStatsService,
+                         ReviewWriteBatcher reviewWriteBatcher, IdempotentWrites idempotentWrites,
+                         MeterRegistry meterRegistry,
+                         @Value("${reviews.stream.overflow:DROP_OLDEST}") StreamSubscriberPolicy.Overflow streamOverflow,
+                         @Value("${reviews.stream.bufferSize:256}") int streamBufferSize,
+                         @Value("${reviews.stream.maxSubscribers:10000}") int streamMaxSubscribers,
+                         @Value("${reviews.stream.heartbeat:15s}") Duration streamHeartbeat) {
         this.reviewReactorRepository = reviewReactorRepository;
+        this.reviewStatsService = reviewStatsService;
+        this.reviewWriteBatcher = reviewWriteBatcher;
+        this.idempotentWrites = idempotentWrites;
+        this.reviewStreamRegistry.bindTo(meterRegistry);
+        this.reviewStreamPolicy = new StreamSubscriberPolicy("reviews", streamOverflow, streamBufferSize,
+                streamMaxSubscribers, streamHeartbeat, meterRegistry);
     }
 
     public Mono<ServerResponse> addReview(ServerRequest request){
+        var idempotencyKey = request.headers().firstHeader(IdempotentWrites.HEADER);
         return request.bodyToMono(Review.class)
                 .doOnNext(this::validate)
-                .flatMap(reviewReactorRepository::save)
-                .doOnNext(review -> {
-                    reviewSink.tryEmitNext(review);
-                })
+                .flatMap(review -> idempotentWrites.execute("reviews", idempotencyKey, review, Review.class,
+                        () -> insertReview(review)))
                 .flatMap(ServerResponse.status(HttpStatus.CREATED)::bodyValue);
     }
 
-    private void validate(Review review) {
+    private Mono<Review> insertReview(Review review) {
+        return reviewWriteBatcher.insert(review)
+                .doOnNext(savedReview -> {
+                    reviewStreamRegistry.emit(savedReview);
+                });
+    }
+
+    void validate(Review review) {
         var constraintViolations = validator.validate(review);
         log.info("constraint violations = {}", constraintViolations);
+        throwIfInvalid(constraintViolations);
+    }
+
+    /**
+     * Updates only carry comment and rating, the movieInfoId of the stored review is kept.
+     */
+    private void validateChanges(Review changes) {
+        throwIfInvalid(validator.validateProperty(changes, "rating"));
+    }
+
+    private static void throwIfInvalid(Set<ConstraintViolation<Review>> constraintViolations) {
         if (constraintViolations.size() > 0){
             var errorMsg = constraintViolations.stream()
                     .map(ConstraintViolation::getMessage)
@@ -57,8 +107,21 @@ public class ReviewHandler {
     public Mono<ServerResponse> getReviews(ServerRequest request) {
 
         var movieInfoId = request.queryParam("movieInfoId");
+        var movieInfoIds = request.queryParam("movieInfoIds");
+        var limit = request.queryParam("limit");
 
-        if (movieInfoId.isPresent()){
+        // a filter is never dropped silently, pages are only offered by single movie
+        if (movieInfoIds.isPresent() && (limit.isPresent() || movieInfoId.isPresent())) {
+            throw new ReviewDataException("movieInfoIds : not supported together with movieInfoId or limit");
+        }
+        if (limit.isPresent()){
+            return getReviewsPage(movieInfoId.map(Long::valueOf).orElse(null),
+                    request.queryParam("next").map(PageToken::decode).orElse(null),
+                    PageToken.parseLimit(limit.get()));
+        } else if (movieInfoIds.isPresent()){
+            var reviewsFlux = reviewReactorRepository.findReviewsByMovieInfoIdIn(parseMovieInfoIds(movieInfoIds.get()));
+            return buildReviewsResponse(reviewsFlux);
+        } else if (movieInfoId.isPresent()){
             var reviewsFlux = reviewReactorRepository.findReviewsByMovieInfoId(Long.valueOf(movieInfoId.get()));
             return buildReviewsResponse(reviewsFlux);
         } else {
@@ -68,37 +131,141 @@ public class ReviewHandler {
 
     }
 
-    private static Mono<ServerResponse> buildReviewsResponse(Flux<Review> reviewsFlux) {
-        return ServerResponse.ok().body(reviewsFlux, Review.class);
+    /**
+     * Fetches one review more than asked for, its presence tells whether there is a next page.
+     */
+    private Mono<ServerResponse> getReviewsPage(Long movieInfoId, String afterId, int limit) {
+        return reviewReactorRepository.findPage(movieInfoId, afterId, limit + 1)
+                .collectList()
+                .flatMap(reviews -> {
+                    if (reviews.size() <= limit) {
+                        return ServerResponse.ok().bodyValue(reviews);
+                    }
+                    var page = reviews.subList(0, limit);
+                    return ServerResponse.ok()
+                            .header(PageToken.NEXT_TOKEN_HEADER, PageToken.encode(page.get(limit - 1).getReviewId()))
+                            .bodyValue(page);
+                });
+    }
+
+    private static List<Long> parseMovieInfoIds(String movieInfoIds) {
+        try {
+            return Arrays.stream(movieInfoIds.split(","))
+                    .map(String::trim)
+                    .filter(id -> !id.isEmpty())
+                    .map(Long::valueOf)
+                    .distinct()
+                    .collect(Collectors.toList());
+        } catch (NumberFormatException e) {
+            throw new ReviewDataException("movieInfoIds must be a comma separated list of numbers : " + movieInfoIds);
+        }
+    }
+
+    private static Long parseMovieInfoId(String movieInfoId) {
+        try {
+            return Long.valueOf(movieInfoId.trim());
+        } catch (NumberFormatException e) {
+            throw new ReviewDataException("movieInfoId must be a number : " + movieInfoId);
+        }
+    }
+
+    private Mono<ServerResponse> buildReviewsResponse(Flux<Review> reviewsFlux) {
+        return ServerResponse.ok().body(ServerTiming.timed(serverTimingEnabled, ServerTiming.Phase.MONGO, reviewsFlux),
+                Review.class);
     }
 
     public Mono<ServerResponse> updateReview(ServerRequest request) {
+        return updateReview(request, false);
+    }
+
+    /**
+     * Partial update, a comment or rating missing from the body keeps its value.
+     */
+    public Mono<ServerResponse> patchReview(ServerRequest request) {
+        return updateReview(request, true);
+    }
+
+    private Mono<ServerResponse> updateReview(ServerRequest request, boolean partial) {
         var reviewId = request.pathVariable("id");
-        var existingReview = reviewReactorRepository.findById(reviewId)
-                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for given Review id " + reviewId)));
 
-        return existingReview.flatMap(review -> request.bodyToMono(Review.class)
-                .map(reqReview -> {
-                    review.setComment(reqReview.getComment());
-                    review.setRating(reqReview.getRating());
-                    return review;
-                })
-                .flatMap(reviewReactorRepository::save)
-                .flatMap(savedReview -> ServerResponse.ok().bodyValue(savedReview))
-        );
+        return request.bodyToMono(Review.class)
+                .doOnNext(this::validateChanges)
+                .flatMap(changes -> reviewReactorRepository.findAndUpdate(reviewId, changes, partial)
+                        .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for given Review id " + reviewId)))
+                        .flatMap(previousReview -> {
+                            var savedReview = applyChanges(previousReview, changes, partial);
+                            return reviewStatsService.reviewUpdated(savedReview, previousReview.getRating())
+                                    .thenReturn(savedReview);
+                        }))
+                .flatMap(savedReview -> ServerResponse.ok().bodyValue(savedReview));
+    }
+
+    /**
+     * The review as stored by {@link ReviewReactorRepository#findAndUpdate}, which answers the previous one.
+     */
+    private static Review applyChanges(Review previousReview, Review changes, boolean partial) {
+        var review = new Review(previousReview.getReviewId(), previousReview.getMovieInfoId(),
+                previousReview.getComment(), previousReview.getRating());
+        if (changes.getComment() != null || !partial) {
+            review.setComment(changes.getComment());
+        }
+        if (changes.getRating() != null || !partial) {
+            review.setRating(changes.getRating());
+        }
+        return review;
     }
 
     public Mono<ServerResponse> deleteReview(ServerRequest request) {
         var reviewId = request.pathVariable("id");
-        var existingReview = reviewReactorRepository.findById(reviewId);
 
-        return existingReview.flatMap(review -> reviewReactorRepository.deleteById(reviewId))
+        return reviewReactorRepository.findAndDelete(reviewId)
+                .flatMap(reviewStatsService::reviewRemoved)
                 .then(ServerResponse.noContent().build());
     }
 
-    public Mono<ServerResponse> getReviewsStream() {
+    public Mono<ServerResponse> getReviewStats(ServerRequest request) {
+        var movieInfoId = request.queryParam("movieInfoId")
+                .orElseThrow(() -> new ReviewDataException("movieInfoId : must be present"));
+
+        return reviewStatsService.getStats(parseMovieInfoId(movieInfoId))
+                .flatMap(stats -> ServerResponse.ok().bodyValue(stats));
+    }
+
+    public Mono<ServerResponse> rebuildReviewStats(ServerRequest request) {
+        var movieInfoId = request.queryParam("movieInfoId");
+
+        if (movieInfoId.isPresent()) {
+            return reviewStatsService.rebuild(parseMovieInfoId(movieInfoId.get()))
+                    .then(ServerResponse.noContent().build());
+        }
+        return reviewStatsService.rebuildAll()
+                .then(ServerResponse.noContent().build());
+    }
+
+    /**
+     * Streams the reviews added to one movie (movieInfoId), to a set of movies (movieInfoIds) or to any
+     * movie. A {@link ReviewStreamGap} tells the subscriber that reviews were dropped since it fell behind.
+     */
+    public Mono<ServerResponse> getReviewsStream(ServerRequest request) {
+        var reviewsFlux = request.queryParam("movieInfoIds")
+                .map(movieInfoIds -> Flux.merge(parseMovieInfoIds(movieInfoIds).stream()
+                        .map(reviewStreamRegistry::reviews)
+                        .collect(Collectors.toList())))
+                .or(() -> request.queryParam("movieInfoId")
+                        .map(movieInfoId -> reviewStreamRegistry.reviews(parseMovieInfoId(movieInfoId))))
+                .orElseGet(reviewStreamRegistry::reviews);
+
         return ServerResponse.ok()
                 .contentType(MediaType.APPLICATION_NDJSON)
-                .body(reviewSink.asFlux(), Review.class);
+                .body(reviewStreamPolicy.apply(reviewsFlux, Review::getMovieInfoId, ReviewStreamGap.INSTANCE),
+                        Object.class);
+    }
+
+    public Mono<ServerResponse> getReviewsStreamSubscribers(ServerRequest request) {
+        return ServerResponse.ok()
+                .bodyValue(Map.of(
+                        "total", reviewStreamPolicy.subscriberCount(),
+                        "all", reviewStreamRegistry.subscriberCount(),
+                        "byMovieInfoId", reviewStreamRegistry.subscriberCountsByMovie()));
     }
 }
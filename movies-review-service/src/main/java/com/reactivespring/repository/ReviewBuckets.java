@@ -0,0 +1,303 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBucket;
+import com.reactivespring.util.PageToken;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Reviews stored in {@link ReviewBucket}s, so reading the reviews of a movie reads one document per
+ * {@code maxReviewsPerBucket} reviews.
+ * A review is pushed into the latest bucket of its movie, the one with the highest firstId, while it is
+ * not full, or else starts a new bucket. New reviews get increasing ids, so buckets hold mostly disjoint
+ * id ranges and a page reads only the few buckets its reviews are in.
+ * Updates and deletes read the review first and only apply while its rating is unchanged, so the
+ * bucket's rated/sum stay exact; a concurrent change of the same review makes them read it again.
+ * Concurrent inserts may each start a new bucket for the same movie, their id ranges then overlap.
+ */
+class ReviewBuckets {
+
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final int maxReviewsPerBucket;
+
+    ReviewBuckets(ReactiveMongoTemplate mongoTemplate, int maxReviewsPerBucket) {
+        this.mongoTemplate = mongoTemplate;
+        this.maxReviewsPerBucket = maxReviewsPerBucket;
+    }
+
+    Flux<Review> findByMovieInfoId(Long movieInfoId) {
+        return reviews(query(where("movieInfoId").is(movieInfoId)));
+    }
+
+    Flux<Review> findByMovieInfoIdIn(Collection<Long> movieInfoIds) {
+        return reviews(query(where("movieInfoId").in(movieInfoIds)));
+    }
+
+    Flux<Review> findAll() {
+        return reviews(new Query());
+    }
+
+    Mono<Review> findById(String reviewId) {
+        return mongoTemplate.findOne(containing(reviewId), ReviewBucket.class)
+                .flatMap(bucket -> Mono.justOrEmpty(review(bucket, reviewId)));
+    }
+
+    /**
+     * Reads the buckets that may hold reviews after {@code afterId}: the ones whose id range contains it,
+     * then the following ones in firstId order until no later bucket can hold one of the first
+     * {@code limit} reviews. The page is sorted by _id in memory, it holds at most {@code limit} reviews.
+     */
+    Flux<Review> findPage(Long movieInfoId, String afterId, int limit) {
+        var criteria = new ArrayList<Criteria>();
+        if (movieInfoId != null) {
+            criteria.add(where("movieInfoId").is(movieInfoId));
+        }
+        var straddling = afterId != null ? straddling(criteria, afterId) : Flux.<ReviewBucket>empty();
+        if (afterId != null) {
+            criteria.add(PageToken.idAfter("firstId", afterId));
+        }
+        var following = mongoTemplate.find(query(allOf(criteria))
+                        .with(Sort.by("firstId"))
+                        .cursorBatchSize(limit / maxReviewsPerBucket + 2),
+                ReviewBucket.class);
+        return Flux.defer(() -> {
+            var page = new Page(afterId != null ? ReviewBucket.idValue(afterId) : null, limit);
+            return straddling.doOnNext(page::add)
+                    .thenMany(following.takeWhile(page::mayHoldReviewsOf).doOnNext(page::add))
+                    .thenMany(Flux.defer(() -> Flux.fromIterable(page.reviews())));
+        });
+    }
+
+    /**
+     * Sets the generated id on {@code review} once it is stored, unless it already has one.
+     */
+    <S extends Review> Mono<S> insert(S review) {
+        var reviewId = review.getReviewId() != null ? review.getReviewId() : new ObjectId().toHexString();
+        var id = ReviewBucket.idValue(reviewId);
+        var rating = review.getRating();
+        var stored = toDocument(new Review(reviewId, review.getMovieInfoId(), review.getComment(), rating));
+        var update = new Update()
+                .push("reviews", stored)
+                .inc("count", 1)
+                .inc("rated", rated(rating))
+                .inc("sum", ratingValue(rating))
+                .min("firstId", id)
+                .max("lastId", id);
+        var latest = query(where("movieInfoId").is(review.getMovieInfoId()))
+                .with(Sort.by(Sort.Direction.DESC, "firstId"))
+                .limit(1);
+        latest.fields().include("count");
+        return mongoTemplate.findOne(latest, ReviewBucket.class)
+                .filter(bucket -> bucket.getCount() < maxReviewsPerBucket)
+                .flatMap(bucket -> mongoTemplate.updateFirst(
+                                query(where("_id").is(bucket.getId()).and("count").lt(maxReviewsPerBucket)),
+                                update, ReviewBucket.class)
+                        .flatMap(result -> result.getMatchedCount() == 0
+                                ? Mono.error(new OptimisticLockingFailureException(
+                                        "Bucket " + bucket.getId() + " filled up concurrently"))
+                                : Mono.just(reviewId)))
+                .switchIfEmpty(Mono.defer(() -> mongoTemplate.insert(new Document("movieInfoId", review.getMovieInfoId())
+                                .append("count", 1)
+                                .append("rated", rated(rating))
+                                .append("sum", ratingValue(rating))
+                                .append("firstId", id)
+                                .append("lastId", id)
+                                .append("reviews", List.of(stored)),
+                        mongoTemplate.getCollectionName(ReviewBucket.class))
+                        .thenReturn(reviewId)))
+                .retryWhen(onConflict())
+                .doOnNext(review::setReviewId)
+                .thenReturn(review);
+    }
+
+    /**
+     * One insert after the other, a failed one does not stop the rest.
+     */
+    Mono<Map<Integer, String>> insertAll(List<Review> reviews) {
+        return Flux.range(0, reviews.size())
+                .concatMap(index -> insert(reviews.get(index))
+                        .then(Mono.<Map.Entry<Integer, String>>empty())
+                        .onErrorResume(ex -> Mono.just(Map.entry(index, String.valueOf(ex.getMessage())))))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    Mono<Review> findAndUpdate(String reviewId, Review changes, boolean partial) {
+        return mongoTemplate.findOne(containing(reviewId), ReviewBucket.class)
+                .flatMap(bucket -> {
+                    var previous = review(bucket, reviewId);
+                    if (previous == null) {
+                        return Mono.empty();
+                    }
+                    var update = new Update();
+                    ReviewReactorRepositoryImpl.setOrUnset(update, "reviews.$.comment", changes.getComment(), partial);
+                    ReviewReactorRepositoryImpl.setOrUnset(update, "reviews.$.rating", changes.getRating(), partial);
+                    if (update.getUpdateObject().isEmpty()) {
+                        return Mono.just(previous);
+                    }
+                    var rating = changes.getRating() != null || !partial ? changes.getRating() : previous.getRating();
+                    if (!Objects.equals(rating, previous.getRating())) {
+                        update.inc("rated", rated(rating) - rated(previous.getRating()))
+                                .inc("sum", ratingValue(rating) - ratingValue(previous.getRating()));
+                    }
+                    return mongoTemplate.updateFirst(unchanged(bucket, previous), update, ReviewBucket.class)
+                            .flatMap(result -> applied(result.getMatchedCount(), previous));
+                })
+                .retryWhen(onConflict());
+    }
+
+    Mono<Review> findAndDelete(String reviewId) {
+        return mongoTemplate.findOne(containing(reviewId), ReviewBucket.class)
+                .flatMap(bucket -> {
+                    var previous = review(bucket, reviewId);
+                    if (previous == null) {
+                        return Mono.empty();
+                    }
+                    var update = new Update()
+                            .pull("reviews", new Document("_id", ReviewBucket.idValue(reviewId)))
+                            .inc("count", -1)
+                            .inc("rated", -rated(previous.getRating()))
+                            .inc("sum", -ratingValue(previous.getRating()));
+                    return mongoTemplate.updateFirst(unchanged(bucket, previous), update, ReviewBucket.class)
+                            .flatMap(result -> applied(result.getMatchedCount(), previous));
+                })
+                .retryWhen(onConflict());
+    }
+
+    /**
+     * The buckets whose id range contains {@code afterId}, usually one.
+     */
+    private Flux<ReviewBucket> straddling(List<Criteria> criteria, String afterId) {
+        var containing = new ArrayList<>(criteria);
+        containing.add(PageToken.idAfter("lastId", afterId));
+        containing.add(PageToken.idAtMost("firstId", afterId));
+        return mongoTemplate.find(query(allOf(containing)), ReviewBucket.class);
+    }
+
+    private static Criteria allOf(List<Criteria> criteria) {
+        return criteria.isEmpty() ? new Criteria() : new Criteria().andOperator(criteria.toArray(new Criteria[0]));
+    }
+
+    private Flux<Review> reviews(Query bucketQuery) {
+        return mongoTemplate.find(bucketQuery, ReviewBucket.class)
+                .concatMapIterable(ReviewBucket::getReviews);
+    }
+
+    /**
+     * The review as it is stored inside a bucket, without the type hint a top level document carries.
+     */
+    private Document toDocument(Review review) {
+        var document = new Document();
+        mongoTemplate.getConverter().write(review, document);
+        document.remove("_class");
+        return document;
+    }
+
+    /**
+     * The bucket holding the review, with only that review projected so a lookup reads one review.
+     */
+    private static Query containing(String reviewId) {
+        var query = query(where("reviews._id").is(ReviewBucket.idValue(reviewId)));
+        query.fields().elemMatch("reviews", where("_id").is(ReviewBucket.idValue(reviewId)));
+        return query;
+    }
+
+    /**
+     * The bucket as long as it still holds the review with the rating it was read with. Both conditions
+     * match the same element, the one on reviews._id is what the positional $ of the update refers to.
+     */
+    private static Query unchanged(ReviewBucket bucket, Review review) {
+        var reviewId = ReviewBucket.idValue(review.getReviewId());
+        return query(where("_id").is(bucket.getId())
+                .and("reviews._id").is(reviewId)
+                .and("reviews").elemMatch(where("_id").is(reviewId).and("rating").is(review.getRating())));
+    }
+
+    private static Mono<Review> applied(long matchedCount, Review previous) {
+        if (matchedCount == 0) {
+            return Mono.error(new OptimisticLockingFailureException(
+                    "Review " + previous.getReviewId() + " was changed or moved concurrently"));
+        }
+        return Mono.just(previous);
+    }
+
+    private static Retry onConflict() {
+        return Retry.max(MAX_ATTEMPTS - 1)
+                .filter(OptimisticLockingFailureException.class::isInstance)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    private static Review review(ReviewBucket bucket, String reviewId) {
+        return bucket.getReviews().stream()
+                .filter(review -> reviewId.equals(review.getReviewId()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * The first {@code limit} reviews after {@code afterId} among the buckets added so far.
+     */
+    private static class Page {
+        private final Object afterId;
+        private final int limit;
+        private final TreeMap<Object, Review> reviews = new TreeMap<>(ReviewBucket::compareIds);
+
+        Page(Object afterId, int limit) {
+            this.afterId = afterId;
+            this.limit = limit;
+        }
+
+        void add(ReviewBucket bucket) {
+            for (var review : bucket.getReviews()) {
+                var id = ReviewBucket.idValue(review.getReviewId());
+                if (afterId == null || ReviewBucket.compareIds(id, afterId) > 0) {
+                    reviews.put(id, review);
+                    if (reviews.size() > limit) {
+                        reviews.pollLastEntry();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Buckets come in firstId order, once the page is full a bucket starting after its last review
+         * and every one after it can be skipped.
+         */
+        boolean mayHoldReviewsOf(ReviewBucket bucket) {
+            return reviews.size() < limit || ReviewBucket.compareIds(bucket.getFirstId(), reviews.lastKey()) < 0;
+        }
+
+        Collection<Review> reviews() {
+            return reviews.values();
+        }
+    }
+
+    private static int rated(Double rating) {
+        return rating != null ? 1 : 0;
+    }
+
+    private static double ratingValue(Double rating) {
+        return rating != null ? rating : 0;
+    }
+}
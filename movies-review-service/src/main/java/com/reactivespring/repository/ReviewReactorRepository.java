@@ -3,9 +3,23 @@ package com.reactivespring.repository;
 import com.reactivespring.domain.Review;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-public interface ReviewReactorRepository extends ReactiveMongoRepository<Review, String> {
+/**
+ * The lookups and writes ReviewHandler uses are implemented by {@link ReviewReactorRepositoryImpl}, which
+ * reads and writes review buckets instead of the review collection when reviews.bucketing.enabled is set.
+ * The remaining inherited CRUD methods always work on the review collection.
+ */
+public interface ReviewReactorRepository extends ReactiveMongoRepository<Review, String>, ReviewReactorRepositoryCustom {
 
-    Flux<Review> findReviewsByMovieInfoId(Long movieInfoId);
+    // declared by both parents, implemented by ReviewReactorRepositoryImpl
 
+    @Override
+    Flux<Review> findAll();
+
+    @Override
+    Mono<Review> findById(String reviewId);
+
+    @Override
+    <S extends Review> Mono<S> save(S review);
 }
@@ -0,0 +1,51 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface ReviewReactorRepositoryCustom {
+
+    Flux<Review> findReviewsByMovieInfoId(Long movieInfoId);
+
+    Flux<Review> findReviewsByMovieInfoIdIn(Collection<Long> movieInfoIds);
+
+    Flux<Review> findAll();
+
+    Mono<Review> findById(String reviewId);
+
+    /**
+     * Inserts a review without id and sets the generated one, otherwise replaces the stored review.
+     * A bucketed review only gets comment and rating replaced, it stays in the bucket of its movie.
+     */
+    <S extends Review> Mono<S> save(S review);
+
+    /**
+     * Keyset page in _id order. {@code movieInfoId} and {@code afterId} are optional.
+     */
+    Flux<Review> findPage(Long movieInfoId, String afterId, int limit);
+
+    /**
+     * Sets comment and rating in one findAndModify. A null field is removed, or left as it is when
+     * {@code partial}. Emits the review as it was before the update, empty when there is none with this id.
+     * A bucketed review is read first and updated as long as its rating did not change in between.
+     */
+    Mono<Review> findAndUpdate(String reviewId, Review changes, boolean partial);
+
+    /**
+     * Deletes in one findAndModify and emits the deleted review, empty when there is none with this id.
+     * A bucketed review is read first and pulled from its bucket as long as its rating did not change in between.
+     */
+    Mono<Review> findAndDelete(String reviewId);
+
+    /**
+     * Inserts with one unordered insertMany and sets the ids of the inserted reviews, like save does.
+     * Emits the reason each review that was not inserted failed, by its index in the list.
+     * Bucketed reviews are pushed into their buckets one after the other.
+     */
+    Mono<Map<Integer, String>> insertUnordered(List<Review> reviews);
+}
@@ -0,0 +1,163 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.reactivespring.domain.Review;
+import com.reactivespring.util.PageToken;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Works on the review collection, one document per review, or on {@link ReviewBuckets} when
+ * reviews.bucketing.enabled is set.
+ */
+public class ReviewReactorRepositoryImpl implements ReviewReactorRepositoryCustom {
+
+    private ReactiveMongoTemplate mongoTemplate;
+    private ReviewBuckets reviewBuckets;
+
+    public ReviewReactorRepositoryImpl(ReactiveMongoTemplate mongoTemplate,
+                                       @Value("${reviews.bucketing.enabled:false}") boolean bucketingEnabled,
+                                       @Value("${reviews.bucketing.maxReviewsPerBucket:200}") int maxReviewsPerBucket) {
+        this.mongoTemplate = mongoTemplate;
+        this.reviewBuckets = bucketingEnabled ? new ReviewBuckets(mongoTemplate, maxReviewsPerBucket) : null;
+    }
+
+    @Override
+    public Flux<Review> findReviewsByMovieInfoId(Long movieInfoId) {
+        if (reviewBuckets != null) {
+            return reviewBuckets.findByMovieInfoId(movieInfoId);
+        }
+        return mongoTemplate.find(new Query(where("movieInfoId").is(movieInfoId)), Review.class);
+    }
+
+    @Override
+    public Flux<Review> findReviewsByMovieInfoIdIn(Collection<Long> movieInfoIds) {
+        if (reviewBuckets != null) {
+            return reviewBuckets.findByMovieInfoIdIn(movieInfoIds);
+        }
+        return mongoTemplate.find(new Query(where("movieInfoId").in(movieInfoIds)), Review.class);
+    }
+
+    @Override
+    public Flux<Review> findAll() {
+        if (reviewBuckets != null) {
+            return reviewBuckets.findAll();
+        }
+        return mongoTemplate.findAll(Review.class);
+    }
+
+    @Override
+    public Mono<Review> findById(String reviewId) {
+        if (reviewBuckets != null) {
+            return reviewBuckets.findById(reviewId);
+        }
+        return mongoTemplate.findById(reviewId, Review.class);
+    }
+
+    @Override
+    public <S extends Review> Mono<S> save(S review) {
+        if (reviewBuckets == null) {
+            return mongoTemplate.save(review);
+        }
+        if (review.getReviewId() == null) {
+            return reviewBuckets.insert(review);
+        }
+        return reviewBuckets.findAndUpdate(review.getReviewId(), review, false)
+                .map(previous -> review)
+                .switchIfEmpty(Mono.defer(() -> reviewBuckets.insert(review)));
+    }
+
+    @Override
+    public Flux<Review> findPage(Long movieInfoId, String afterId, int limit) {
+        if (reviewBuckets != null) {
+            return reviewBuckets.findPage(movieInfoId, afterId, limit);
+        }
+        var query = new Query();
+        if (movieInfoId != null) {
+            query.addCriteria(where("movieInfoId").is(movieInfoId));
+        }
+        if (afterId != null) {
+            query.addCriteria(PageToken.idAfter(afterId));
+        }
+        query.with(Sort.by("_id")).limit(limit);
+        return mongoTemplate.find(query, Review.class);
+    }
+
+    @Override
+    public Mono<Review> findAndUpdate(String reviewId, Review changes, boolean partial) {
+        if (reviewBuckets != null) {
+            return reviewBuckets.findAndUpdate(reviewId, changes, partial);
+        }
+        var update = new Update();
+        setOrUnset(update, "comment", changes.getComment(), partial);
+        setOrUnset(update, "rating", changes.getRating(), partial);
+        if (update.getUpdateObject().isEmpty()) {
+            // an empty update document would replace the whole review
+            return mongoTemplate.findOne(byId(reviewId), Review.class);
+        }
+        return mongoTemplate.findAndModify(byId(reviewId), update, Review.class);
+    }
+
+    @Override
+    public Mono<Review> findAndDelete(String reviewId) {
+        if (reviewBuckets != null) {
+            return reviewBuckets.findAndDelete(reviewId);
+        }
+        return mongoTemplate.findAndRemove(byId(reviewId), Review.class);
+    }
+
+    @Override
+    public Mono<Map<Integer, String>> insertUnordered(List<Review> reviews) {
+        if (reviewBuckets != null) {
+            return reviewBuckets.insertAll(reviews);
+        }
+        var documents = new ArrayList<Document>(reviews.size());
+        for (var review : reviews) {
+            var document = new Document();
+            mongoTemplate.getConverter().write(review, document);
+            documents.add(document);
+        }
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Review.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(result -> Map.<Integer, String>of())
+                // unordered, so every document without a write error was inserted
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        .collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage))))
+                .doOnNext(failed -> {
+                    for (var i = 0; i < reviews.size(); i++) {
+                        if (!failed.containsKey(i)) {
+                            // the driver adds the generated _id to the document it inserts
+                            reviews.get(i).setReviewId(String.valueOf(documents.get(i).get("_id")));
+                        }
+                    }
+                });
+    }
+
+    private static Query byId(String reviewId) {
+        return new Query(where("_id").is(reviewId));
+    }
+
+    static void setOrUnset(Update update, String field, Object value, boolean partial) {
+        if (value != null) {
+            update.set(field, value);
+        } else if (!partial) {
+            update.unset(field);
+        }
+    }
+}
@@ -19,8 +19,12 @@ public class ReviewRouter {
                     builder.POST("", request ->  reviewHandler.addReview(request))
                             .GET("", request -> reviewHandler.getReviews(request))
                             .PUT("/{id}", request -> reviewHandler.updateReview(request))
+                            .PATCH("/{id}", request -> reviewHandler.patchReview(request))
                             .DELETE("/{id}", request -> reviewHandler.deleteReview(request))
-                            .GET("/stream", request -> reviewHandler.getReviewsStream());
+                            .GET("/stream", request -> reviewHandler.getReviewsStream(request))
+                            .GET("/stream/subscribers", request -> reviewHandler.getReviewsStreamSubscribers(request))
+                            .GET("/stats", request -> reviewHandler.getReviewStats(request))
+                            .POST("/stats/rebuild", request -> reviewHandler.rebuildReviewStats(request));
                 })
                 .GET("/v1/helloworld", request -> ServerResponse.ok().bodyValue("hello world"))
                 .build();
@@ -0,0 +1,107 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBucket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the reviewBucket collection from the review collection, for switching on reviews.bucketing.enabled.
+ * It is an offline task, not an endpoint: started with --reviews.bucketing.migrate=true the service migrates
+ * and exits. It refuses to run while bucketing is enabled, since existing buckets are replaced and reviews
+ * written with bucketing enabled are only in buckets. Reviews written after it started are not copied, the
+ * review collection is left as it is, so the service can be switched back.
+ * Reviews are read in (movieInfoId, _id) order, which the movieInfoId_id index serves, and written as full
+ * buckets with one insertMany per hundred buckets.
+ */
+@Service
+@Slf4j
+public class ReviewBucketMigration implements ApplicationRunner {
+
+    private static final int BATCH_SIZE = 100;
+
+    private ReactiveMongoTemplate mongoTemplate;
+    private boolean bucketingEnabled;
+    private int maxReviewsPerBucket;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Value("${reviews.bucketing.migrate:false}")
+    private boolean migrateOnStartup;
+
+    public ReviewBucketMigration(ReactiveMongoTemplate mongoTemplate,
+                                 @Value("${reviews.bucketing.enabled:false}") boolean bucketingEnabled,
+                                 @Value("${reviews.bucketing.maxReviewsPerBucket:200}") int maxReviewsPerBucket) {
+        this.mongoTemplate = mongoTemplate;
+        this.bucketingEnabled = bucketingEnabled;
+        this.maxReviewsPerBucket = maxReviewsPerBucket;
+    }
+
+    /**
+     * Migrates and closes the application when started with reviews.bucketing.migrate=true, a failed
+     * migration fails the startup.
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!migrateOnStartup) {
+            return;
+        }
+        migrate().block();
+        SpringApplication.exit(applicationContext);
+    }
+
+    /**
+     * @return the number of reviews copied and of buckets written, keyed by "reviews" and "buckets"
+     */
+    public Mono<Map<String, Long>> migrate() {
+        if (bucketingEnabled) {
+            return Mono.error(new IllegalStateException(
+                    "reviews.bucketing.enabled is on, the migration would remove reviews only stored in buckets"));
+        }
+        var reviews = new AtomicLong();
+        var buckets = new AtomicLong();
+        var reviewsInOrder = new Query().with(Sort.by("movieInfoId", "_id"));
+        return mongoTemplate.remove(new Query(), ReviewBucket.class)
+                .thenMany(mongoTemplate.find(reviewsInOrder, Review.class))
+                .filter(review -> review.getMovieInfoId() != null)
+                .windowUntilChanged(Review::getMovieInfoId)
+                .concatMap(movieReviews -> movieReviews.buffer(maxReviewsPerBucket))
+                .map(ReviewBucketMigration::toBucket)
+                .buffer(BATCH_SIZE)
+                .concatMap(batch -> mongoTemplate.insert(batch, ReviewBucket.class).then(Mono.just(batch)), 1)
+                .doOnNext(batch -> {
+                    buckets.addAndGet(batch.size());
+                    batch.forEach(bucket -> reviews.addAndGet(bucket.getCount()));
+                })
+                .then(Mono.fromCallable(() -> Map.of("reviews", reviews.get(), "buckets", buckets.get())))
+                .doOnNext(counts -> log.info("migrated {} reviews into {} buckets", counts.get("reviews"), counts.get("buckets")));
+    }
+
+    private static ReviewBucket toBucket(List<Review> reviews) {
+        var bucket = new ReviewBucket(null, reviews.get(0).getMovieInfoId(), reviews.size(), 0, 0,
+                ReviewBucket.idValue(reviews.get(0).getReviewId()),
+                ReviewBucket.idValue(reviews.get(reviews.size() - 1).getReviewId()), reviews);
+        for (var review : reviews) {
+            if (review.getRating() != null) {
+                bucket.setRated(bucket.getRated() + 1);
+                bucket.setSum(bucket.getSum() + review.getRating());
+            }
+        }
+        return bucket;
+    }
+}
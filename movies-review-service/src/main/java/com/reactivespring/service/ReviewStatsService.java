@@ -0,0 +1,360 @@
+package com.reactivespring.service;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBucket;
+import com.reactivespring.domain.ReviewStats;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregationOptions;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.project;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.sort;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.unwind;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Keeps one {@link ReviewStats} document per movie up to date with single-document $inc/$min/$max
+ * updates on every review write, so reading the stats never scans the reviews.
+ * $min/$max cannot be undone, so removing a rating that was the current min or max takes the new one
+ * from the counts per rating of the updated document. Only stats without those counts, written before
+ * they were kept, are rebuilt from the reviews with an aggregation, over the unwound review buckets when
+ * reviews.bucketing.enabled is set. Every write bumps the stats version; a rebuild replaces the stats only
+ * if their version is still the one read before the aggregation, and starts over otherwise.
+ */
+@Service
+@Slf4j
+public class ReviewStatsService {
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    private ReactiveMongoTemplate mongoTemplate;
+    private boolean bucketingEnabled;
+
+    public ReviewStatsService(ReactiveMongoTemplate mongoTemplate,
+                              @Value("${reviews.bucketing.enabled:false}") boolean bucketingEnabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.bucketingEnabled = bucketingEnabled;
+    }
+
+    public Mono<ReviewStats> getStats(Long movieInfoId) {
+        return mongoTemplate.findById(movieInfoId, ReviewStats.class)
+                .doOnNext(stats -> stats.getHistogram().values().removeIf(count -> count == 0))
+                .defaultIfEmpty(ReviewStats.empty(movieInfoId));
+    }
+
+    public Mono<Void> reviewAdded(Review review) {
+        var rating = review.getRating();
+        if (rating == null) {
+            return Mono.empty();
+        }
+        return mongoTemplate.upsert(byMovieInfoId(review.getMovieInfoId()), new RatingTotals().add(rating).toUpdate(),
+                        ReviewStats.class)
+                .then();
+    }
+
+    /**
+     * Like {@link #reviewAdded(Review)} for a batch of written reviews: their ratings are summed per movie
+     * and applied with one unordered bulk write of one upsert per movie.
+     */
+    public Mono<Void> reviewsAdded(List<Review> reviews) {
+        var totals = new LinkedHashMap<Long, RatingTotals>();
+        for (var review : reviews) {
+            if (review.getRating() != null) {
+                totals.computeIfAbsent(review.getMovieInfoId(), movieInfoId -> new RatingTotals()).add(review.getRating());
+            }
+        }
+        if (totals.isEmpty()) {
+            return Mono.empty();
+        }
+        var upserts = totals.entrySet().stream()
+                .map(movieTotals -> new UpdateOneModel<Document>(byMovieInfoId(movieTotals.getKey()).getQueryObject(),
+                        movieTotals.getValue().toUpdate().getUpdateObject(), new UpdateOptions().upsert(true)))
+                .collect(Collectors.toList());
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(ReviewStats.class))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(upserts, new BulkWriteOptions().ordered(false))))
+                .then();
+    }
+
+    public Mono<Void> reviewRemoved(Review review) {
+        return removeRating(review.getMovieInfoId(), review.getRating()).then();
+    }
+
+    public Mono<Void> reviewUpdated(Review updatedReview, Double previousRating) {
+        if (Objects.equals(previousRating, updatedReview.getRating())) {
+            return Mono.empty();
+        }
+        // a rebuild already reads the updated review, adding it again would count it twice
+        return removeRating(updatedReview.getMovieInfoId(), previousRating)
+                .flatMap(rebuilt -> rebuilt ? Mono.empty() : reviewAdded(updatedReview));
+    }
+
+    /**
+     * Recomputes the stats of a single movie from its reviews. The result only replaces the stats if no
+     * write changed them since they were read before the aggregation, otherwise it starts over.
+     */
+    public Mono<Void> rebuild(Long movieInfoId) {
+        return mongoTemplate.findById(movieInfoId, ReviewStats.class)
+                .map(stats -> Optional.of(stats.getVersion()))
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(version -> aggregateStats(movieInfoId)
+                        .next()
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMap(rebuilt -> replace(movieInfoId, version.orElse(null), rebuilt.orElse(null))))
+                .retryWhen(onConflict());
+    }
+
+    /**
+     * Recomputes the stats of every movie and drops stats of movies that no longer have rated reviews.
+     * The versions of all stats are read before the aggregation, stats written since are rebuilt one by one.
+     */
+    public Mono<Long> rebuildAll() {
+        var versionsOnly = new Query();
+        versionsOnly.fields().include("version");
+        return mongoTemplate.find(versionsOnly, ReviewStats.class)
+                .collectMap(ReviewStats::getMovieInfoId, ReviewStats::getVersion, HashMap::new)
+                .flatMap(versions -> aggregateStats(null)
+                        .concatMap(stats -> replace(stats.getMovieInfoId(), versions.remove(stats.getMovieInfoId()), stats)
+                                .onErrorResume(OptimisticLockingFailureException.class,
+                                        ex -> rebuild(stats.getMovieInfoId()))
+                                .thenReturn(stats))
+                        .count()
+                        .flatMap(count -> Flux.fromIterable(versions.entrySet())
+                                .concatMap(unrated -> replace(unrated.getKey(), unrated.getValue(), null)
+                                        .onErrorResume(OptimisticLockingFailureException.class,
+                                                ex -> rebuild(unrated.getKey())))
+                                .then(Mono.just(count))))
+                .doOnNext(count -> log.info("rebuilt review stats for {} movies", count));
+    }
+
+    /**
+     * Replaces the stats that were read at {@code version}, null if there were none, by {@code rebuilt},
+     * null if the movie has no rated review left. Fails with an OptimisticLockingFailureException when the
+     * stats were written in between.
+     */
+    private Mono<Void> replace(Long movieInfoId, Long version, ReviewStats rebuilt) {
+        if (version == null) {
+            if (rebuilt == null) {
+                return Mono.empty();
+            }
+            rebuilt.setVersion(1);
+            return mongoTemplate.insert(rebuilt)
+                    .onErrorMap(DuplicateKeyException.class, ex -> changedConcurrently(movieInfoId))
+                    .then();
+        }
+        var unchanged = atVersion(movieInfoId, version);
+        Mono<Boolean> replaced;
+        if (rebuilt != null) {
+            rebuilt.setVersion(version + 1);
+            replaced = mongoTemplate.findAndReplace(unchanged, rebuilt).hasElement();
+        } else {
+            replaced = mongoTemplate.remove(unchanged, ReviewStats.class).map(result -> result.getDeletedCount() > 0);
+        }
+        return replaced.flatMap(done -> done ? Mono.<Void>empty() : Mono.error(changedConcurrently(movieInfoId)));
+    }
+
+    /**
+     * @return true when the stats had to be rebuilt from the reviews collection
+     */
+    private Mono<Boolean> removeRating(Long movieInfoId, Double rating) {
+        if (rating == null) {
+            return Mono.just(false);
+        }
+        var update = new Update()
+                .inc("count", -1)
+                .inc("sum", -rating)
+                .inc(histogramField(rating), -1)
+                .inc(ratingCountField(rating), -1)
+                .inc("version", 1);
+        return mongoTemplate.findAndModify(byMovieInfoId(movieInfoId), update,
+                        FindAndModifyOptions.options().returnNew(true), ReviewStats.class)
+                .filter(stats -> stats.getCount() <= 0 || rating.equals(stats.getMin()) || rating.equals(stats.getMax()))
+                .flatMap(stats -> countsEveryRating(stats)
+                        ? replaceMinMax(stats).thenReturn(false)
+                        : rebuild(movieInfoId).thenReturn(true))
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * Sets min and max to the lowest and highest rating still counted by {@code updated}, as long as no
+     * other write changed the stats since; otherwise they are read again.
+     */
+    private Mono<Void> replaceMinMax(ReviewStats updated) {
+        var movieInfoId = updated.getMovieInfoId();
+        var attempts = new AtomicInteger();
+        return Mono.defer(() -> attempts.getAndIncrement() == 0
+                        ? Mono.just(updated)
+                        : mongoTemplate.findById(movieInfoId, ReviewStats.class))
+                .filter(ReviewStatsService::countsEveryRating)
+                .flatMap(this::setMinMax)
+                .retryWhen(onConflict());
+    }
+
+    private Mono<Void> setMinMax(ReviewStats stats) {
+        var counted = stats.getRatingCounts().entrySet().stream()
+                .filter(entry -> entry.getValue() > 0)
+                .map(entry -> ReviewStats.rating(entry.getKey()))
+                .collect(Collectors.toList());
+        var update = counted.isEmpty()
+                ? new Update().unset("min").unset("max")
+                : new Update().set("min", Collections.min(counted)).set("max", Collections.max(counted));
+        update.inc("version", 1);
+        return mongoTemplate.updateFirst(unchanged(stats), update, ReviewStats.class)
+                .flatMap(result -> result.getMatchedCount() > 0
+                        ? Mono.empty()
+                        : Mono.error(changedConcurrently(stats.getMovieInfoId())));
+    }
+
+    private static OptimisticLockingFailureException changedConcurrently(Long movieInfoId) {
+        return new OptimisticLockingFailureException("Review stats of " + movieInfoId + " were changed concurrently");
+    }
+
+    /**
+     * False for stats written before ratingCounts was kept, a rebuild completes them.
+     */
+    private static boolean countsEveryRating(ReviewStats stats) {
+        return stats.getCount() >= 0 && stats.getRatingCounts() != null
+                && stats.getRatingCounts().values().stream().mapToLong(Long::longValue).sum() == stats.getCount();
+    }
+
+    private Flux<ReviewStats> aggregateStats(Long movieInfoId) {
+        var operations = new ArrayList<AggregationOperation>();
+        if (bucketingEnabled) {
+            // one row per review with the movieInfoId of its bucket, as in the review collection
+            operations.add(match(movieInfoId != null ? where("movieInfoId").is(movieInfoId) : new Criteria()));
+            operations.add(unwind("reviews"));
+            operations.add(project("movieInfoId").and("reviews.rating").as("rating"));
+        }
+        var criteria = where("rating").ne(null);
+        if (movieInfoId != null) {
+            criteria = criteria.and("movieInfoId").is(movieInfoId);
+        }
+        operations.add(match(criteria));
+        operations.add(group("movieInfoId", "rating")
+                .count().as("count")
+                .sum("rating").as("sum"));
+        operations.add(sort(Sort.Direction.ASC, "movieInfoId"));
+        var aggregation = newAggregation(operations)
+                .withOptions(newAggregationOptions().allowDiskUse(true).build());
+        var inputType = bucketingEnabled ? ReviewBucket.class : Review.class;
+
+        // one row per (movie, rating), rows of a movie arrive together because of the sort
+        return mongoTemplate.aggregate(aggregation, inputType, Document.class)
+                .bufferUntilChanged(row -> row.get("_id", Document.class).get("movieInfoId"))
+                .map(ReviewStatsService::toReviewStats);
+    }
+
+    private static ReviewStats toReviewStats(List<Document> ratingRows) {
+        var movieInfoId = ((Number) ratingRows.get(0).get("_id", Document.class).get("movieInfoId")).longValue();
+        var stats = ReviewStats.empty(movieInfoId);
+        for (var row : ratingRows) {
+            var rating = ((Number) row.get("_id", Document.class).get("rating")).doubleValue();
+            var count = ((Number) row.get("count")).longValue();
+            stats.setCount(stats.getCount() + count);
+            stats.setSum(stats.getSum() + ((Number) row.get("sum")).doubleValue());
+            stats.setMin(stats.getMin() == null ? rating : Math.min(stats.getMin(), rating));
+            stats.setMax(stats.getMax() == null ? rating : Math.max(stats.getMax(), rating));
+            stats.getHistogram().merge(String.valueOf((long) Math.floor(rating)), count, Long::sum);
+            stats.getRatingCounts().put(ReviewStats.ratingKey(rating), count);
+        }
+        return stats;
+    }
+
+    private static Query byMovieInfoId(Long movieInfoId) {
+        return query(where("_id").is(movieInfoId));
+    }
+
+    private static Query unchanged(ReviewStats stats) {
+        return atVersion(stats.getMovieInfoId(), stats.getVersion());
+    }
+
+    /**
+     * Stats written before the version was kept have none, they read as version 0.
+     */
+    private static Query atVersion(Long movieInfoId, long version) {
+        if (version == 0) {
+            return query(where("_id").is(movieInfoId)
+                    .orOperator(where("version").is(0L), where("version").exists(false)));
+        }
+        return query(where("_id").is(movieInfoId).and("version").is(version));
+    }
+
+    private static Retry onConflict() {
+        return Retry.max(MAX_ATTEMPTS - 1)
+                .filter(OptimisticLockingFailureException.class::isInstance)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    private static String histogramField(Double rating) {
+        return "histogram." + (long) Math.floor(rating);
+    }
+
+    private static String ratingCountField(double rating) {
+        return "ratingCounts." + ReviewStats.ratingKey(rating);
+    }
+
+    /**
+     * The $inc/$min/$max of one or more added ratings of a movie.
+     */
+    private static class RatingTotals {
+        private final Map<String, Integer> counts = new TreeMap<>();
+        private int count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        RatingTotals add(double rating) {
+            count++;
+            sum += rating;
+            counts.merge(histogramField(rating), 1, Integer::sum);
+            counts.merge(ratingCountField(rating), 1, Integer::sum);
+            min = Math.min(min, rating);
+            max = Math.max(max, rating);
+            return this;
+        }
+
+        Update toUpdate() {
+            var update = new Update()
+                    .inc("count", count)
+                    .inc("sum", sum)
+                    .inc("version", 1)
+                    .min("min", min)
+                    .max("max", max);
+            counts.forEach(update::inc);
+            return update;
+        }
+    }
+}
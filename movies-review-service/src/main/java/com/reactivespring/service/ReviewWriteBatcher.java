@@ -0,0 +1,185 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewDataException;
+import com.reactivespring.repository.ReviewReactorRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Inserts new reviews and adds them to the review stats, one save and one stats upsert per review unless
+ * reviews.writeBatching.enabled is set.
+ * With batching, concurrent inserts are collected until {@code maxBatchSize} reviews are waiting or
+ * {@code window} has passed since the first one, then written with one unordered insertMany, the stats of
+ * the written ones with one bulk write, and each caller gets its own review with the generated id, or its
+ * own write error, back.
+ * At most {@code maxQueued} reviews are waiting or being written, further inserts fail with 503.
+ * Publishes reviews.write.batch.size, reviews.write.batch.flush (duration of the insertMany),
+ * reviews.write.queued and reviews.write.rejected.
+ */
+@Component
+@Slf4j
+public class ReviewWriteBatcher {
+
+    private final ReviewReactorRepository reviewReactorRepository;
+    private final ReviewStatsService reviewStatsService;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final Duration window;
+    private final int maxQueued;
+
+    private final Queue<PendingReview> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    /** waiting plus being written */
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean windowScheduled = new AtomicBoolean();
+
+    private final DistributionSummary batchSize;
+    private final Timer flush;
+    private final Counter rejected;
+
+    public ReviewWriteBatcher(ReviewReactorRepository reviewReactorRepository, ReviewStatsService reviewStatsService,
+                              MeterRegistry meterRegistry,
+                              @Value("${reviews.writeBatching.enabled:false}") boolean enabled,
+                              @Value("${reviews.writeBatching.maxBatchSize:100}") int maxBatchSize,
+                              @Value("${reviews.writeBatching.window:5ms}") Duration window,
+                              @Value("${reviews.writeBatching.maxQueued:10000}") int maxQueued) {
+        this.reviewReactorRepository = reviewReactorRepository;
+        this.reviewStatsService = reviewStatsService;
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.window = window;
+        this.maxQueued = maxQueued;
+        this.batchSize = DistributionSummary.builder("reviews.write.batch.size")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flush = Timer.builder("reviews.write.batch.flush")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejected = Counter.builder("reviews.write.rejected")
+                .register(meterRegistry);
+        Gauge.builder("reviews.write.queued", queued, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    public Mono<Review> insert(Review review) {
+        if (!enabled) {
+            return reviewReactorRepository.save(review)
+                    .flatMap(savedReview -> reviewStatsService.reviewAdded(savedReview).thenReturn(savedReview));
+        }
+        return Mono.create(sink -> {
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                rejected.increment();
+                sink.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many reviews waiting to be written"));
+                return;
+            }
+            waiting.add(new PendingReview(review, sink));
+            if (waitingCount.incrementAndGet() >= maxBatchSize) {
+                flush();
+            } else if (windowScheduled.compareAndSet(false, true)) {
+                Schedulers.parallel().schedule(this::windowElapsed, window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    /**
+     * Reviews added before the flag is cleared are already waiting and go with this flush, the ones added
+     * after it schedule the next window.
+     */
+    private void windowElapsed() {
+        windowScheduled.set(false);
+        flush();
+    }
+
+    private void flush() {
+        var batch = new ArrayList<PendingReview>(maxBatchSize);
+        PendingReview pending;
+        while (batch.size() < maxBatchSize && (pending = waiting.poll()) != null) {
+            batch.add(pending);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        waitingCount.addAndGet(-batch.size());
+        write(batch);
+    }
+
+    private void write(List<PendingReview> batch) {
+        var reviews = batch.stream().map(PendingReview::getReview).collect(Collectors.toList());
+        var sample = Timer.start();
+        batchSize.record(batch.size());
+        reviewReactorRepository.insertUnordered(reviews)
+                .flatMap(failed -> reviewStatsService.reviewsAdded(written(reviews, failed)).thenReturn(failed))
+                .subscribe(failed -> {
+                    written(batch, sample);
+                    for (var i = 0; i < batch.size(); i++) {
+                        var error = failed.get(i);
+                        if (error != null) {
+                            batch.get(i).getSink().error(new ReviewDataException(error));
+                        } else {
+                            batch.get(i).getSink().success(batch.get(i).getReview());
+                        }
+                    }
+                }, ex -> {
+                    written(batch, sample);
+                    log.error("Writing a batch of {} reviews failed", batch.size(), ex);
+                    batch.forEach(pendingReview -> pendingReview.getSink().error(ex));
+                });
+    }
+
+    private static List<Review> written(List<Review> reviews, Map<Integer, String> failed) {
+        var written = new ArrayList<Review>(reviews.size() - failed.size());
+        for (var i = 0; i < reviews.size(); i++) {
+            if (!failed.containsKey(i)) {
+                written.add(reviews.get(i));
+            }
+        }
+        return written;
+    }
+
+    private void written(List<PendingReview> batch, Timer.Sample sample) {
+        sample.stop(flush);
+        queued.addAndGet(-batch.size());
+    }
+
+    private static class PendingReview {
+        private final Review review;
+        private final MonoSink<Review> sink;
+
+        PendingReview(Review review, MonoSink<Review> sink) {
+            this.review = review;
+            this.sink = sink;
+        }
+
+        Review getReview() {
+            return review;
+        }
+
+        MonoSink<Review> getSink() {
+            return sink;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.reactivespring.stream;
+
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Subscriber side buffer holding at most one pending event per key. A newer event replaces the
+ * pending one of its key and moves to the back, so events still leave in publication order.
+ * Once {@code capacity} keys are pending the oldest one is dropped. Events without a key are never
+ * conflated.
+ */
+class ConflatingBuffer<T> {
+
+    private final FluxSink<T> sink;
+    private final Function<T, ?> keyFunction;
+    private final int capacity;
+    private final Runnable onConflated;
+    private final Runnable onDropped;
+
+    private final LinkedHashMap<Object, T> pending = new LinkedHashMap<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean done;
+    private volatile Throwable error;
+
+    private ConflatingBuffer(FluxSink<T> sink, Function<T, ?> keyFunction, int capacity,
+                             Runnable onConflated, Runnable onDropped) {
+        this.sink = sink;
+        this.keyFunction = keyFunction;
+        this.capacity = capacity;
+        this.onConflated = onConflated;
+        this.onDropped = onDropped;
+    }
+
+    static <T> Flux<T> conflate(Flux<T> events, Function<T, ?> keyFunction, int capacity,
+                                Runnable onConflated, Runnable onDropped) {
+        return Flux.create(sink -> {
+            var buffer = new ConflatingBuffer<>(sink, keyFunction, capacity, onConflated, onDropped);
+            var subscription = Disposables.swap();
+            sink.onRequest(n -> buffer.drain());
+            sink.onDispose(subscription);
+            subscription.update(events.subscribe(buffer::offer, buffer::fail, buffer::complete));
+        }, FluxSink.OverflowStrategy.ERROR);
+    }
+
+    private void offer(T event) {
+        var key = keyFunction.apply(event);
+        synchronized (pending) {
+            if (key == null) {
+                key = new Object();
+            }
+            if (pending.remove(key) != null) {
+                onConflated.run();
+            } else if (pending.size() == capacity) {
+                var oldest = pending.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+                onDropped.run();
+            }
+            pending.put(key, event);
+        }
+        drain();
+    }
+
+    private void fail(Throwable throwable) {
+        error = throwable;
+        done = true;
+        drain();
+    }
+
+    private void complete() {
+        done = true;
+        drain();
+    }
+
+    private T poll() {
+        synchronized (pending) {
+            var oldest = pending.values().iterator();
+            if (!oldest.hasNext()) {
+                return null;
+            }
+            var event = oldest.next();
+            oldest.remove();
+            return event;
+        }
+    }
+
+    private boolean isEmpty() {
+        synchronized (pending) {
+            return pending.isEmpty();
+        }
+    }
+
+    /**
+     * Only one thread emits at a time, callers arriving meanwhile make it loop once more.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        var missed = 1;
+        do {
+            while (sink.requestedFromDownstream() > 0 && !sink.isCancelled()) {
+                var event = poll();
+                if (event == null) {
+                    break;
+                }
+                sink.next(event);
+            }
+            if (done && isEmpty()) {
+                if (error != null) {
+                    sink.error(error);
+                } else {
+                    sink.complete();
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
@@ -0,0 +1,17 @@
+package com.reactivespring.stream;
+
+/**
+ * Sent on the reviews stream ahead of the next review once reviews were dropped because the subscriber
+ * fell behind. It goes out as {@code {"gap":true}}; the subscriber has to reload the reviews it follows.
+ */
+public final class ReviewStreamGap {
+
+    public static final ReviewStreamGap INSTANCE = new ReviewStreamGap();
+
+    private ReviewStreamGap() {
+    }
+
+    public boolean isGap() {
+        return true;
+    }
+}
@@ -0,0 +1,108 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fans reviews out to subscribers of every review and to subscribers of a single movie.
+ * Each movie with at least one subscriber has its own sink, so a review is only delivered to the
+ * subscribers of its movie; sinks are dropped when their last subscriber leaves.
+ * Once bound to a MeterRegistry it publishes the subscribers of the sinks as stream.sink.subscribers
+ * and failed emissions by result as stream.emit.failures; having no subscriber is not a failure.
+ */
+public class ReviewStreamRegistry implements MeterBinder {
+
+    private final Sinks.Many<Review> allReviews = Sinks.many().replay().latest();
+    private final ConcurrentMap<Long, KeyedSink> reviewsByMovie = new ConcurrentHashMap<>();
+    private final Map<Sinks.EmitResult, LongAdder> emitFailures = new EnumMap<>(Sinks.EmitResult.class);
+
+    private final Sinks.EmitFailureHandler retryNonSerialized = (signalType, emitResult) -> {
+        emitFailures.get(emitResult).increment();
+        return emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+    };
+
+    public ReviewStreamRegistry() {
+        for (var emitResult : Sinks.EmitResult.values()) {
+            emitFailures.put(emitResult, new LongAdder());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        Gauge.builder("stream.sink.subscribers", allReviews, Sinks.Many::currentSubscriberCount)
+                .tag("stream", "reviews")
+                .tag("sink", "all")
+                .register(meterRegistry);
+        Gauge.builder("stream.sink.subscribers", reviewsByMovie,
+                        sinks -> sinks.values().stream().mapToInt(keyedSink -> keyedSink.sink.currentSubscriberCount()).sum())
+                .tag("stream", "reviews")
+                .tag("sink", "by_movie")
+                .register(meterRegistry);
+        Gauge.builder("stream.sinks", reviewsByMovie, Map::size)
+                .tag("stream", "reviews")
+                .register(meterRegistry);
+        emitFailures.forEach((emitResult, count) -> {
+            if (emitResult.isFailure() && emitResult != Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+                FunctionCounter.builder("stream.emit.failures", count, LongAdder::sum)
+                        .tag("stream", "reviews")
+                        .tag("result", emitResult.name().toLowerCase())
+                        .register(meterRegistry);
+            }
+        });
+    }
+
+    public void emit(Review review) {
+        allReviews.emitNext(review, retryNonSerialized);
+        var keyedSink = reviewsByMovie.get(review.getMovieInfoId());
+        if (keyedSink != null) {
+            keyedSink.sink.emitNext(review, retryNonSerialized);
+        }
+    }
+
+    public Flux<Review> reviews() {
+        return allReviews.asFlux();
+    }
+
+    public Flux<Review> reviews(Long movieInfoId) {
+        return Flux.defer(() -> {
+            var keyedSink = reviewsByMovie.compute(movieInfoId, (key, existing) -> {
+                var current = existing == null ? new KeyedSink() : existing;
+                current.subscribers++;
+                return current;
+            });
+            return keyedSink.sink.asFlux()
+                    .doFinally(signalType -> reviewsByMovie.computeIfPresent(movieInfoId,
+                            (key, current) -> --current.subscribers == 0 ? null : current));
+        });
+    }
+
+    public int subscriberCount() {
+        return allReviews.currentSubscriberCount();
+    }
+
+    public Map<Long, Integer> subscriberCountsByMovie() {
+        var counts = new TreeMap<Long, Integer>();
+        reviewsByMovie.forEach((movieInfoId, keyedSink) -> counts.put(movieInfoId, keyedSink.subscribers));
+        return counts;
+    }
+
+    /**
+     * subscribers is only read and written inside the map's compute functions.
+     */
+    private static class KeyedSink {
+        final Sinks.Many<Review> sink = Sinks.many().multicast().directBestEffort();
+        int subscribers;
+    }
+}
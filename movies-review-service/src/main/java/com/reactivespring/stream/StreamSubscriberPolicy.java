@@ -0,0 +1,151 @@
+package com.reactivespring.stream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Decides what a stream subscriber gets when it reads slower than events are published.
+ * Each subscriber requests everything from the hot source into its own buffer of {@code bufferSize}
+ * events, so a slow subscriber never holds back the source or the other subscribers; once the
+ * buffer is full the {@link Overflow} policy applies.
+ * Also caps the number of concurrent subscribers and sends a heartbeat after
+ * {@code heartbeatInterval} without events.
+ */
+@Slf4j
+public class StreamSubscriberPolicy {
+
+    public enum Overflow {
+        /** drops the oldest buffered event */
+        DROP_OLDEST,
+        /** ends the subscription, the client is expected to reconnect */
+        DISCONNECT,
+        /** keeps only the latest buffered event per key, drops the oldest key when full */
+        CONFLATE
+    }
+
+    private final String stream;
+    private final Overflow overflow;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final Duration heartbeatInterval;
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final Counter dropped;
+    private final Counter conflated;
+    private final Counter disconnected;
+    private final Counter rejected;
+
+    public StreamSubscriberPolicy(String stream, Overflow overflow, int bufferSize, int maxSubscribers,
+                                  Duration heartbeatInterval, MeterRegistry meterRegistry) {
+        this.stream = stream;
+        this.overflow = overflow;
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.heartbeatInterval = heartbeatInterval;
+        this.dropped = counter("stream.events.dropped", meterRegistry);
+        this.conflated = counter("stream.events.conflated", meterRegistry);
+        this.disconnected = counter("stream.subscribers.disconnected", meterRegistry);
+        this.rejected = counter("stream.subscribers.rejected", meterRegistry);
+        Gauge.builder("stream.subscribers", subscribers, AtomicInteger::get)
+                .tag("stream", stream)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Applies the policy to one subscriber of {@code events}. The result may contain
+     * {@link StreamHeartbeat}s besides the events.
+     *
+     * @param conflationKey key of an event for {@link Overflow#CONFLATE}, may return null
+     */
+    public <T> Flux<Object> apply(Flux<T> events, Function<T, ?> conflationKey) {
+        return apply(events, conflationKey, null);
+    }
+
+    /**
+     * Like {@link #apply(Flux, Function)}, but once events were dropped for the subscriber {@code gap} is
+     * sent ahead of the next event, so the subscriber knows it has to resynchronise.
+     */
+    public <T> Flux<Object> apply(Flux<T> events, Function<T, ?> conflationKey, Object gap) {
+        return Flux.defer(() -> {
+            if (subscribers.incrementAndGet() > maxSubscribers) {
+                subscribers.decrementAndGet();
+                rejected.increment();
+                return Flux.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Too many subscribers on the " + stream + " stream"));
+            }
+            var gapPending = new AtomicBoolean();
+            Flux<Object> buffered = buffered(events, conflationKey, () -> {
+                dropped.increment();
+                gapPending.set(true);
+            });
+            if (gap != null) {
+                buffered = buffered.concatMapIterable(event -> gapPending.getAndSet(false)
+                        ? List.of(gap, event) : List.of(event), 1);
+            }
+            return withHeartbeats(buffered)
+                    .doFinally(signalType -> subscribers.decrementAndGet());
+        });
+    }
+
+    public int subscriberCount() {
+        return subscribers.get();
+    }
+
+    private <T> Flux<Object> buffered(Flux<T> events, Function<T, ?> conflationKey, Runnable onDropped) {
+        switch (overflow) {
+            case DISCONNECT:
+                return events.onBackpressureBuffer(bufferSize, event -> {
+                    disconnected.increment();
+                    log.warn("Disconnecting a subscriber of the {} stream, {} events behind", stream, bufferSize);
+                }, BufferOverflowStrategy.ERROR).cast(Object.class);
+            case CONFLATE:
+                return ConflatingBuffer.conflate(events, conflationKey, bufferSize,
+                        conflated::increment, onDropped).cast(Object.class);
+            default:
+                return events.onBackpressureBuffer(bufferSize, event -> onDropped.run(),
+                        BufferOverflowStrategy.DROP_OLDEST).cast(Object.class);
+        }
+    }
+
+    /**
+     * Checks once per interval whether anything was sent during the last interval, so an idle stream
+     * gets a heartbeat after one to two intervals. Prefetching a single event keeps the buffer
+     * above the one deciding about overflow.
+     */
+    private Flux<Object> withHeartbeats(Flux<?> events) {
+        if (heartbeatInterval.isZero()) {
+            return events.cast(Object.class);
+        }
+        return Flux.defer(() -> {
+            var scheduler = Schedulers.parallel();
+            var lastSent = new AtomicLong(scheduler.now(TimeUnit.NANOSECONDS));
+            var heartbeats = Flux.interval(heartbeatInterval, scheduler)
+                    .onBackpressureDrop()
+                    .filter(tick -> scheduler.now(TimeUnit.NANOSECONDS) - lastSent.get() >= heartbeatInterval.toNanos())
+                    .map(tick -> StreamHeartbeat.INSTANCE);
+            return Flux.merge(1, events, heartbeats)
+                    .doOnNext(sent -> lastSent.set(scheduler.now(TimeUnit.NANOSECONDS)));
+        });
+    }
+
+    private Counter counter(String name, MeterRegistry meterRegistry) {
+        return Counter.builder(name)
+                .tag("stream", stream)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,79 @@
+package com.reactivespring.util;
+
+import com.reactivespring.exception.ReviewDataException;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Opaque keyset pagination token: the _id of the last document of the previous page.
+ */
+public class PageToken {
+
+    public static final String NEXT_TOKEN_HEADER = "X-Next-Token";
+    public static final int MAX_LIMIT = 1000;
+    private static final ObjectId MIN_OBJECT_ID = new ObjectId(new byte[12]);
+
+    public static String encode(String lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(lastId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decode(String token) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ReviewDataException("next : invalid page token");
+        }
+    }
+
+    public static int parseLimit(String limit) {
+        try {
+            var value = Integer.parseInt(limit);
+            if (value > 0) {
+                return Math.min(value, MAX_LIMIT);
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ReviewDataException("limit : must be a positive value");
+    }
+
+    /**
+     * Matches every _id sorting after {@code lastId}. Ids that look like an ObjectId are stored as one,
+     * other ids as strings, and strings sort before every ObjectId.
+     */
+    public static Criteria idAfter(String lastId) {
+        return idAfter("_id", lastId);
+    }
+
+    /**
+     * Like {@link #idAfter(String)} for an id stored in {@code field}, e.g. reviews._id of a review bucket.
+     */
+    public static Criteria idAfter(String field, String lastId) {
+        if (ObjectId.isValid(lastId)) {
+            return where(field).gt(new ObjectId(lastId));
+        }
+        return new Criteria().orOperator(
+                where(field).gt(lastId),
+                where(field).gte(MIN_OBJECT_ID));
+    }
+
+    /**
+     * Matches every id in {@code field} sorting before or at {@code lastId}, the complement of
+     * {@link #idAfter(String, String)}.
+     */
+    public static Criteria idAtMost(String field, String lastId) {
+        if (ObjectId.isValid(lastId)) {
+            return new Criteria().orOperator(
+                    where(field).lte(new ObjectId(lastId)),
+                    where(field).type(JsonSchemaObject.Type.STRING));
+        }
+        return where(field).lte(lastId);
+    }
+}
@@ -0,0 +1,63 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBucket;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.service.ReviewStatsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Runs every query method declared in this project's repositories, with and without review buckets,
+ * and the stats reads, and fails when one of them is planned as a COLLSCAN, see {@link QueryIndexCoverage}.
+ * The stats rebuild aggregates instead of sending a find, only its stats lookup is covered here.
+ */
+@DataMongoTest
+@ActiveProfiles("test")
+@Import(QueryIndexCoverage.CommandCapture.class)
+class QueryIndexCoverageIntgTest {
+
+    @Autowired
+    ReviewReactorRepository reviewReactorRepository;
+
+    @Autowired
+    ReactiveMongoTemplate mongoTemplate;
+
+    QueryIndexCoverage coverage;
+
+    @BeforeEach
+    void ensureIndexes() {
+        coverage = new QueryIndexCoverage(mongoTemplate);
+        coverage.ensureIndexes(Review.class, ReviewBucket.class, ReviewStats.class);
+    }
+
+    @Test
+    void everyRepositoryQueryUsesAnIndex() throws Exception {
+        coverage.checkQueryMethods(ReviewReactorRepository.class, reviewReactorRepository);
+        coverage.check("findPage without movieInfoId", reviewReactorRepository.findPage(null, "sample", 10));
+        coverage.assertEveryQueryUsesAnIndex();
+    }
+
+    @Test
+    void everyBucketQueryUsesAnIndex() throws Exception {
+        var bucketed = new ReviewReactorRepositoryImpl(mongoTemplate, true, 200);
+
+        coverage.checkQueryMethods(ReviewReactorRepositoryCustom.class, bucketed);
+        coverage.check("findPage without movieInfoId", bucketed.findPage(null, "sample", 10));
+        coverage.assertEveryQueryUsesAnIndex();
+    }
+
+    @Test
+    void everyStatsQueryUsesAnIndex() {
+        var stats = new ReviewStatsService(mongoTemplate, false);
+
+        coverage.check("getStats", stats.getStats(1L));
+        coverage.check("rebuild", stats.rebuild(1L));
+        coverage.assertEveryQueryUsesAnIndex();
+    }
+}
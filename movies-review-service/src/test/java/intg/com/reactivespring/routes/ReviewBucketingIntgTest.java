@@ -0,0 +1,281 @@
+package com.reactivespring.routes;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewBucket;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.repository.ReviewReactorRepository;
+import com.reactivespring.service.ReviewBucketMigration;
+import com.reactivespring.util.PageToken;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@TestPropertySource(properties = {
+        "reviews.bucketing.enabled=true",
+        "reviews.bucketing.maxReviewsPerBucket=3"
+})
+public class ReviewBucketingIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    ReactiveMongoTemplate mongoTemplate;
+    @Autowired
+    ReviewBucketMigration reviewBucketMigration;
+    @Autowired
+    ReviewReactorRepository reviewReactorRepository;
+
+    static String REVIEWS_URL = "/v1/reviews";
+
+    @AfterEach
+    void tearDown() {
+        mongoTemplate.dropCollection(ReviewBucket.class).block();
+        mongoTemplate.dropCollection(Review.class).block();
+        mongoTemplate.dropCollection(ReviewStats.class).block();
+    }
+
+    @Test
+    void reviewsAreStoredInBuckets() {
+        var saved = new ArrayList<Review>();
+        for (int i = 0; i < 7; i++) {
+            saved.add(postReview(new Review(null, 77L, "Review " + i, (double) i)));
+        }
+
+        var reviews = getReviews(REVIEWS_URL + "?movieInfoId=77");
+
+        assertEquals(ids(saved), ids(reviews));
+        var buckets = buckets(77L);
+        assertEquals(List.of(3, 3, 1), buckets.stream().map(ReviewBucket::getCount).sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList()));
+        assertEquals(21.0, buckets.stream().mapToDouble(ReviewBucket::getSum).sum());
+        assertEquals(0L, mongoTemplate.count(new Query(), Review.class).block());
+    }
+
+    @Test
+    void pagesRunAcrossBuckets() {
+        var saved = new ArrayList<Review>();
+        for (int i = 0; i < 7; i++) {
+            saved.add(postReview(new Review(null, 77L, "Review " + i, 8.0)));
+        }
+        postReview(new Review(null, 78L, "Other movie", 8.0));
+
+        var paged = new ArrayList<Review>();
+        String next = null;
+        do {
+            var result = webTestClient.get()
+                    .uri(REVIEWS_URL + "?movieInfoId=77&limit=2" + (next != null ? "&next=" + next : ""))
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBodyList(Review.class)
+                    .returnResult();
+            paged.addAll(result.getResponseBody());
+            next = result.getResponseHeaders().getFirst(PageToken.NEXT_TOKEN_HEADER);
+        } while (next != null);
+
+        assertEquals(ids(saved), paged.stream().map(Review::getReviewId).collect(Collectors.toList()));
+        // appended to the latest bucket, so the buckets hold consecutive id ranges
+        var buckets = buckets(77L);
+        buckets.sort(Comparator.comparing(bucket -> bucket.getFirstId().toString()));
+        for (int i = 1; i < buckets.size(); i++) {
+            assertTrue(ReviewBucket.compareIds(buckets.get(i - 1).getLastId(), buckets.get(i).getFirstId()) < 0);
+        }
+    }
+
+    @Test
+    void pagesAreOrderedWhenBucketRangesOverlap() {
+        var ids = new ArrayList<String>();
+        for (int i = 0; i < 9; i++) {
+            ids.add(new ObjectId().toHexString());
+        }
+        for (var index : List.of(8, 0, 4, 1, 7, 2, 6, 3, 5)) {
+            reviewReactorRepository.save(new Review(ids.get(index), 77L, "Review " + index, 8.0)).block();
+        }
+        var other = reviewReactorRepository.save(new Review(null, 78L, "Other movie", 8.0)).block();
+
+        assertEquals(ids, pageThrough("?movieInfoId=77&limit=2"));
+        var allIds = new ArrayList<>(ids);
+        allIds.add(other.getReviewId());
+        assertEquals(allIds, pageThrough("?limit=4"));
+    }
+
+    @Test
+    void updatesAndDeletesKeepBucketTotals() {
+        var first = postReview(new Review(null, 77L, "First", 6.0));
+        var second = postReview(new Review(null, 77L, "Second", 8.0));
+        var third = postReview(new Review(null, 77L, "Third", 9.0));
+
+        webTestClient.put()
+                .uri(REVIEWS_URL + "/{id}", first.getReviewId())
+                .bodyValue(new Review(null, 77L, "First, updated", 7.0))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Review.class)
+                .isEqualTo(new Review(first.getReviewId(), 77L, "First, updated", 7.0));
+        webTestClient.patch()
+                .uri(REVIEWS_URL + "/{id}", second.getReviewId())
+                .bodyValue(Map.of("comment", "Second, patched"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Review.class)
+                .isEqualTo(new Review(second.getReviewId(), 77L, "Second, patched", 8.0));
+        webTestClient.delete()
+                .uri(REVIEWS_URL + "/{id}", third.getReviewId())
+                .exchange()
+                .expectStatus().isNoContent();
+        webTestClient.delete()
+                .uri(REVIEWS_URL + "/{id}", third.getReviewId())
+                .exchange()
+                .expectStatus().isNoContent();
+
+        var bucket = buckets(77L).get(0);
+        assertEquals(2, bucket.getCount());
+        assertEquals(2, bucket.getRated());
+        assertEquals(15.0, bucket.getSum());
+        assertEquals(List.of(new Review(first.getReviewId(), 77L, "First, updated", 7.0),
+                        new Review(second.getReviewId(), 77L, "Second, patched", 8.0)),
+                getReviews(REVIEWS_URL + "?movieInfoId=77"));
+
+        var stats = getStats(77L);
+        webTestClient.post()
+                .uri(REVIEWS_URL + "/stats/rebuild?movieInfoId=77")
+                .exchange()
+                .expectStatus().isNoContent();
+        assertEquals(stats, getStats(77L));
+        assertEquals(2, stats.getCount());
+        assertEquals(7.5, stats.getMean());
+    }
+
+    @Test
+    void updateOfUnknownReviewIsNotFound() {
+        webTestClient.put()
+                .uri(REVIEWS_URL + "/{id}", "5f1e9a2b3c4d5e6f7a8b9c0d")
+                .bodyValue(new Review(null, 77L, "Nothing", 5.0))
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void migrationBuildsBucketsFromTheReviewCollection() {
+        var reviews = new ArrayList<Review>();
+        for (int i = 0; i < 5; i++) {
+            reviews.add(new Review(null, 78L, "Review " + i, i == 0 ? null : 5.0));
+        }
+        reviews.add(new Review(null, 79L, "Only review", 9.0));
+        var inserted = mongoTemplate.insert(reviews, Review.class).collectList().block();
+
+        // run like the offline task, before bucketing is switched on
+        StepVerifier.create(new ReviewBucketMigration(mongoTemplate, false, 3).migrate())
+                .expectNext(Map.of("reviews", 6L, "buckets", 3L))
+                .verifyComplete();
+
+        var movieReviews = inserted.stream().filter(review -> review.getMovieInfoId() == 78L).collect(Collectors.toList());
+        assertEquals(ids(movieReviews), ids(getReviews(REVIEWS_URL + "?movieInfoId=78")));
+        var buckets = buckets(78L);
+        assertEquals(List.of(3, 2), buckets.stream().map(ReviewBucket::getCount).collect(Collectors.toList()));
+        assertEquals(List.of(2, 2), buckets.stream().map(ReviewBucket::getRated).collect(Collectors.toList()));
+
+        // migrated reviews are found by their id
+        webTestClient.patch()
+                .uri(REVIEWS_URL + "/{id}", movieReviews.get(0).getReviewId())
+                .bodyValue(Map.of("rating", 4.0))
+                .exchange()
+                .expectStatus().isOk();
+        assertEquals(3, buckets(78L).get(0).getRated());
+        assertEquals(14.0, buckets(78L).get(0).getSum());
+        assertEquals(List.of(inserted.get(5)), buckets(79L).get(0).getReviews());
+    }
+
+    @Test
+    void migrationIsRefusedWhileBucketingIsEnabled() {
+        var saved = postReview(new Review(null, 77L, "Only in a bucket", 8.0));
+
+        StepVerifier.create(reviewBucketMigration.migrate())
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        assertEquals(List.of(saved), getReviews(REVIEWS_URL + "?movieInfoId=77"));
+        webTestClient.post()
+                .uri(REVIEWS_URL + "/buckets/migrate")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    private List<String> pageThrough(String query) {
+        var paged = new ArrayList<String>();
+        String next = null;
+        do {
+            var result = webTestClient.get()
+                    .uri(REVIEWS_URL + query + (next != null ? "&next=" + next : ""))
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBodyList(Review.class)
+                    .returnResult();
+            result.getResponseBody().forEach(review -> paged.add(review.getReviewId()));
+            next = result.getResponseHeaders().getFirst(PageToken.NEXT_TOKEN_HEADER);
+        } while (next != null);
+        return paged;
+    }
+
+    private Review postReview(Review review) {
+        return webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private List<Review> getReviews(String uri) {
+        return webTestClient.get()
+                .uri(uri)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Review.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private ReviewStats getStats(Long movieInfoId) {
+        return webTestClient.get()
+                .uri(REVIEWS_URL + "/stats?movieInfoId={id}", movieInfoId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ReviewStats.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private List<ReviewBucket> buckets(Long movieInfoId) {
+        var query = new Query(where("movieInfoId").is(movieInfoId)).with(Sort.by("_id"));
+        return mongoTemplate.find(query, ReviewBucket.class).collectList().block();
+    }
+
+    private static List<String> ids(List<Review> reviews) {
+        return reviews.stream().map(Review::getReviewId).sorted().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,148 @@
+package com.reactivespring.routes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.IdempotencyRecord;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.repository.ReviewReactorRepository;
+import com.reactivespring.service.IdempotentWrites;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+public class ReviewIdempotencyIntgTest {
+
+    @LocalServerPort
+    int port;
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    ReviewReactorRepository reviewReactorRepository;
+    @Autowired
+    ReactiveMongoTemplate mongoTemplate;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    static String REVIEWS_URL = "/v1/reviews";
+
+    @AfterEach
+    void tearDown() {
+        reviewReactorRepository.deleteAll().block();
+        mongoTemplate.dropCollection(ReviewStats.class).block();
+        mongoTemplate.dropCollection(IdempotencyRecord.class).block();
+    }
+
+    @Test
+    void retryGetsTheFirstResponse() {
+        var review = new Review(null, 42L, "Awesome Movie", 9.0);
+
+        var first = addReview("retry-key", review);
+        var retried = addReview("retry-key", review);
+
+        assertEquals(first, retried);
+        StepVerifier.create(reviewReactorRepository.count())
+                .expectNext(1L)
+                .verifyComplete();
+        StepVerifier.create(mongoTemplate.findById(42L, ReviewStats.class).map(ReviewStats::getCount))
+                .expectNext(1L)
+                .verifyComplete();
+    }
+
+    @Test
+    void concurrentDuplicatesWaitForTheFirst() {
+        var webClient = WebClient.create("http://localhost:" + port);
+
+        var reviewIds = Flux.range(0, 10)
+                .flatMap(i -> webClient.post()
+                        .uri(REVIEWS_URL)
+                        .header(IdempotentWrites.HEADER, "concurrent-key")
+                        .bodyValue(new Review(null, 1L, "Awesome Movie", 9.0))
+                        .retrieve()
+                        .bodyToMono(Review.class)
+                        .map(Review::getReviewId))
+                .distinct()
+                .collectList()
+                .block();
+
+        assertEquals(1, reviewIds.size());
+        StepVerifier.create(reviewReactorRepository.count())
+                .expectNext(1L)
+                .verifyComplete();
+    }
+
+    @Test
+    void keyReusedForADifferentRequest() {
+        addReview("reused-key", new Review(null, 1L, "Awesome Movie", 9.0));
+
+        webTestClient.post()
+                .uri(REVIEWS_URL)
+                .header(IdempotentWrites.HEADER, "reused-key")
+                .bodyValue(new Review(null, 1L, "Awful Movie", 1.0))
+                .exchange()
+                .expectStatus().isEqualTo(422);
+    }
+
+    @Test
+    void anotherInstanceReplaysFromTheStoredRecord() {
+        var review = new Review(null, 1L, "Awesome Movie", 9.0);
+        var first = addReview("instance-key", review);
+        var otherInstance = new IdempotentWrites(mongoTemplate, objectMapper, Duration.ofHours(1), 100, Duration.ofSeconds(30));
+
+        StepVerifier.create(otherInstance.execute("reviews", "instance-key", review, Review.class,
+                        () -> Mono.error(new AssertionError("written twice"))))
+                .expectNext(first)
+                .verifyComplete();
+    }
+
+    @Test
+    void responseThatCouldNotBeStoredKeepsTheKeyPending() {
+        var review = new Review("stored-id", 1L, "Awesome Movie", 9.0);
+        var template = spy(mongoTemplate);
+        doReturn(Mono.error(new DataAccessResourceFailureException("connection lost")))
+                .when(template).save(any(IdempotencyRecord.class));
+        var idempotentWrites = new IdempotentWrites(template, objectMapper, Duration.ofHours(1), 100, Duration.ofSeconds(30));
+
+        StepVerifier.create(idempotentWrites.execute("reviews", "unstored-key", review, Review.class,
+                        () -> Mono.just(review)))
+                .expectNext(review)
+                .verifyComplete();
+
+        StepVerifier.create(mongoTemplate.findById("reviews:unstored-key", IdempotencyRecord.class))
+                .assertNext(record -> assertNull(record.getResponse()))
+                .verifyComplete();
+    }
+
+    private Review addReview(String idempotencyKey, Review review) {
+        return webTestClient.post()
+                .uri(REVIEWS_URL)
+                .header(IdempotentWrites.HEADER, idempotencyKey)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
@@ -0,0 +1,65 @@
+package com.reactivespring.routes;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewReactorRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@AutoConfigureMetrics
+public class ReviewMetricsIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    ReviewReactorRepository reviewReactorRepository;
+
+    @AfterEach
+    void tearDown() {
+        reviewReactorRepository.deleteAll().block();
+    }
+
+    @Test
+    void prometheusScrapeHasRouteDownstreamAndStreamMetrics() {
+        var review = reviewReactorRepository.save(new Review(null, 1L, "Awesome Movie", 9.0)).block();
+        webTestClient.put()
+                .uri("/v1/reviews/{id}", review.getReviewId())
+                .bodyValue(new Review(null, 1L, "Still awesome", 9.5))
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.put()
+                .uri("/v1/reviews/{id}", "unknown")
+                .bodyValue(new Review(null, 1L, "Still awesome", 9.5))
+                .exchange()
+                .expectStatus().isNotFound();
+
+        var scrape = webTestClient.get()
+                .uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        // both updates share the route template, the ids never become tag values
+        assertTrue(scrape.contains("http_server_requests_seconds_bucket{application=\"movies-review-service\","
+                + "exception=\"None\",method=\"PUT\",outcome=\"SUCCESS\",status=\"200\",uri=\"/v1/reviews/{id}\""), scrape);
+        assertTrue(scrape.contains("method=\"PUT\",outcome=\"CLIENT_ERROR\",status=\"404\",uri=\"/v1/reviews/{id}\""));
+        assertFalse(scrape.contains(review.getReviewId()));
+        assertTrue(scrape.matches("(?s).*mongodb_driver_commands_seconds_bucket\\{[^}]*collection=\"review\",command=\"findAndModify\".*"));
+        assertTrue(scrape.contains("stream_sink_subscribers{application=\"movies-review-service\",sink=\"all\",stream=\"reviews\",}"));
+        assertTrue(scrape.contains("stream_emit_failures_total{application=\"movies-review-service\",result=\"fail_overflow\",stream=\"reviews\",}"));
+    }
+}
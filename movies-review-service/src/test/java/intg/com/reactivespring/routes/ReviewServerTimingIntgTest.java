@@ -0,0 +1,49 @@
+package com.reactivespring.routes;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.ReviewReactorRepository;
+import com.reactivespring.util.ServerTiming;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@TestPropertySource(properties = "serverTiming.enabled=true")
+public class ReviewServerTimingIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    ReviewReactorRepository reviewReactorRepository;
+
+    @AfterEach
+    void tearDown() {
+        reviewReactorRepository.deleteAll().block();
+    }
+
+    @Test
+    void mongoAndEncodePhasesAreAnswered() {
+        reviewReactorRepository.saveAll(List.of(
+                new Review(null, 1L, "Awesome Movie", 9.0),
+                new Review(null, 1L, "Awesome Movie1", 9.0))).blockLast();
+
+        webTestClient.get()
+                .uri("/v1/reviews?movieInfoId=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value(ServerTiming.HEADER, header -> assertTrue(
+                        header.matches("mongo;dur=[0-9.]+, encode;dur=[0-9.]+, total;dur=[0-9.]+"), header));
+    }
+}
@@ -0,0 +1,207 @@
+package com.reactivespring.routes;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.repository.ReviewReactorRepository;
+import com.reactivespring.service.ReviewStatsService;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+public class ReviewStatsIntgTest {
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    ReviewReactorRepository reviewReactorRepository;
+    @Autowired
+    ReviewStatsService reviewStatsService;
+    @Autowired
+    ReactiveMongoTemplate mongoTemplate;
+
+    static String REVIEWS_URL = "/v1/reviews";
+
+    @AfterEach
+    void tearDown() {
+        reviewReactorRepository.deleteAll().block();
+        mongoTemplate.dropCollection(ReviewStats.class).block();
+    }
+
+    @Test
+    void statsForMovieWithoutReviews() {
+        var stats = getStats(42L);
+
+        assertEquals(0, stats.getCount());
+        assertNull(stats.getMean());
+    }
+
+    @Test
+    void incrementalStatsMatchFullRecompute() {
+        var random = new Random(7);
+        var saved = new ArrayList<Review>();
+
+        for (int i = 0; i < 60; i++) {
+            var movieInfoId = (long) random.nextInt(3);
+            var rating = Math.round(random.nextDouble() * 100) / 10.0;
+            saved.add(postReview(new Review(null, movieInfoId, "review " + i, rating)));
+        }
+        for (int i = 0; i < 20; i++) {
+            var review = saved.get(random.nextInt(saved.size()));
+            var rating = Math.round(random.nextDouble() * 100) / 10.0;
+            webTestClient.put()
+                    .uri(REVIEWS_URL + "/{id}", review.getReviewId())
+                    .bodyValue(new Review(null, review.getMovieInfoId(), review.getComment(), rating))
+                    .exchange()
+                    .expectStatus().isOk();
+        }
+        for (int i = 0; i < 20; i++) {
+            var review = saved.remove(random.nextInt(saved.size()));
+            webTestClient.delete()
+                    .uri(REVIEWS_URL + "/{id}", review.getReviewId())
+                    .exchange()
+                    .expectStatus().isNoContent();
+        }
+
+        var incremental = new ArrayList<ReviewStats>();
+        for (long movieInfoId = 0; movieInfoId < 3; movieInfoId++) {
+            incremental.add(getStats(movieInfoId));
+        }
+
+        webTestClient.post()
+                .uri(REVIEWS_URL + "/stats/rebuild")
+                .exchange()
+                .expectStatus().isNoContent();
+
+        for (long movieInfoId = 0; movieInfoId < 3; movieInfoId++) {
+            var expected = getStats(movieInfoId);
+            var actual = incremental.get((int) movieInfoId);
+            assertEquals(expected.getCount(), actual.getCount());
+            assertEquals(expected.getSum(), actual.getSum(), 1e-9);
+            assertEquals(expected.getMin(), actual.getMin());
+            assertEquals(expected.getMax(), actual.getMax());
+            assertEquals(expected.getHistogram(), actual.getHistogram());
+        }
+    }
+
+    @Test
+    void removingTheMaximumRebuildsStats() {
+        postReview(new Review(null, 5L, "good", 7.0));
+        var best = postReview(new Review(null, 5L, "best", 9.5));
+
+        webTestClient.delete()
+                .uri(REVIEWS_URL + "/{id}", best.getReviewId())
+                .exchange()
+                .expectStatus().isNoContent();
+
+        var stats = getStats(5L);
+        assertEquals(1, stats.getCount());
+        assertEquals(7.0, stats.getMax());
+        assertEquals(List.of("7"), new ArrayList<>(stats.getHistogram().keySet()));
+    }
+
+    @Test
+    void removingTheMinimumOrMaximumDoesNotReadTheReviews() {
+        var low = postReview(new Review(null, 6L, "low", 4.0));
+        postReview(new Review(null, 6L, "middle", 8.5));
+        postReview(new Review(null, 6L, "also middle", 8.5));
+        var high = postReview(new Review(null, 6L, "high", 9.5));
+        var orphaned = postReview(new Review(null, 6L, "orphaned", 7.0));
+        // gone from the reviews but still counted, a rebuild would drop it
+        reviewReactorRepository.deleteById(orphaned.getReviewId()).block();
+
+        for (var review : List.of(low, high)) {
+            webTestClient.delete()
+                    .uri(REVIEWS_URL + "/{id}", review.getReviewId())
+                    .exchange()
+                    .expectStatus().isNoContent();
+        }
+
+        var stats = getStats(6L);
+        assertEquals(3, stats.getCount());
+        assertEquals(7.0, stats.getMin());
+        assertEquals(8.5, stats.getMax());
+    }
+
+    @Test
+    void rebuildStartsOverWhenStatsAreWrittenMeanwhile() {
+        postReview(new Review(null, 8L, "first", 7.0));
+        var template = spy(mongoTemplate);
+        var service = new ReviewStatsService(template, false);
+        var written = new AtomicBoolean();
+        // a review written after the aggregation read the reviews, before its result is stored
+        doAnswer(invocation -> ((Flux<?>) invocation.callRealMethod())
+                .concatWith(Mono.defer(() -> written.compareAndSet(false, true)
+                        ? reviewReactorRepository.save(new Review(null, 8L, "meanwhile", 9.0))
+                                .flatMap(reviewStatsService::reviewAdded)
+                        : Mono.empty()).then(Mono.empty())))
+                .when(template).aggregate(any(Aggregation.class), eq(Review.class), eq(Document.class));
+
+        service.rebuild(8L).block();
+
+        var stats = getStats(8L);
+        assertEquals(2, stats.getCount());
+        assertEquals(9.0, stats.getMax());
+    }
+
+    @Test
+    void rebuildReplacesStatsWrittenBeforeTheyWereVersioned() {
+        var review = postReview(new Review(null, 9L, "only", 6.0));
+        mongoTemplate.updateFirst(new Query(where("_id").is(9L)),
+                new Update().unset("version").unset("ratingCounts"), ReviewStats.class).block();
+
+        webTestClient.delete()
+                .uri(REVIEWS_URL + "/{id}", review.getReviewId())
+                .exchange()
+                .expectStatus().isNoContent();
+
+        assertEquals(0, getStats(9L).getCount());
+        assertNull(mongoTemplate.findById(9L, ReviewStats.class).block());
+    }
+
+    private Review postReview(Review review) {
+        return webTestClient.post()
+                .uri(REVIEWS_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private ReviewStats getStats(Long movieInfoId) {
+        return webTestClient.get()
+                .uri(REVIEWS_URL + "/stats?movieInfoId={id}", movieInfoId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ReviewStats.class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
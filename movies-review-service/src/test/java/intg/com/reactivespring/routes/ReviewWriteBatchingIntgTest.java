@@ -0,0 +1,85 @@
+package com.reactivespring.routes;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
+import com.reactivespring.repository.ReviewReactorRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+        "reviews.writeBatching.enabled=true",
+        "reviews.writeBatching.maxBatchSize=10",
+        "reviews.writeBatching.window=50ms"
+})
+public class ReviewWriteBatchingIntgTest {
+
+    @LocalServerPort
+    int port;
+    @Autowired
+    ReviewReactorRepository reviewReactorRepository;
+    @Autowired
+    ReactiveMongoTemplate mongoTemplate;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @AfterEach
+    void tearDown() {
+        reviewReactorRepository.deleteAll().block();
+        mongoTemplate.dropCollection(ReviewStats.class).block();
+    }
+
+    @Test
+    void concurrentReviewsAreWrittenInBatches() {
+        var webClient = WebClient.create("http://localhost:" + port);
+
+        var savedReviews = Flux.range(0, 25)
+                .flatMap(i -> webClient.post()
+                        .uri("/v1/reviews")
+                        .bodyValue(new Review(null, 1L, "Review " + i, 8.0 + (i % 3) * 0.5))
+                        .retrieve()
+                        .bodyToMono(Review.class))
+                .collectList()
+                .block();
+
+        assertEquals(25, savedReviews.size());
+        var ids = new HashSet<String>();
+        savedReviews.forEach(review -> ids.add(review.getReviewId()));
+        assertEquals(25, ids.size());
+        StepVerifier.create(reviewReactorRepository.findReviewsByMovieInfoId(1L).count())
+                .expectNext(25L)
+                .verifyComplete();
+
+        var batchSize = meterRegistry.get("reviews.write.batch.size").summary();
+        assertEquals(25.0, batchSize.totalAmount());
+        assertTrue(batchSize.count() < 25, "written in " + batchSize.count() + " batches");
+        assertEquals(0.0, meterRegistry.get("reviews.write.queued").gauge().value());
+
+        StepVerifier.create(webClient.get().uri("/v1/reviews/stats?movieInfoId=1").retrieve().bodyToMono(ReviewStats.class))
+                .assertNext(stats -> {
+                    assertEquals(25, stats.getCount());
+                    assertEquals(9 * 8.0 + 8 * 8.5 + 8 * 9.0, stats.getSum());
+                    assertEquals(8.0, stats.getMin());
+                    assertEquals(9.0, stats.getMax());
+                    assertEquals(Map.of("8", 17L, "9", 8L), stats.getHistogram());
+                })
+                .verifyComplete();
+    }
+}
@@ -2,6 +2,7 @@ package com.reactivespring.routes;
 
 import com.reactivespring.domain.Review;
 import com.reactivespring.repository.ReviewReactorRepository;
+import com.reactivespring.util.PageToken;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,10 +11,13 @@ import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWeb
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
 
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -98,6 +102,38 @@ public class ReviewsIntgTest {
                 });
     }
 
+    @Test
+    void patchReview() {
+
+        var review = new Review(null, 1L, "Awesome Movie", 9.0);
+        var savedReview = reviewReactorRepository.save(review).block();
+
+        assert savedReview != null;
+
+        webTestClient
+                .patch()
+                .uri(REVIEWS_URL+"/{id}", savedReview.getReviewId())
+                .bodyValue(Map.of("rating", 7.0))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Review.class)
+                .isEqualTo(new Review(savedReview.getReviewId(), 1L, "Awesome Movie", 7.0));
+
+        StepVerifier.create(reviewReactorRepository.findById(savedReview.getReviewId()))
+                .expectNext(new Review(savedReview.getReviewId(), 1L, "Awesome Movie", 7.0))
+                .verifyComplete();
+    }
+
+    @Test
+    void updateReviewNotFound() {
+        webTestClient
+                .put()
+                .uri(REVIEWS_URL+"/{id}", "def")
+                .bodyValue(new Review(null, 1L, "Not an Awesome Movie", 8.0))
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
     @Test
     void deleteReview() {
 
@@ -131,4 +167,46 @@ public class ReviewsIntgTest {
                 });
 
     }
+
+    @Test
+    void getReviewsByMovieInfoIds() {
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(REVIEWS_URL)
+                        .queryParam("movieInfoIds", "1,2,3")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(3);
+    }
+
+    @Test
+    void getReviewsPageByMovieInfoId() {
+        var firstPage = webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&limit=1")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(1)
+                .returnResult();
+        var next = firstPage.getResponseHeaders().getFirst(PageToken.NEXT_TOKEN_HEADER);
+        assertNotNull(next);
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&limit=1&next={next}", next)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader().doesNotExist(PageToken.NEXT_TOKEN_HEADER)
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(1, reviews.size());
+                    assertNotEquals(firstPage.getResponseBody().get(0).getReviewId(), reviews.get(0).getReviewId());
+                });
+    }
 }
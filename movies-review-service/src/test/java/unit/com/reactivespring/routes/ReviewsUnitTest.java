@@ -1,41 +1,69 @@
 package com.reactivespring.routes;
 
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStats;
 import com.reactivespring.exceptionHandler.GlobalErrorHandler;
 import com.reactivespring.handler.ReviewHandler;
 import com.reactivespring.repository.ReviewReactorRepository;
 import com.reactivespring.router.ReviewRouter;
+import com.reactivespring.service.IdempotentWrites;
+import com.reactivespring.service.ReviewStatsService;
+import com.reactivespring.service.ReviewWriteBatcher;
+import com.reactivespring.util.PageToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-@WebFluxTest
-@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, GlobalErrorHandler.class})
+@WebFluxTest(properties = "reviews.stream.heartbeat=100ms")
+@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, ReviewWriteBatcher.class, IdempotentWrites.class, GlobalErrorHandler.class, SimpleMeterRegistry.class})
 @AutoConfigureWebTestClient
 public class ReviewsUnitTest {
     @MockBean
     private ReviewReactorRepository reviewReactorRepository;
 
+    @MockBean
+    private ReviewStatsService reviewStatsService;
+
+    @MockBean
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
     @Autowired
     private WebTestClient webTestClient;
 
     static String REVIEWS_URL = "/v1/reviews";
+
+    @BeforeEach
+    void setUp() {
+        when(reviewStatsService.reviewAdded(isA(Review.class))).thenReturn(Mono.empty());
+        when(reviewStatsService.reviewUpdated(isA(Review.class), any())).thenReturn(Mono.empty());
+        when(reviewStatsService.reviewRemoved(isA(Review.class))).thenReturn(Mono.empty());
+    }
+
     @Test
     void addReview(){
         var review = new Review("abc", 1L, "Great movie", 9.0);
@@ -77,13 +105,86 @@ public class ReviewsUnitTest {
                 .hasSize(3);
     }
 
+    @Test
+    void getReviewsByMovieInfoIds(){
+        var reviewsList = List.of(
+                new Review(null, 1L, "Awesome Movie", 9.0),
+                new Review(null, 2L, "Excellent Movie", 8.0));
+
+        when(reviewReactorRepository.findReviewsByMovieInfoIdIn(List.of(1L, 2L, 3L)))
+                .thenReturn(Flux.fromIterable(reviewsList));
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoIds=1,2,3")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_invalidId(){
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoIds=1,abc")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_withOtherFilter(){
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoIds=1,2&limit=10")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoIds=1,2&movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getReviewsPage(){
+        var reviewsList = List.of(
+                new Review("a", 1L, "Awesome Movie", 9.0),
+                new Review("b", 1L, "Awesome Movie1", 9.0),
+                new Review("c", 1L, "Excellent Movie", 8.0));
+
+        when(reviewReactorRepository.findPage(1L, "x", 3)).thenReturn(Flux.fromIterable(reviewsList));
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&limit=2&next={next}", PageToken.encode("x"))
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader().valueEquals(PageToken.NEXT_TOKEN_HEADER, PageToken.encode("b"))
+                .expectBodyList(Review.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getReviewsPage_invalidLimit(){
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?limit=abc")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
     @Test
     void updateReview() {
         var reviewUpdate = new Review(null, 1L, "Not an Awesome Movie", 8.0);
 
-        when(reviewReactorRepository.save(isA(Review.class)))
-                .thenReturn(Mono.just(new Review("abc", 1L, "Not an Awesome Movie", 8.0)));
-        when(reviewReactorRepository.findById((String) any()))
+        when(reviewReactorRepository.findAndUpdate(eq("abc"), isA(Review.class), eq(false)))
                 .thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
 
         webTestClient
@@ -103,11 +204,54 @@ public class ReviewsUnitTest {
 
     }
 
+    @Test
+    void patchReview() {
+        var reviewPatch = new Review(null, null, null, 7.0);
+
+        when(reviewReactorRepository.findAndUpdate(eq("abc"), isA(Review.class), eq(true)))
+                .thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
+
+        webTestClient
+                .patch()
+                .uri("/v1/reviews/{id}", "abc")
+                .bodyValue(reviewPatch)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Review.class)
+                .isEqualTo(new Review("abc", 1L, "Awesome Movie", 7.0));
+
+        verify(reviewStatsService).reviewUpdated(new Review("abc", 1L, "Awesome Movie", 7.0), 9.0);
+    }
+
+    @Test
+    void patchReviewNegativeRating() {
+        webTestClient
+                .patch()
+                .uri("/v1/reviews/{id}", "abc")
+                .bodyValue(new Review(null, null, null, -1.0))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("rating.negative : please pass a non-negative value");
+    }
+
+    @Test
+    void patchReviewNotFound() {
+        when(reviewReactorRepository.findAndUpdate(eq("abc"), isA(Review.class), eq(true)))
+                .thenReturn(Mono.empty());
+
+        webTestClient
+                .patch()
+                .uri("/v1/reviews/{id}", "abc")
+                .bodyValue(new Review(null, null, "Changed my mind", null))
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
     @Test
     void deleteReview() {
         var reviewId= "abc";
-        when(reviewReactorRepository.findById((String) any())).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
-        when(reviewReactorRepository.deleteById((String) any())).thenReturn(Mono.empty());
+        when(reviewReactorRepository.findAndDelete("abc")).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
 
         webTestClient
                 .delete()
@@ -116,6 +260,52 @@ public class ReviewsUnitTest {
                 .expectStatus().isNoContent();
     }
 
+    @Test
+    void getReviewStats() {
+        var stats = new ReviewStats(1L, 2, 17.0, 8.0, 9.0, new TreeMap<>(Map.of("8", 1L, "9", 1L)), new TreeMap<>(), 0);
+        when(reviewStatsService.getStats(1L)).thenReturn(Mono.just(stats));
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stats?movieInfoId=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.mean").isEqualTo(8.5)
+                .jsonPath("$.histogram.9").isEqualTo(1)
+                .jsonPath("$.ratingCounts").doesNotExist();
+    }
+
+    @Test
+    void getReviewStats_missingMovieInfoId() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stats")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void getReviewStats_invalidMovieInfoId() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stats?movieInfoId=abc")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("movieInfoId must be a number : abc");
+    }
+
+    @Test
+    void rebuildReviewStats_invalidMovieInfoId() {
+        webTestClient
+                .post()
+                .uri(REVIEWS_URL + "/stats/rebuild?movieInfoId=abc")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
     @Test
     void addReview_validation(){
         var review = new Review(null, null, "Great movie", -9.0);
@@ -133,4 +323,71 @@ public class ReviewsUnitTest {
                 .expectBody(String.class)
                 .isEqualTo("rating.movieInfoId : must not be null,rating.negative : please pass a non-negative value");
     }
+
+    @Test
+    void getReviewsStreamSendsHeartbeatsWhileIdle() {
+        var lines = webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stream?movieInfoId=1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(String.class)
+                .getResponseBody();
+
+        StepVerifier.create(lines)
+                .expectNext("")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void getReviewsStreamOfSeveralMovies() {
+        var lines = webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stream?movieInfoIds=1,2")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(String.class)
+                .getResponseBody();
+
+        StepVerifier.create(lines)
+                .expectNext("")
+                .then(() -> webTestClient
+                        .get()
+                        .uri(REVIEWS_URL + "/stream/subscribers")
+                        .exchange()
+                        .expectStatus()
+                        .isOk()
+                        .expectBody()
+                        .jsonPath("$.byMovieInfoId.1").isEqualTo(1)
+                        .jsonPath("$.byMovieInfoId.2").isEqualTo(1))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void getReviewsStreamOfAnInvalidMovieInfoId() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stream?movieInfoId=abc")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getReviewsStreamOfInvalidMovieInfoIds() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "/stream?movieInfoIds=1,abc")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
 }
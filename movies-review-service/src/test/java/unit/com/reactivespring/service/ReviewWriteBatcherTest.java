@@ -0,0 +1,118 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.exception.ReviewDataException;
+import com.reactivespring.repository.ReviewReactorRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReviewWriteBatcherTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    ReviewReactorRepository reviewReactorRepository = mock(ReviewReactorRepository.class);
+    ReviewStatsService reviewStatsService = mock(ReviewStatsService.class);
+
+    @BeforeEach
+    void setUp() {
+        when(reviewStatsService.reviewAdded(any())).thenReturn(Mono.empty());
+        when(reviewStatsService.reviewsAdded(anyList())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void savesEachReviewWhenDisabled() {
+        var review = new Review(null, 1L, "Awesome Movie", 9.0);
+        when(reviewReactorRepository.save(review)).thenReturn(Mono.just(review));
+        var batcher = new ReviewWriteBatcher(reviewReactorRepository, reviewStatsService, meterRegistry, false, 10, Duration.ofMillis(10), 100);
+
+        StepVerifier.create(batcher.insert(review))
+                .expectNext(review)
+                .verifyComplete();
+        verify(reviewReactorRepository, never()).insertUnordered(anyList());
+        verify(reviewStatsService).reviewAdded(review);
+    }
+
+    @Test
+    void writesAFullBatchAtOnceAndCompletesEachCaller() {
+        when(reviewReactorRepository.insertUnordered(anyList())).thenAnswer(invocation -> {
+            List<Review> reviews = invocation.getArgument(0);
+            reviews.get(0).setReviewId("a");
+            // the second review hit a write error
+            reviews.get(2).setReviewId("c");
+            return Mono.just(Map.of(1, "E11000 duplicate key error"));
+        });
+        var batcher = new ReviewWriteBatcher(reviewReactorRepository, reviewStatsService, meterRegistry, true, 3, Duration.ofHours(1), 100);
+
+        var first = batcher.insert(new Review(null, 1L, "first", 9.0)).cache();
+        var second = batcher.insert(new Review(null, 1L, "second", 8.0)).cache();
+        first.subscribe();
+        second.subscribe(review -> {}, ex -> {});
+
+        StepVerifier.create(batcher.insert(new Review(null, 2L, "third", 7.0)))
+                .expectNext(new Review("c", 2L, "third", 7.0))
+                .verifyComplete();
+        StepVerifier.create(first)
+                .expectNext(new Review("a", 1L, "first", 9.0))
+                .verifyComplete();
+        StepVerifier.create(second)
+                .expectErrorMatches(ex -> ex instanceof ReviewDataException && ex.getMessage().startsWith("E11000"))
+                .verify();
+        assertEquals(1, meterRegistry.get("reviews.write.batch.size").summary().count());
+        assertEquals(3.0, meterRegistry.get("reviews.write.batch.size").summary().totalAmount());
+        // one stats write for the batch, without the review that was not written
+        verify(reviewStatsService).reviewsAdded(List.of(new Review("a", 1L, "first", 9.0), new Review("c", 2L, "third", 7.0)));
+        verify(reviewStatsService, never()).reviewAdded(any());
+    }
+
+    @Test
+    void writesWhatIsWaitingOnceTheWindowHasPassed() {
+        when(reviewReactorRepository.insertUnordered(anyList())).thenReturn(Mono.just(Map.of()));
+        var batcher = new ReviewWriteBatcher(reviewReactorRepository, reviewStatsService, meterRegistry, true, 100, Duration.ofMillis(20), 100);
+
+        StepVerifier.create(batcher.insert(new Review(null, 1L, "first", 9.0)))
+                .expectNextCount(1)
+                .verifyComplete();
+        assertEquals(1, meterRegistry.get("reviews.write.batch.flush").timer().count());
+    }
+
+    @Test
+    void rejectsWithServiceUnavailableWhenTheQueueIsFull() {
+        var written = Sinks.<Map<Integer, String>>one();
+        when(reviewReactorRepository.insertUnordered(anyList())).thenReturn(written.asMono());
+        var batcher = new ReviewWriteBatcher(reviewReactorRepository, reviewStatsService, meterRegistry, true, 2, Duration.ofHours(1), 2);
+
+        var first = batcher.insert(new Review(null, 1L, "first", 9.0)).cache();
+        var second = batcher.insert(new Review(null, 1L, "second", 8.0)).cache();
+        first.subscribe();
+        second.subscribe();
+
+        StepVerifier.create(batcher.insert(new Review(null, 1L, "third", 7.0)))
+                .expectErrorMatches(ex -> ex instanceof ResponseStatusException
+                        && ((ResponseStatusException) ex).getStatus() == HttpStatus.SERVICE_UNAVAILABLE)
+                .verify();
+        assertEquals(2.0, meterRegistry.get("reviews.write.queued").gauge().value());
+        assertEquals(1.0, meterRegistry.get("reviews.write.rejected").counter().count());
+
+        written.tryEmitValue(Map.of());
+        StepVerifier.create(first).expectNextCount(1).verifyComplete();
+        StepVerifier.create(second).expectNextCount(1).verifyComplete();
+        assertEquals(0.0, meterRegistry.get("reviews.write.queued").gauge().value());
+    }
+}
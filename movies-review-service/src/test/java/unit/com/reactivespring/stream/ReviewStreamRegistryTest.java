@@ -0,0 +1,59 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReviewStreamRegistryTest {
+
+    @Test
+    void movieSubscriberOnlyReceivesReviewsOfItsMovie() {
+        var registry = new ReviewStreamRegistry();
+
+        StepVerifier.create(registry.reviews(1L))
+                .then(() -> {
+                    registry.emit(new Review("a", 2L, "Other Movie", 7.0));
+                    registry.emit(new Review("b", 1L, "Awesome Movie", 9.0));
+                })
+                .assertNext(review -> assertEquals("b", review.getReviewId()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void unfilteredSubscriberReceivesEveryReview() {
+        var registry = new ReviewStreamRegistry();
+
+        StepVerifier.create(registry.reviews())
+                .then(() -> {
+                    registry.emit(new Review("a", 2L, "Other Movie", 7.0));
+                    registry.emit(new Review("b", 1L, "Awesome Movie", 9.0));
+                })
+                .assertNext(review -> assertEquals("a", review.getReviewId()))
+                .assertNext(review -> assertEquals("b", review.getReviewId()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void subscriberCountsFollowSubscriptions() {
+        var registry = new ReviewStreamRegistry();
+
+        var first = registry.reviews(1L).subscribe();
+        var second = registry.reviews(1L).subscribe();
+        var third = registry.reviews(2L).subscribe();
+        assertEquals(Map.of(1L, 2, 2L, 1), registry.subscriberCountsByMovie());
+
+        first.dispose();
+        third.dispose();
+        assertEquals(Map.of(1L, 1), registry.subscriberCountsByMovie());
+
+        second.dispose();
+        assertTrue(registry.subscriberCountsByMovie().isEmpty());
+    }
+}
@@ -0,0 +1,139 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.domain.Review;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StreamSubscriberPolicyTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    Sinks.Many<Review> reviews = Sinks.many().multicast().directBestEffort();
+
+    @Test
+    void dropOldestKeepsTheNewestEvents() {
+        var policy = policy(StreamSubscriberPolicy.Overflow.DROP_OLDEST, 2, 10);
+
+        StepVerifier.create(policy.apply(reviews.asFlux(), Review::getMovieInfoId), 0)
+                .then(() -> emit("a", 1L, "b", 2L, "c", 3L, "d", 4L))
+                .thenRequest(2)
+                .expectNextMatches(reviewId("c"))
+                .expectNextMatches(reviewId("d"))
+                .thenCancel()
+                .verify();
+
+        assertEquals(2.0, counter("stream.events.dropped"));
+    }
+
+    @Test
+    void dropOldestSendsAGapWhereEventsWereDropped() {
+        var policy = policy(StreamSubscriberPolicy.Overflow.DROP_OLDEST, 2, 10);
+
+        StepVerifier.create(policy.apply(reviews.asFlux(), Review::getMovieInfoId, ReviewStreamGap.INSTANCE), 0)
+                .then(() -> emit("a", 1L))
+                .thenRequest(1)
+                .expectNextMatches(reviewId("a"))
+                .then(() -> emit("b", 2L, "c", 3L, "d", 4L, "e", 5L))
+                .thenRequest(4)
+                .expectNextMatches(reviewId("b"))
+                .expectNext(ReviewStreamGap.INSTANCE)
+                .expectNextMatches(reviewId("d"))
+                .expectNextMatches(reviewId("e"))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void disconnectEndsTheSubscriptionOnceTheBufferIsFull() {
+        var policy = policy(StreamSubscriberPolicy.Overflow.DISCONNECT, 2, 10);
+
+        StepVerifier.create(policy.apply(reviews.asFlux(), Review::getMovieInfoId), 0)
+                .then(() -> emit("a", 1L, "b", 2L, "c", 3L))
+                .thenRequest(3)
+                .expectNextCount(2)
+                .expectError()
+                .verify();
+
+        assertEquals(1.0, counter("stream.subscribers.disconnected"));
+        assertEquals(0, policy.subscriberCount());
+    }
+
+    @Test
+    void conflateKeepsTheLatestEventPerMovie() {
+        var policy = policy(StreamSubscriberPolicy.Overflow.CONFLATE, 2, 10);
+
+        StepVerifier.create(policy.apply(reviews.asFlux(), Review::getMovieInfoId), 0)
+                .then(() -> emit("a", 1L, "b", 2L, "c", 1L))
+                .thenRequest(2)
+                .expectNextMatches(reviewId("b"))
+                .expectNextMatches(reviewId("c"))
+                .then(() -> emit("d", 3L, "e", 4L, "f", 5L))
+                .thenRequest(2)
+                .expectNextMatches(reviewId("e"))
+                .expectNextMatches(reviewId("f"))
+                .thenCancel()
+                .verify();
+
+        assertEquals(1.0, counter("stream.events.conflated"));
+        assertEquals(1.0, counter("stream.events.dropped"));
+    }
+
+    @Test
+    void subscribersAboveTheCapAreRejected() {
+        var policy = policy(StreamSubscriberPolicy.Overflow.DROP_OLDEST, 2, 1);
+
+        var first = policy.apply(reviews.asFlux(), Review::getMovieInfoId).subscribe();
+
+        StepVerifier.create(policy.apply(reviews.asFlux(), Review::getMovieInfoId))
+                .expectError(ResponseStatusException.class)
+                .verify();
+        assertEquals(1.0, counter("stream.subscribers.rejected"));
+
+        first.dispose();
+        assertEquals(0, policy.subscriberCount());
+    }
+
+    @Test
+    void heartbeatIsSentWhenTheStreamIsIdle() {
+        StepVerifier.withVirtualTime(() -> new StreamSubscriberPolicy("reviews", StreamSubscriberPolicy.Overflow.DROP_OLDEST,
+                        2, 10, Duration.ofSeconds(15), meterRegistry)
+                        .apply(reviews.asFlux(), Review::getMovieInfoId))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofSeconds(10))
+                .then(() -> emit("a", 1L))
+                .expectNextMatches(reviewId("a"))
+                .expectNoEvent(Duration.ofSeconds(19))
+                .thenAwait(Duration.ofSeconds(1))
+                .expectNext(StreamHeartbeat.INSTANCE)
+                .expectNoEvent(Duration.ofSeconds(14))
+                .thenAwait(Duration.ofSeconds(1))
+                .expectNext(StreamHeartbeat.INSTANCE)
+                .thenCancel()
+                .verify();
+    }
+
+    private StreamSubscriberPolicy policy(StreamSubscriberPolicy.Overflow overflow, int bufferSize, int maxSubscribers) {
+        return new StreamSubscriberPolicy("reviews", overflow, bufferSize, maxSubscribers, Duration.ZERO, meterRegistry);
+    }
+
+    private void emit(Object... reviewIdsAndMovieInfoIds) {
+        for (int i = 0; i < reviewIdsAndMovieInfoIds.length; i += 2) {
+            reviews.tryEmitNext(new Review((String) reviewIdsAndMovieInfoIds[i], (Long) reviewIdsAndMovieInfoIds[i + 1], "comment", 8.0));
+        }
+    }
+
+    private static java.util.function.Predicate<Object> reviewId(String reviewId) {
+        return event -> reviewId.equals(((Review) event).getReviewId());
+    }
+
+    private double counter(String name) {
+        return meterRegistry.get(name).tag("stream", "reviews").counter().count();
+    }
+}
@@ -0,0 +1,93 @@
+package com.reactivespring.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.MoviesInfoClientException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded near cache for MovieInfo lookups. Found entries live for {@code ttl}, not found (404)
+ * lookups are cached as an empty value for the shorter {@code negativeTtl}.
+ * Only completed lookups are cached; a miss is loaded by the caller's own subscription, so cancelling
+ * the caller cancels the load (concurrent misses are expected to be coalesced by the loader).
+ * A lookup is only stored if nothing was invalidated while it was in flight, so an invalidation is
+ * not overwritten by the value loaded before the change.
+ */
+public class MovieInfoCache {
+
+    private final Cache<String, Optional<MovieInfo>> cache;
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter invalidations;
+
+    public MovieInfoCache(long maximumSize, Duration ttl, Duration negativeTtl, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Optional<MovieInfo>>() {
+                    @Override
+                    public long expireAfterCreate(String key, Optional<MovieInfo> value, long currentTime) {
+                        return (value.isPresent() ? ttl : negativeTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Optional<MovieInfo> value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Optional<MovieInfo> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "moviesinfo");
+        this.invalidations = Counter.builder("movies.client.cache.invalidations")
+                .tag("cache", "moviesinfo")
+                .register(meterRegistry);
+    }
+
+    public Mono<MovieInfo> get(String movieId, Supplier<Mono<MovieInfo>> loader,
+                               Function<String, ? extends Throwable> notFound) {
+        return Mono.defer(() -> {
+                    var cached = cache.getIfPresent(movieId);
+                    if (cached != null) {
+                        return Mono.just(cached);
+                    }
+                    var loadedAt = generation.get();
+                    return loader.get()
+                            .map(Optional::of)
+                            .onErrorResume(this::isNotFound, ex -> Mono.just(Optional.empty()))
+                            .doOnNext(loaded -> cache.asMap().compute(movieId, (key, current) ->
+                                    generation.get() == loadedAt ? loaded : current));
+                })
+                .flatMap(cached -> cached.map(Mono::just)
+                        .orElseGet(() -> Mono.error(notFound.apply(movieId))));
+    }
+
+    public void invalidate(String movieId) {
+        generation.incrementAndGet();
+        cache.invalidate(movieId);
+        invalidations.increment();
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private boolean isNotFound(Throwable ex) {
+        return ex instanceof MoviesInfoClientException
+                && ((MoviesInfoClientException) ex).getStatusCode() == 404;
+    }
+}
@@ -1,28 +1,158 @@
 package com.reactivespring.client;
 
+import com.reactivespring.config.DownstreamRetryProperties;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.util.RetryBudget;
 import com.reactivespring.util.RetryUtil;
+import com.reactivespring.util.SingleFlight;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Component
+@Slf4j
 public class MoviesInfoRestClient {
 
     private WebClient webClient;
+    private MeterRegistry meterRegistry;
+    private SingleFlight<String, MovieInfo> singleFlight;
+    private MovieInfoCache movieInfoCache;
+    private Disposable cacheInvalidation;
+    private Flux<MovieInfoEvent> movieInfoChanges;
+    private RetryBudget retryBudget;
+    private Retry retrySpec;
+    private CircuitBreaker circuitBreaker;
+    private Bulkhead bulkhead;
 
     @Value("${restClient.moviesInfoUrl}")
     private String moviesInfoUrl;
 
-    public MoviesInfoRestClient(WebClient webClient) {
+    @Value("${restClient.moviesInfoCache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${restClient.moviesInfoCache.maximumSize:10000}")
+    private long cacheMaximumSize;
+
+    @Value("${restClient.moviesInfoCache.ttl:5m}")
+    private Duration cacheTtl;
+
+    @Value("${restClient.moviesInfoCache.negativeTtl:10s}")
+    private Duration cacheNegativeTtl;
+
+    @Value("${restClient.moviesInfoCache.streamReconnectDelay:5s}")
+    private Duration streamReconnectDelay;
+
+    public MoviesInfoRestClient(@Qualifier("moviesInfoWebClient") WebClient webClient, MeterRegistry meterRegistry,
+                                @Qualifier("moviesInfoRetryProperties") DownstreamRetryProperties retryProperties,
+                                CircuitBreakerRegistry circuitBreakerRegistry, BulkheadRegistry bulkheadRegistry) {
         this.webClient = webClient;
+        this.meterRegistry = meterRegistry;
+        this.singleFlight = new SingleFlight<>("moviesinfo", meterRegistry);
+        this.retryBudget = new RetryBudget("moviesinfo", retryProperties, meterRegistry);
+        this.retrySpec = RetryUtil.retrySpec(retryProperties, retryBudget);
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("moviesinfo");
+        this.bulkhead = bulkheadRegistry.bulkhead("moviesinfo");
+    }
+
+    @PostConstruct
+    void initCache() {
+        movieInfoChanges = streamMovieInfoChanges()
+                .publish()
+                .refCount();
+        if (!cacheEnabled) {
+            return;
+        }
+        movieInfoCache = new MovieInfoCache(cacheMaximumSize, cacheTtl, cacheNegativeTtl, meterRegistry);
+        cacheInvalidation = movieInfoChanges
+                .subscribe(event -> {
+                    if (event.getType() == MovieInfoEvent.Type.GAP) {
+                        singleFlight.forgetAll();
+                        movieInfoCache.invalidateAll();
+                    } else {
+                        // a changed or deleted MovieInfo
+                        singleFlight.forget(event.getMovieInfo().getMovieInfoId());
+                        movieInfoCache.invalidate(event.getMovieInfo().getMovieInfoId());
+                    }
+                });
+    }
+
+    @PreDestroy
+    void stopCacheInvalidation() {
+        if (cacheInvalidation != null) {
+            cacheInvalidation.dispose();
+        }
     }
 
     public Mono<MovieInfo> retrieveMovieInfo(String movieId){
+        if (movieInfoCache == null) {
+            return singleFlight.execute(movieId, () -> fetchMovieInfo(movieId));
+        }
+        return movieInfoCache.get(movieId,
+                () -> singleFlight.execute(movieId, () -> fetchMovieInfo(movieId)),
+                MoviesInfoRestClient::movieInfoNotFound);
+    }
+
+    /**
+     * MovieInfo changes from the moviesinfo/stream feed. All subscribers, the cache included, share one
+     * upstream subscription, which is closed when the last of them leaves.
+     */
+    public Flux<MovieInfoEvent> movieInfoChanges() {
+        return movieInfoChanges;
+    }
+
+    /**
+     * Follows the moviesinfo/stream feed so cached entries are evicted as soon as a MovieInfo changes or is deleted.
+     * Reconnects resume after the last seen event, identified by epoch and sequence, a GAP event tells that
+     * changes were missed, also when movies-info-service restarted in between.
+     */
+    private Flux<MovieInfoEvent> streamMovieInfoChanges() {
+        var lastEventId = new AtomicReference<String>();
+        return Flux.defer(() -> webClient.get()
+                        .uri(moviesInfoUrl.concat("/stream"))
+                        .headers(headers -> {
+                            if (lastEventId.get() != null) {
+                                headers.set("Last-Event-ID", lastEventId.get());
+                            }
+                        })
+                        .retrieve()
+                        .bodyToFlux(MovieInfoEvent.class))
+                .doOnNext(event -> lastEventId.set(event.getEpoch() + ":" + event.getSequence()))
+                .doOnError(ex -> log.warn("MovieInfo change stream failed, reconnecting : {}", ex.getMessage()))
+                .repeatWhen(completed -> completed.delayElements(streamReconnectDelay))
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, streamReconnectDelay));
+    }
+
+    private static MoviesInfoClientException movieInfoNotFound(String movieId) {
+        return new MoviesInfoClientException(
+                "There is no MovieInfo available for the ID : " + movieId,
+                HttpStatus.NOT_FOUND.value());
+    }
+
+    private Mono<MovieInfo> fetchMovieInfo(String movieId){
 
         var url = moviesInfoUrl.concat("/{id}");
         return webClient.get()
@@ -30,9 +160,7 @@ public class MoviesInfoRestClient {
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
                     if(clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)){
-                        return Mono.error(new MoviesInfoClientException(
-                                "There is no MovieInfo available for the ID : " + movieId,
-                                clientResponse.statusCode().value()));
+                        return Mono.error(movieInfoNotFound(movieId));
                     }
                     return clientResponse.bodyToMono(String.class)
                             .flatMap(responseMsg -> Mono.error(new MoviesInfoClientException(
@@ -45,7 +173,36 @@ public class MoviesInfoRestClient {
                                     "Server exception in MoviesInfoService" + responseMsg)));
                 })
                 .bodyToMono(MovieInfo.class)
-                .retryWhen(RetryUtil.retrySpec())
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .doOnSuccess(movieInfo -> retryBudget.recordSuccess())
+                .retryWhen(retrySpec)
                 .log();
     }
+
+    public Flux<MovieInfo> retrieveMovieInfos(List<String> movieIds){
+
+        var url = UriComponentsBuilder.fromHttpUrl(moviesInfoUrl)
+                .queryParam("ids", String.join(",", movieIds))
+                .buildAndExpand().toUriString();
+        return webClient.get()
+                .uri(url)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMsg -> Mono.error(new MoviesInfoClientException(
+                                    responseMsg,clientResponse.statusCode().value()
+                            )));
+                })
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMsg -> Mono.error(new MoviesInfoServerException(
+                                    "Server exception in MoviesInfoService" + responseMsg)));
+                })
+                .bodyToFlux(MovieInfo.class)
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .doOnComplete(retryBudget::recordSuccess)
+                .retryWhen(retrySpec);
+    }
 }
@@ -1,10 +1,26 @@
 package com.reactivespring.client;
 
+import com.reactivespring.config.DownstreamHedgeProperties;
+import com.reactivespring.config.DownstreamRetryProperties;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewStreamEvent;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.ReviewsClientException;
 import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.util.HedgedRequests;
+import com.reactivespring.util.RetryBudget;
 import com.reactivespring.util.RetryUtil;
+import com.reactivespring.util.SingleFlight;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
@@ -12,22 +28,64 @@ import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
 
 @Component
 public class ReviewsRestClient {
     private WebClient webClient;
+    private SingleFlight<String, List<Review>> singleFlight;
+    private RetryBudget retryBudget;
+    private Retry retrySpec;
+    private HedgedRequests hedgedRequests;
+    private CircuitBreaker circuitBreaker;
+    private Bulkhead bulkhead;
+    private Cache<String, List<Review>> lastKnownReviews;
 
     @Value("${restClient.movieReviewsUrl}")
     private String reviewsUrl;
 
-    public ReviewsRestClient(WebClient webClient) {
+    public ReviewsRestClient(@Qualifier("reviewsWebClient") WebClient webClient, MeterRegistry meterRegistry,
+                             @Qualifier("reviewsRetryProperties") DownstreamRetryProperties retryProperties,
+                             @Qualifier("reviewsHedgeProperties") DownstreamHedgeProperties hedgeProperties,
+                             CircuitBreakerRegistry circuitBreakerRegistry, BulkheadRegistry bulkheadRegistry,
+                             @Value("${restClient.reviewsFallback.lastKnownMaximumSize:10000}") long lastKnownMaximumSize,
+                             @Value("${restClient.reviewsFallback.lastKnownTtl:1h}") Duration lastKnownTtl) {
         this.webClient = webClient;
+        this.singleFlight = new SingleFlight<>("reviews", meterRegistry);
+        this.retryBudget = new RetryBudget("reviews", retryProperties, meterRegistry);
+        this.retrySpec = RetryUtil.retrySpec(retryProperties, retryBudget);
+        this.hedgedRequests = new HedgedRequests("reviews", hedgeProperties, meterRegistry);
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("reviews");
+        this.bulkhead = bulkheadRegistry.bulkhead("reviews");
+        this.lastKnownReviews = Caffeine.newBuilder()
+                .maximumSize(lastKnownMaximumSize)
+                .expireAfterWrite(lastKnownTtl)
+                .build();
     }
 
     public Flux<Review> retrieveReviews(String movieId){
-        var url= UriComponentsBuilder.fromHttpUrl(reviewsUrl)
-                .queryParam("movieInfoId", movieId)
-                .buildAndExpand().toUriString();
+        // coalesced on the collected list so a caller joining late still sees every review,
+        // a slow lookup is hedged with a second GET
+        return singleFlight.execute(movieId, () -> hedgedRequests.execute(() -> fetchReviews(movieId).collectList())
+                        .doOnNext(reviews -> lastKnownReviews.put(movieId, reviews)))
+                .flatMapIterable(Function.identity());
+    }
+
+    /**
+     * Reviews of the last successful lookup for the movie, empty when there was none recently.
+     */
+    public List<Review> lastKnownReviews(String movieId){
+        var reviews = lastKnownReviews.getIfPresent(movieId);
+        return reviews != null ? reviews : List.of();
+    }
+
+    private Flux<Review> fetchReviews(String movieId){
+        var url = reviewsByMovieUrl(reviewsUrl, movieId);
         return webClient
                 .get()
                 .uri(url)
@@ -47,6 +105,75 @@ public class ReviewsRestClient {
                                     "Server exception in ReviewsService" + responseMsg)));
                 })
                 .bodyToFlux(Review.class)
-                .retryWhen(RetryUtil.retrySpec());
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .doOnComplete(retryBudget::recordSuccess)
+                .retryWhen(retrySpec);
+    }
+
+    /**
+     * Reviews added to any movie while the connection lasts, the caller decides about reconnecting.
+     */
+    public Flux<ReviewStreamEvent> streamReviews(){
+        return streamReviews(UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .path("/stream")
+                .buildAndExpand().toUriString());
+    }
+
+    /**
+     * Reviews added to the given movies while the connection lasts, the caller decides about reconnecting.
+     */
+    public Flux<ReviewStreamEvent> streamReviews(Collection<String> movieIds){
+        return streamReviews(UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .path("/stream")
+                .queryParam("movieInfoIds", String.join(",", movieIds))
+                .buildAndExpand().toUriString());
+    }
+
+    private Flux<ReviewStreamEvent> streamReviews(String url){
+        return webClient
+                .get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(ReviewStreamEvent.class);
+    }
+
+    public Flux<Review> retrieveReviews(List<String> movieIds){
+        var url = reviewsByMoviesUrl(reviewsUrl, movieIds);
+        return webClient
+                .get()
+                .uri(url)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
+                    if(clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)){
+                        return Mono.empty();
+                    }
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMsg -> Mono.error(new ReviewsClientException(
+                                    responseMsg
+                            )));
+                })
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMsg -> Mono.error(new ReviewsServerException(
+                                    "Server exception in ReviewsService" + responseMsg)));
+                })
+                .bodyToFlux(Review.class)
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .doOnComplete(retryBudget::recordSuccess)
+                .retryWhen(retrySpec);
+    }
+
+    static String reviewsByMovieUrl(String reviewsUrl, String movieId){
+        return UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .queryParam("movieInfoId", movieId)
+                .buildAndExpand().toUriString();
+    }
+
+    static String reviewsByMoviesUrl(String reviewsUrl, List<String> movieIds){
+        return UriComponentsBuilder.fromHttpUrl(reviewsUrl)
+                .queryParam("movieInfoIds", String.join(",", movieIds))
+                .buildAndExpand().toUriString();
     }
 }
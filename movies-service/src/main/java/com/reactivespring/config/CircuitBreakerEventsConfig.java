@@ -0,0 +1,44 @@
+package com.reactivespring.config;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Circuit breaker state transitions are logged, counted in movies.client.circuitbreaker.transitions and
+ * published as CircuitBreakerOnStateTransitionEvent application events.
+ * The current state is the resilience4j.circuitbreaker.state gauge, recent events are served by the
+ * circuitbreakerevents actuator endpoint.
+ */
+@Configuration
+@Slf4j
+public class CircuitBreakerEventsConfig {
+
+    private final MeterRegistry meterRegistry;
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    public CircuitBreakerEventsConfig(CircuitBreakerRegistry circuitBreakerRegistry, MeterRegistry meterRegistry,
+                                      ApplicationEventPublisher applicationEventPublisher) {
+        this.meterRegistry = meterRegistry;
+        this.applicationEventPublisher = applicationEventPublisher;
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(this::publishTransitions);
+        circuitBreakerRegistry.getEventPublisher()
+                .onEntryAdded(event -> publishTransitions(event.getAddedEntry()));
+    }
+
+    private void publishTransitions(CircuitBreaker circuitBreaker) {
+        circuitBreaker.getEventPublisher().onStateTransition(event -> {
+            var transition = event.getStateTransition();
+            log.warn("Circuit breaker {} changed from {} to {}", event.getCircuitBreakerName(),
+                    transition.getFromState(), transition.getToState());
+            meterRegistry.counter("movies.client.circuitbreaker.transitions",
+                    "client", event.getCircuitBreakerName(),
+                    "from", transition.getFromState().name(),
+                    "to", transition.getToState().name()).increment();
+            applicationEventPublisher.publishEvent(event);
+        });
+    }
+}
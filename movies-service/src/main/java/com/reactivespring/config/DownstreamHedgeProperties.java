@@ -0,0 +1,23 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Request hedging settings of one downstream service, bound from {@code restClient.hedge.<downstream>}.
+ */
+@Data
+public class DownstreamHedgeProperties {
+
+    private boolean enabled = false;
+    /** latency percentile after which a second request is sent */
+    private double percentile = 0.95;
+    /** hedge delay bounds, also the delay used until latencies have been recorded */
+    private Duration minDelay = Duration.ofMillis(10);
+    private Duration maxDelay = Duration.ofSeconds(1);
+    /** hedges allowed as a percentage of the requests */
+    private double budgetPercent = 10;
+    /** hedges that may be saved up while requests are fast */
+    private int budgetMaxBurst = 10;
+}
@@ -0,0 +1,22 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Connection pool settings of one downstream service, bound from {@code restClient.pools.<downstream>}.
+ */
+@Data
+public class DownstreamPoolProperties {
+
+    private int maxConnections = 200;
+    /** requests allowed to wait for a connection, -1 for no limit */
+    private int pendingAcquireMaxCount = 1000;
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+    private Duration maxIdleTime = Duration.ofSeconds(30);
+    private Duration maxLifeTime = Duration.ofMinutes(10);
+    private Duration evictInBackground = Duration.ofSeconds(30);
+    /** HTTP/2 over cleartext with prior knowledge, the downstream needs server.http2.enabled */
+    private boolean h2c = false;
+}
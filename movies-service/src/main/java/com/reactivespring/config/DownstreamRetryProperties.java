@@ -0,0 +1,23 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Retry settings of one downstream service, bound from {@code restClient.retry.<downstream>}.
+ */
+@Data
+public class DownstreamRetryProperties {
+
+    private int maxAttempts = 3;
+    private Duration minBackoff = Duration.ofMillis(100);
+    private Duration maxBackoff = Duration.ofSeconds(2);
+    /** share of each backoff that is randomized, between 0 and 1 */
+    private double jitter = 0.5;
+    /** retries allowed as a percentage of the successful requests within the budget window */
+    private double budgetPercent = 20;
+    /** retries allowed per second of the budget window regardless of successes */
+    private int budgetMinRetriesPerSecond = 10;
+    private Duration budgetWindow = Duration.ofSeconds(10);
+}
@@ -0,0 +1,74 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.util.ServerTiming;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.codec.Hints;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+
+/**
+ * Times JSON encoding of response bodies as the encode phase of the Server-Timing header. A single value
+ * is encoded before the response is committed, so its encoding is part of the header it is answered with.
+ */
+@Configuration
+public class ServerTimingConfig {
+
+    /**
+     * Ordered after the customizer of Spring Boot that installs its own encoder with the same ObjectMapper.
+     */
+    @Bean
+    @Order(1)
+    public CodecCustomizer serverTimingCodecCustomizer(ObjectMapper objectMapper,
+                                                       @Value("${serverTiming.enabled:false}") boolean enabled) {
+        return configurer -> {
+            if (enabled) {
+                configurer.defaultCodecs().jackson2JsonEncoder(new TimedJackson2JsonEncoder(objectMapper));
+            }
+        };
+    }
+
+    static class TimedJackson2JsonEncoder extends Jackson2JsonEncoder {
+
+        private static final String TIMING_HINT = ServerTiming.class.getName();
+
+        TimedJackson2JsonEncoder(ObjectMapper objectMapper) {
+            super(objectMapper);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                       ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+            return Flux.deferContextual(context -> super.encode(inputStream, bufferFactory, elementType, mimeType,
+                    ServerTiming.current(context)
+                            .map(timing -> Hints.merge(hints, TIMING_HINT, timing))
+                            .orElse(hints)));
+        }
+
+        @Override
+        public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory, ResolvableType valueType,
+                                      MimeType mimeType, Map<String, Object> hints) {
+            var timing = hints == null ? null : (ServerTiming) hints.get(TIMING_HINT);
+            if (timing == null) {
+                return super.encodeValue(value, bufferFactory, valueType, mimeType, hints);
+            }
+            var start = System.nanoTime();
+            try {
+                return super.encodeValue(value, bufferFactory, valueType, mimeType, hints);
+            } finally {
+                timing.record(ServerTiming.Phase.ENCODE, System.nanoTime() - start);
+            }
+        }
+    }
+}
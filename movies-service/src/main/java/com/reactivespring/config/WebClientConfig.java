@@ -1,14 +1,180 @@
 package com.reactivespring.config;
 
+import com.reactivespring.util.Deadline;
+import com.reactivespring.util.ServerTiming;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.metrics.web.reactive.client.WebClientExchangeTags;
+import org.springframework.boot.actuate.metrics.web.reactive.client.WebClientExchangeTagsProvider;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One WebClient per downstream service, each with its own connection pool so a burst against one
+ * service cannot use up the connections of the other.
+ * Pools publish the reactor.netty.connection.provider.* gauges (total, active, idle and pending
+ * connections) and movies.client.pool.acquire times how long a request waits for its connection.
+ * Requests are timed in http.client.requests with a client tag naming the downstream service.
+ * Both forward the deadline of the request being served as the X-Request-Timeout-Ms header and, with
+ * serverTiming.enabled, merge the Server-Timing entries of the responses into the one of that request.
+ * Retry and hedging settings are bound per downstream as well, the clients keep one budget each.
+ */
 @Configuration
 public class WebClientConfig {
 
+    static final String MOVIES_INFO = "moviesinfo";
+    static final String REVIEWS = "reviews";
+    static final String CLIENT_ATTRIBUTE = WebClientConfig.class.getName() + ".client";
+
+    private final Binder binder;
+    private final boolean serverTimingEnabled;
+
+    public WebClientConfig(Environment environment) {
+        this.binder = Binder.get(environment);
+        this.serverTimingEnabled = binder.bind("servertiming.enabled", Boolean.class).orElse(false);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider moviesInfoConnectionProvider() {
+        return connectionProvider(MOVIES_INFO);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider reviewsConnectionProvider() {
+        return connectionProvider(REVIEWS);
+    }
+
+    @Bean
+    public WebClient moviesInfoWebClient(WebClient.Builder builder, MeterRegistry meterRegistry,
+                                         @Qualifier("moviesInfoConnectionProvider") ConnectionProvider connectionProvider) {
+        return webClient(MOVIES_INFO, builder, meterRegistry, connectionProvider);
+    }
+
+    @Bean
+    public WebClient reviewsWebClient(WebClient.Builder builder, MeterRegistry meterRegistry,
+                                      @Qualifier("reviewsConnectionProvider") ConnectionProvider connectionProvider) {
+        return webClient(REVIEWS, builder, meterRegistry, connectionProvider);
+    }
+
+    @Bean
+    public DownstreamRetryProperties moviesInfoRetryProperties() {
+        return retryProperties(MOVIES_INFO);
+    }
+
+    @Bean
+    public DownstreamRetryProperties reviewsRetryProperties() {
+        return retryProperties(REVIEWS);
+    }
+
+    @Bean
+    public DownstreamHedgeProperties reviewsHedgeProperties() {
+        return binder.bind("restclient.hedge." + REVIEWS, DownstreamHedgeProperties.class)
+                .orElseGet(DownstreamHedgeProperties::new);
+    }
+
+    /**
+     * The default tags plus the downstream service. The query string is cut off the uri tag, the rest
+     * clients pass ids in it.
+     */
     @Bean
-    public WebClient webClient(WebClient.Builder builder){
+    public WebClientExchangeTagsProvider webClientExchangeTagsProvider() {
+        return (request, response, throwable) -> {
+            var uri = WebClientExchangeTags.uri(request).getValue();
+            var query = uri.indexOf('?');
+            return Tags.of(WebClientExchangeTags.method(request),
+                    Tag.of("uri", query < 0 ? uri : uri.substring(0, query)),
+                    WebClientExchangeTags.clientName(request),
+                    WebClientExchangeTags.status(response, throwable),
+                    WebClientExchangeTags.outcome(response),
+                    Tag.of("client", request.attribute(CLIENT_ATTRIBUTE).map(String::valueOf).orElse("none")));
+        };
+    }
+
+    private ConnectionProvider connectionProvider(String downstream) {
+        var pool = poolProperties(downstream);
+        return ConnectionProvider.builder(downstream)
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getEvictInBackground())
+                .metrics(true)
+                .build();
+    }
+
+    private WebClient webClient(String downstream, WebClient.Builder builder, MeterRegistry meterRegistry,
+                                ConnectionProvider connectionProvider) {
+        var acquireTimer = Timer.builder("movies.client.pool.acquire")
+                .tag("client", downstream)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        // with h2c reactor-netty multiplexes requests over its own HTTP/2 pool, sized like this one
+        var httpClient = HttpClient.create(connectionProvider)
+                .protocol(poolProperties(downstream).isH2c() ? HttpProtocol.H2C : HttpProtocol.HTTP11)
+                .mapConnect(connect -> timeAcquire(connect, acquireTimer));
+        builder.clientConnector(new ReactorClientHttpConnector(httpClient))
+                .defaultRequest(request -> request.attribute(CLIENT_ATTRIBUTE, downstream))
+                .filter(propagateDeadline());
+        if (serverTimingEnabled) {
+            builder.filter(mergeServerTiming(downstream));
+        }
         return builder.build();
     }
+
+    private static ExchangeFilterFunction propagateDeadline() {
+        return (request, next) -> Mono.deferContextual(context -> Deadline.current(context)
+                .map(deadline -> {
+                    // a retry or hedge that starts after the deadline is not sent at all
+                    if (deadline.isExpired()) {
+                        return Mono.<ClientResponse>error(Deadline.exceeded());
+                    }
+                    return next.exchange(ClientRequest.from(request)
+                            .header(Deadline.TIMEOUT_HEADER, String.valueOf(deadline.remaining().toMillis()))
+                            .build());
+                })
+                .orElseGet(() -> next.exchange(request)));
+    }
+
+    private static ExchangeFilterFunction mergeServerTiming(String downstream) {
+        return (request, next) -> Mono.deferContextual(context -> ServerTiming.current(context)
+                .map(timing -> next.exchange(request)
+                        .doOnNext(response -> response.headers().header(ServerTiming.HEADER)
+                                .forEach(value -> timing.addDownstream(downstream, value))))
+                .orElseGet(() -> next.exchange(request)));
+    }
+
+    private static Mono<? extends Connection> timeAcquire(Mono<? extends Connection> connect, Timer acquireTimer) {
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            return connect.doOnNext(connection -> acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private DownstreamPoolProperties poolProperties(String downstream) {
+        return binder.bind("restclient.pools." + downstream, DownstreamPoolProperties.class)
+                .orElseGet(DownstreamPoolProperties::new);
+    }
+
+    private DownstreamRetryProperties retryProperties(String downstream) {
+        return binder.bind("restclient.retry." + downstream, DownstreamRetryProperties.class)
+                .orElseGet(DownstreamRetryProperties::new);
+    }
 }
@@ -3,32 +3,134 @@ package com.reactivespring.controller;
 import com.reactivespring.client.MoviesInfoRestClient;
 import com.reactivespring.client.ReviewsRestClient;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieBatchResult;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.Review;
+import com.reactivespring.stream.MovieUpdateStreams;
+import com.reactivespring.util.ServerTiming;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
 @RestController
 @RequestMapping("/v1/movies")
 public class MovieController {
 
     private MoviesInfoRestClient moviesInfoRestClient;
     private ReviewsRestClient reviewsRestClient;
+    private MovieUpdateStreams movieUpdateStreams;
+
+    @Value("${restClient.reviewsFallback.enabled:true}")
+    private boolean reviewsFallbackEnabled;
+
+    @Value("${serverTiming.enabled:false}")
+    private boolean serverTimingEnabled;
+
+    @Value("${movieBatch.maxIds:200}")
+    private int maxBatchIds;
 
-    public MovieController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient) {
+    public MovieController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient,
+                           MovieUpdateStreams movieUpdateStreams) {
         this.moviesInfoRestClient = moviesInfoRestClient;
         this.reviewsRestClient = reviewsRestClient;
+        this.movieUpdateStreams = movieUpdateStreams;
     }
 
     @GetMapping("/{id}")
     public Mono<Movie> retrieveMovieById(@PathVariable("id") String movieId){
-        return moviesInfoRestClient.retrieveMovieInfo(movieId)
-                .flatMap(movieInfo -> {
-                    var reviewsListMono = reviewsRestClient.retrieveReviews(movieId)
-                            .collectList();
+        // both downstream calls are subscribed at once; if the info lookup fails (e.g. 404)
+        // zip cancels the in-flight reviews call and propagates the error
+        var movieInfoMono = ServerTiming.timed(serverTimingEnabled, ServerTiming.Phase.MOVIESINFO,
+                moviesInfoRestClient.retrieveMovieInfo(movieId));
+        var reviewsListMono = ServerTiming.timed(serverTimingEnabled, ServerTiming.Phase.REVIEWS,
+                reviewsRestClient.retrieveReviews(movieId).collectList());
+        if (!reviewsFallbackEnabled) {
+            return Mono.zip(movieInfoMono, reviewsListMono, Movie::new);
+        }
 
-                    return reviewsListMono.map(reviews -> new Movie(movieInfo, reviews));
+        // an open breaker or full bulkhead on the reviews side still answers, with the last known reviews
+        var optionalReviewsMono = reviewsListMono
+                .map(Optional::of)
+                .onErrorResume(MovieController::isUnavailable, ex -> Mono.just(Optional.empty()));
+        return Mono.zip(movieInfoMono, optionalReviewsMono,
+                (movieInfo, reviewList) -> reviewList
+                        .map(reviews -> new Movie(movieInfo, reviews))
+                        .orElseGet(() -> new Movie(movieInfo, reviewsRestClient.lastKnownReviews(movieId), true)));
+    }
+
+    private static boolean isUnavailable(Throwable ex) {
+        return ex instanceof CallNotPermittedException || ex instanceof BulkheadFullException;
+    }
+
+    @GetMapping(value = "/{id}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Movie> streamMovieById(@PathVariable("id") String movieId){
+        return movieUpdateStreams.watch(movieId);
+    }
+
+    /**
+     * Answers one {@link MovieBatchResult} per requested id, in order. Ids that cannot be a movie id, which
+     * is numeric, are not found without asking the downstream services; more than movieBatch.maxIds ids
+     * are answered with 400.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieBatchResult> retrieveMoviesByIds(@RequestParam("ids") List<String> movieIds){
+        if (movieIds.size() > maxBatchIds) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "ids : at most " + maxBatchIds + " ids per request");
+        }
+        // one bulk call per downstream service, results are matched back to the requested ids in order
+        var validIds = movieIds.stream()
+                .filter(MovieController::isMovieId)
+                .distinct()
+                .collect(Collectors.toList());
+        if (validIds.isEmpty()) {
+            return Flux.fromIterable(movieIds).map(MovieBatchResult::notFound);
+        }
+        var movieInfosMono = moviesInfoRestClient.retrieveMovieInfos(validIds)
+                .collectMap(MovieInfo::getMovieInfoId);
+        var reviewsMono = reviewsRestClient.retrieveReviews(validIds)
+                .collectMultimap(review -> String.valueOf(review.getMovieInfoId()));
+
+        return Mono.zip(movieInfosMono, reviewsMono)
+                .flatMapMany(tuple -> {
+                    var movieInfos = tuple.getT1();
+                    var reviews = tuple.getT2();
+                    return Flux.fromIterable(movieIds)
+                            .map(movieId -> {
+                                var movieInfo = isMovieId(movieId) ? movieInfos.get(movieId) : null;
+                                if (movieInfo == null) {
+                                    return MovieBatchResult.notFound(movieId);
+                                }
+                                var reviewList = new ArrayList<Review>(reviews.getOrDefault(movieId, List.of()));
+                                return MovieBatchResult.found(movieId, new Movie(movieInfo, reviewList));
+                            });
                 });
     }
+
+    /**
+     * Reviews are keyed by a numeric movieInfoId, the reviews service rejects a batch with any other id.
+     */
+    private static boolean isMovieId(String movieId) {
+        try {
+            Long.parseLong(movieId);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
 }
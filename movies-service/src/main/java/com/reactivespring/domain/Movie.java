@@ -1,6 +1,6 @@
 package com.reactivespring.domain;
 
-
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -14,4 +14,11 @@ public class Movie {
 
     private MovieInfo movieInfo;
     private List<Review> reviewList;
+    /** the reviews service was unavailable, reviewList is empty or the last one known */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private boolean partial;
+
+    public Movie(MovieInfo movieInfo, List<Review> reviewList) {
+        this(movieInfo, reviewList, false);
+    }
 }
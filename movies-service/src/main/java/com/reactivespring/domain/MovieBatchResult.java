@@ -0,0 +1,23 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieBatchResult {
+
+    private String movieId;
+    private boolean found;
+    private Movie movie;
+
+    public static MovieBatchResult found(String movieId, Movie movie) {
+        return new MovieBatchResult(movieId, true, movie);
+    }
+
+    public static MovieBatchResult notFound(String movieId) {
+        return new MovieBatchResult(movieId, false, null);
+    }
+}
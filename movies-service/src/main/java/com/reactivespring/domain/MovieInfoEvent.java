@@ -0,0 +1,24 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of movies-info-service's moviesinfo/stream feed. A {@code DELETE} event carries only the
+ * movieInfoId of the deleted MovieInfo. A {@code GAP} event means the events up to
+ * and including {@code sequence} were missed. Sequences start over when movies-info-service restarts,
+ * {@code epoch} tells these histories apart.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoEvent {
+
+    public enum Type { MOVIE_INFO, DELETE, GAP }
+
+    private String epoch;
+    private long sequence;
+    private Type type;
+    private MovieInfo movieInfo;
+}
@@ -0,0 +1,20 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of movies-review-service's reviews/stream feed: an added Review, or with {@code gap} set a
+ * marker that reviews were dropped because this subscriber fell behind.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewStreamEvent {
+
+    @JsonUnwrapped
+    private Review review;
+    private boolean gap;
+}
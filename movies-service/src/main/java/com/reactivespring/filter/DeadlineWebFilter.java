@@ -0,0 +1,60 @@
+package com.reactivespring.filter;
+
+import com.reactivespring.util.Deadline;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Bounds a request by the X-Request-Timeout-Ms header, or by deadline.defaultTimeout when it has none.
+ * Once the deadline passes the exchange is cancelled together with the downstream calls it waits on,
+ * and a 504 is answered if nothing has been sent yet. The rest clients forward the time that is left.
+ */
+@Component
+public class DeadlineWebFilter implements WebFilter {
+
+    private final Duration defaultTimeout;
+    private final Duration maxTimeout;
+
+    public DeadlineWebFilter(@Value("${deadline.defaultTimeout:0s}") Duration defaultTimeout,
+                             @Value("${deadline.maxTimeout:60s}") Duration maxTimeout) {
+        this.defaultTimeout = defaultTimeout;
+        this.maxTimeout = maxTimeout;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var header = exchange.getRequest().getHeaders().getFirst(Deadline.TIMEOUT_HEADER);
+        Duration timeout;
+        if (header != null) {
+            try {
+                timeout = Duration.ofMillis(Long.parseLong(header.trim()));
+            } catch (NumberFormatException e) {
+                return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        Deadline.TIMEOUT_HEADER + " must be a number of milliseconds : " + header));
+            }
+            if (timeout.compareTo(maxTimeout) > 0) {
+                timeout = maxTimeout;
+            }
+        } else if (!defaultTimeout.isZero()) {
+            timeout = defaultTimeout;
+        } else {
+            return chain.filter(exchange);
+        }
+        if (timeout.isNegative() || timeout.isZero()) {
+            return Mono.error(Deadline.exceeded());
+        }
+
+        var deadline = Deadline.after(timeout);
+        return chain.filter(exchange)
+                .timeout(timeout, Mono.error(Deadline::exceeded))
+                .contextWrite(context -> context.put(Deadline.class, deadline));
+    }
+}
@@ -0,0 +1,42 @@
+package com.reactivespring.filter;
+
+import com.reactivespring.util.ServerTiming;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Answers the Server-Timing header when serverTiming.enabled is set. It is written as the response is
+ * committed, phases still running by then, like the rest of a streamed body, are left out.
+ * Runs first so the total includes the other filters.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServerTimingWebFilter implements WebFilter {
+
+    private final boolean enabled;
+
+    public ServerTimingWebFilter(@Value("${serverTiming.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!enabled) {
+            return chain.filter(exchange);
+        }
+        var timing = new ServerTiming();
+        var response = exchange.getResponse();
+        response.beforeCommit(() -> {
+            response.getHeaders().add(ServerTiming.HEADER, timing.toHeaderValue());
+            return Mono.empty();
+        });
+        return chain.filter(exchange)
+                .contextWrite(context -> context.put(ServerTiming.class, timing));
+    }
+}
@@ -0,0 +1,207 @@
+package com.reactivespring.stream;
+
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.client.ReviewsRestClient;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.Review;
+import com.reactivespring.util.Deadline;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the current Movie of every watched movie up to date from the moviesinfo and reviews streams.
+ * Clients watching the same movie share one Movie stream, which is cancelled when the last of them
+ * leaves. Every watched movie shares one subscription to each upstream stream, so the number of
+ * watched movies does not take connections from the reviews pool: the reviews connection asks for the
+ * reviews of the watched movies only, up to maxFilteredMovies of them and for every movie beyond, and
+ * hands each review to its movie with one lookup.
+ * The reviews connection is replaced when a movie starts being watched; the previous one is kept for
+ * resubscribeOverlap so no review is missed while the new one connects, a review received on both is
+ * applied once. Movies no longer watched are left in the connection until it is next replaced.
+ */
+@Component
+@Slf4j
+public class MovieUpdateStreams {
+
+    private final MoviesInfoRestClient moviesInfoRestClient;
+    private final ReviewsRestClient reviewsRestClient;
+    private final ConcurrentMap<String, Flux<Movie>> watched = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Sinks.Many<MovieUpdate>> reviewUpdates = new ConcurrentHashMap<>();
+    private final Duration reconnectDelay;
+    private final Duration resubscribeOverlap;
+    private final int maxFilteredMovies;
+    // guarded by this
+    private Disposable reviewsSubscription;
+
+    public MovieUpdateStreams(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient,
+                              MeterRegistry meterRegistry,
+                              @Value("${restClient.movieStream.reconnectDelay:5s}") Duration reconnectDelay,
+                              @Value("${restClient.movieStream.resubscribeOverlap:2s}") Duration resubscribeOverlap,
+                              @Value("${restClient.movieStream.maxFilteredMovies:200}") int maxFilteredMovies) {
+        this.moviesInfoRestClient = moviesInfoRestClient;
+        this.reviewsRestClient = reviewsRestClient;
+        this.reconnectDelay = reconnectDelay;
+        this.resubscribeOverlap = resubscribeOverlap;
+        this.maxFilteredMovies = maxFilteredMovies;
+        meterRegistry.gaugeMapSize("movies.stream.watched", Tags.empty(), watched);
+    }
+
+    /**
+     * Streams the current Movie, then the Movie again whenever it changed.
+     */
+    public Flux<Movie> watch(String movieId) {
+        return Flux.defer(() -> watched.computeIfAbsent(movieId, this::share));
+    }
+
+    private Flux<Movie> share(String movieId) {
+        var shared = new AtomicReference<Flux<Movie>>();
+        // shared by every watcher, so not bound to the deadline of the request that started it
+        shared.set(movieUpdates(movieId)
+                .contextWrite(Deadline::remove)
+                .doFinally(signalType -> watched.remove(movieId, shared.get()))
+                .replay(1)
+                .refCount());
+        return shared.get();
+    }
+
+    /**
+     * Replaces the reviews connection by one for the movies watched now, or closes it when none is.
+     */
+    private synchronized void followReviews() {
+        var previous = reviewsSubscription;
+        reviewsSubscription = reviewUpdates.isEmpty() ? null
+                : streamReviewUpdates(new TreeSet<>(reviewUpdates.keySet())).subscribe(this::dispatch);
+        if (previous != null && reviewsSubscription != null) {
+            Mono.delay(resubscribeOverlap).subscribe(tick -> previous.dispose());
+        } else if (previous != null) {
+            previous.dispose();
+        }
+    }
+
+    /**
+     * Synchronized since the replaced connection still dispatches until it is closed.
+     */
+    private synchronized void dispatch(MovieUpdate update) {
+        if (update.review == null) {
+            reviewUpdates.values().forEach(updates -> updates.tryEmitNext(update));
+            return;
+        }
+        var updates = reviewUpdates.get(String.valueOf(update.review.getMovieInfoId()));
+        if (updates != null) {
+            updates.tryEmitNext(update);
+        }
+    }
+
+    /**
+     * Added reviews of the given movies, and a RELOAD whenever the reviews stream reconnects or signals
+     * a gap since reviews added while it was not connected, or dropped, are missed.
+     */
+    private Flux<MovieUpdate> streamReviewUpdates(Set<String> movieIds) {
+        return Flux.defer(() -> (movieIds.size() > maxFilteredMovies
+                                ? reviewsRestClient.streamReviews()
+                                : reviewsRestClient.streamReviews(movieIds))
+                        .map(event -> event.isGap() ? MovieUpdate.RELOAD : MovieUpdate.reviewAdded(event.getReview()))
+                        .startWith(MovieUpdate.RELOAD))
+                .doOnError(ex -> log.warn("Reviews stream failed, reconnecting : {}", ex.getMessage()))
+                .repeatWhen(completed -> completed.delayElements(reconnectDelay))
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, reconnectDelay))
+                // the first connect is no reconnect, every watcher loads its movie when it starts and
+                // the connection it replaces is kept until this one is connected
+                .skip(1);
+    }
+
+    /**
+     * Loading the Movie at the start, a MovieInfo change, a GAP or a reconnect of the reviews stream
+     * reloads the whole Movie, so changes missed while not connected are picked up; added reviews are
+     * applied in memory.
+     */
+    private Flux<Movie> movieUpdates(String movieId) {
+        var reloads = moviesInfoRestClient.movieInfoChanges()
+                .filter(event -> event.getType() == MovieInfoEvent.Type.GAP
+                        || movieId.equals(event.getMovieInfo().getMovieInfoId()))
+                .map(event -> MovieUpdate.RELOAD);
+        var addedReviews = Flux.defer(() -> {
+                    Sinks.Many<MovieUpdate> updates = Sinks.many().unicast().onBackpressureBuffer();
+                    reviewUpdates.put(movieId, updates);
+                    followReviews();
+                    return updates.asFlux()
+                            .doFinally(signalType -> {
+                                reviewUpdates.remove(movieId, updates);
+                                if (reviewUpdates.isEmpty()) {
+                                    followReviews();
+                                }
+                            });
+                })
+                .startWith(MovieUpdate.RELOAD);
+
+        var current = new AtomicReference<Movie>();
+        return Flux.merge(addedReviews, reloads)
+                .concatMap(update -> apply(movieId, current, update))
+                .distinctUntilChanged();
+    }
+
+    private Mono<Movie> apply(String movieId, AtomicReference<Movie> current, MovieUpdate update) {
+        if (update.review == null) {
+            // a failed reload keeps the current Movie rather than ending the stream of every watcher,
+            // only a failed first load is passed on
+            return Mono.zip(moviesInfoRestClient.retrieveMovieInfo(movieId),
+                            reviewsRestClient.retrieveReviews(movieId).collectList(),
+                            Movie::new)
+                    .doOnNext(current::set)
+                    .onErrorResume(ex -> current.get() != null, ex -> {
+                        log.warn("Reloading movie {} failed, keeping the current one : {}", movieId, ex.getMessage());
+                        return Mono.empty();
+                    });
+        }
+        var movie = current.get();
+        if (movie == null) {
+            // the pending reload will contain it
+            return Mono.empty();
+        }
+        var reviews = new ArrayList<>(movie.getReviewList());
+        var known = reviews.stream()
+                .filter(review -> Objects.equals(review.getReviewId(), update.review.getReviewId()))
+                .findFirst();
+        if (known.isPresent() && known.get().equals(update.review)) {
+            // received on both connections while one replaces the other
+            return Mono.empty();
+        }
+        reviews.removeIf(review -> Objects.equals(review.getReviewId(), update.review.getReviewId()));
+        reviews.add(update.review);
+        var updated = new Movie(movie.getMovieInfo(), reviews);
+        current.set(updated);
+        return Mono.just(updated);
+    }
+
+    private static class MovieUpdate {
+        static final MovieUpdate RELOAD = new MovieUpdate(null);
+
+        final Review review;
+
+        private MovieUpdate(Review review) {
+            this.review = review;
+        }
+
+        static MovieUpdate reviewAdded(Review review) {
+            return new MovieUpdate(review);
+        }
+    }
+}
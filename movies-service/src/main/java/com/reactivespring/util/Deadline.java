@@ -0,0 +1,52 @@
+package com.reactivespring.util;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Point in time after which the caller no longer waits for the answer. Between services it travels as
+ * the X-Request-Timeout-Ms header holding the milliseconds left, so clocks of different hosts do not
+ * need to agree; within movies-service it travels in the Reactor context of the request.
+ */
+public final class Deadline {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    public static Optional<Deadline> current(ContextView context) {
+        return context.getOrEmpty(Deadline.class);
+    }
+
+    /**
+     * For work that outlives the request that started it, such as a stream shared between clients.
+     */
+    public static Context remove(Context context) {
+        return context.delete(Deadline.class);
+    }
+
+    public static ResponseStatusException exceeded() {
+        return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Deadline exceeded");
+    }
+}
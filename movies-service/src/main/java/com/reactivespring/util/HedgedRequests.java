@@ -0,0 +1,107 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.DownstreamHedgeProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Sends a second copy of a slow request: when the first has not answered after the configured
+ * latency percentile, the same request is sent again and whichever answers first wins, the other one
+ * is cancelled. Only for idempotent requests.
+ * Every request adds a share of a hedge to the budget and every hedge takes a whole one, so hedges stay
+ * below budgetPercent of the requests however slow the downstream service gets.
+ * movies.client.hedges counts sent, won and budget rejected hedges, the hedge rate is sent over the
+ * count of movies.client.hedge.latency.
+ */
+public class HedgedRequests {
+
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final DownstreamHedgeProperties properties;
+    private final Timer latency;
+    private final Counter sent;
+    private final Counter won;
+    private final Counter rejected;
+
+    private final double tokensPerRequest;
+    private double tokens;
+
+    private volatile long delayNanos;
+    private volatile long delayRefreshedAt;
+
+    public HedgedRequests(String client, DownstreamHedgeProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.tokensPerRequest = properties.getBudgetPercent() / 100;
+        this.latency = Timer.builder("movies.client.hedge.latency")
+                .tag("client", client)
+                .publishPercentiles(properties.getPercentile())
+                .distributionStatisticExpiry(Duration.ofMinutes(1))
+                .register(meterRegistry);
+        this.sent = hedges(client, "sent", meterRegistry);
+        this.won = hedges(client, "won", meterRegistry);
+        this.rejected = hedges(client, "budget_exhausted", meterRegistry);
+        this.delayNanos = properties.getMinDelay().toNanos();
+        this.delayRefreshedAt = System.nanoTime();
+    }
+
+    private static Counter hedges(String client, String result, MeterRegistry meterRegistry) {
+        return Counter.builder("movies.client.hedges")
+                .tag("client", client)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> execute(Supplier<Mono<T>> request) {
+        if (!properties.isEnabled()) {
+            return request.get();
+        }
+        return Mono.defer(() -> {
+            deposit();
+            var start = System.nanoTime();
+            var hedge = Mono.delay(Duration.ofNanos(hedgeDelay(start)))
+                    .flatMap(tick -> {
+                        if (!tryHedge()) {
+                            rejected.increment();
+                            return Mono.<T>never();
+                        }
+                        sent.increment();
+                        return request.get()
+                                .doOnSuccess(value -> won.increment());
+                    });
+            return Mono.firstWithSignal(request.get(), hedge)
+                    .doOnSuccess(value -> latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private synchronized void deposit() {
+        tokens = Math.min(properties.getBudgetMaxBurst(), tokens + tokensPerRequest);
+    }
+
+    private synchronized boolean tryHedge() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * The percentile is read from the latency histogram at most once a second.
+     */
+    private long hedgeDelay(long now) {
+        if (now - delayRefreshedAt > DELAY_REFRESH_NANOS) {
+            delayRefreshedAt = now;
+            var percentiles = latency.takeSnapshot().percentileValues();
+            var observed = percentiles.length > 0 ? (long) percentiles[0].value(TimeUnit.NANOSECONDS) : 0;
+            delayNanos = Math.min(properties.getMaxDelay().toNanos(),
+                    Math.max(properties.getMinDelay().toNanos(), observed));
+        }
+        return delayNanos;
+    }
+}
@@ -0,0 +1,96 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.DownstreamRetryProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Caps the retries against one downstream service at a percentage of its recent successful requests,
+ * plus a small per second allowance so a service that has not been called yet can be retried.
+ * During an outage successes stop, so retries stop amplifying the load soon after.
+ * Successes and retries are counted in one second buckets over the budget window.
+ */
+public class RetryBudget {
+
+    private final double retriesPerSuccess;
+    private final long minRetries;
+    private final long[] successes;
+    private final long[] retries;
+    private final long[] bucketSeconds;
+    private final LongSupplier nanoClock;
+
+    private final Counter retried;
+    private final Counter rejected;
+
+    public RetryBudget(String client, DownstreamRetryProperties properties, MeterRegistry meterRegistry) {
+        this(client, properties, meterRegistry, System::nanoTime);
+    }
+
+    RetryBudget(String client, DownstreamRetryProperties properties, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        var windowSeconds = (int) Math.max(1, properties.getBudgetWindow().toSeconds());
+        this.retriesPerSuccess = properties.getBudgetPercent() / 100;
+        this.minRetries = (long) properties.getBudgetMinRetriesPerSecond() * windowSeconds;
+        this.successes = new long[windowSeconds];
+        this.retries = new long[windowSeconds];
+        this.bucketSeconds = new long[windowSeconds];
+        this.nanoClock = nanoClock;
+        this.retried = Counter.builder("movies.client.retries")
+                .tag("client", client)
+                .tag("result", "retried")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("movies.client.retries")
+                .tag("client", client)
+                .tag("result", "budget_exhausted")
+                .register(meterRegistry);
+    }
+
+    public synchronized void recordSuccess() {
+        successes[bucket(currentSecond())]++;
+    }
+
+    /**
+     * Takes one retry from the budget, false when it is used up.
+     */
+    public boolean tryRetry() {
+        synchronized (this) {
+            var second = currentSecond();
+            var bucket = bucket(second);
+            var windowSuccesses = 0L;
+            var windowRetries = 0L;
+            for (var i = 0; i < successes.length; i++) {
+                // a bucket not used since the window moved past it still holds its old counts
+                if (second - bucketSeconds[i] < successes.length) {
+                    windowSuccesses += successes[i];
+                    windowRetries += retries[i];
+                }
+            }
+            if (windowRetries < minRetries + retriesPerSuccess * windowSuccesses) {
+                retries[bucket]++;
+                retried.increment();
+                return true;
+            }
+        }
+        rejected.increment();
+        return false;
+    }
+
+    private long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(nanoClock.getAsLong());
+    }
+
+    /**
+     * The bucket of {@code second}, cleared if it was last used for an earlier second.
+     */
+    private int bucket(long second) {
+        var bucket = (int) Math.floorMod(second, (long) successes.length);
+        if (bucketSeconds[bucket] != second) {
+            bucketSeconds[bucket] = second;
+            successes[bucket] = 0;
+            retries[bucket] = 0;
+        }
+        return bucket;
+    }
+}
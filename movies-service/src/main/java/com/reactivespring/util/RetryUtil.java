@@ -1,18 +1,36 @@
 package com.reactivespring.util;
 
+import com.reactivespring.config.DownstreamRetryProperties;
 import com.reactivespring.exception.MoviesInfoServerException;
 import com.reactivespring.exception.ReviewsServerException;
 import reactor.core.Exceptions;
 import reactor.util.retry.Retry;
 
-import java.time.Duration;
-
 public class RetryUtil {
 
-    public static Retry retrySpec(){
-        return Retry.fixedDelay(3, Duration.ofSeconds(1))
-                .filter(ex -> ex instanceof MoviesInfoServerException || ex instanceof ReviewsServerException)
+    /**
+     * Exponential backoff with jitter. A retry the budget cannot pay for fails with the original error.
+     */
+    public static Retry retrySpec(DownstreamRetryProperties properties, RetryBudget retryBudget){
+        var backoff = Retry.backoff(properties.getMaxAttempts(), properties.getMinBackoff())
+                .maxBackoff(properties.getMaxBackoff())
+                .jitter(properties.getJitter())
+                .filter(RetryUtil::isRetryable)
                 .onRetryExhaustedThrow((retryBackoffSpec, retrySignal) -> Exceptions.propagate(retrySignal.failure()));
+        // the budget is only charged for failures the backoff is going to retry, not for the last attempt
+        return Retry.from(retrySignals -> backoff.generateCompanion(retrySignals
+                .map(retrySignal -> {
+                    if (isRetryable(retrySignal.failure())
+                            && retrySignal.totalRetries() < properties.getMaxAttempts()
+                            && !retryBudget.tryRetry()) {
+                        throw Exceptions.propagate(retrySignal.failure());
+                    }
+                    return retrySignal;
+                })));
+    }
+
+    private static boolean isRetryable(Throwable ex) {
+        return ex instanceof MoviesInfoServerException || ex instanceof ReviewsServerException;
     }
 
 }
@@ -0,0 +1,122 @@
+package com.reactivespring.util;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Phase durations of one request, answered as the Server-Timing header when serverTiming.enabled is set.
+ * Each phase has a fixed slot, so recording one does not allocate; the entries the downstream services
+ * answered are kept under their client name, e.g. moviesinfo-mongo. Within movies-service the instance
+ * travels in the Reactor context of the request. With the feature off none of this is created and
+ * {@link #timed} hands back the publisher it was given.
+ */
+public final class ServerTiming {
+
+    public static final String HEADER = "Server-Timing";
+    public static final int MAX_DOWNSTREAM_ENTRIES = 16;
+
+    public enum Phase {
+        MOVIESINFO("moviesinfo"),
+        REVIEWS("reviews"),
+        ENCODE("encode");
+
+        private final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray durations = new AtomicLongArray(PHASES.length);
+    private final AtomicInteger recorded = new AtomicInteger();
+    private final Queue<String> downstream = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger downstreamCount = new AtomicInteger();
+
+    public static Optional<ServerTiming> current(ContextView context) {
+        return context.getOrEmpty(ServerTiming.class);
+    }
+
+    /**
+     * Times the source from subscription until it terminates or is cancelled, when the request is timed.
+     * The clock stops before the last signal is passed on, by then the response may already be committed.
+     */
+    public static <T> Mono<T> timed(boolean enabled, Phase phase, Mono<T> source) {
+        if (!enabled) {
+            return source;
+        }
+        return Mono.deferContextual(context -> current(context)
+                .map(timing -> {
+                    var stopwatch = timing.start(phase);
+                    return source.doOnSuccess(value -> stopwatch.run())
+                            .doOnError(ex -> stopwatch.run())
+                            .doOnCancel(stopwatch);
+                })
+                .orElse(source));
+    }
+
+    private Runnable start(Phase phase) {
+        var start = System.nanoTime();
+        var stopped = new AtomicBoolean();
+        return () -> {
+            if (stopped.compareAndSet(false, true)) {
+                record(phase, System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Repeated phases add up, a retried or hedged call is reported with the time spent in all attempts.
+     */
+    public void record(Phase phase, long nanos) {
+        durations.addAndGet(phase.ordinal(), nanos);
+        recorded.getAndUpdate(mask -> mask | 1 << phase.ordinal());
+    }
+
+    /**
+     * Keeps the entries of a downstream Server-Timing header value, named after the client.
+     */
+    public void addDownstream(String client, String headerValue) {
+        for (var entry : headerValue.split(",")) {
+            var trimmed = entry.trim();
+            if (!trimmed.isEmpty() && downstreamCount.incrementAndGet() <= MAX_DOWNSTREAM_ENTRIES) {
+                downstream.add(client + "-" + trimmed);
+            }
+        }
+    }
+
+    /**
+     * The header value, with total being the time from the start of the request until now.
+     */
+    public String toHeaderValue() {
+        var total = System.nanoTime() - startNanos;
+        var mask = recorded.get();
+        var header = new StringBuilder();
+        for (var phase : PHASES) {
+            if ((mask & 1 << phase.ordinal()) != 0) {
+                append(header, phase.metricName, durations.get(phase.ordinal()));
+            }
+        }
+        append(header, "total", total);
+        for (var entry : downstream) {
+            header.append(", ").append(entry);
+        }
+        return header.toString();
+    }
+
+    private static void append(StringBuilder header, String name, long nanos) {
+        if (header.length() > 0) {
+            header.append(", ");
+        }
+        header.append(name).append(";dur=").append(Math.round(nanos / 100_000.0) / 10.0);
+    }
+}
@@ -0,0 +1,80 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent calls for the same key: the first caller starts the downstream call and
+ * every caller that arrives while it is still in flight subscribes to the same result.
+ * The shared call is reference counted, it is only cancelled once every subscriber has cancelled.
+ * It runs without a {@link Deadline}, so it is not bound to the one of the caller that started it;
+ * each caller waits for it until its own deadline instead.
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter executedCalls;
+    private final Counter coalescedCalls;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.executedCalls = Counter.builder("movies.client.singleflight.calls")
+                .tag("client", name)
+                .tag("result", "executed")
+                .register(meterRegistry);
+        this.coalescedCalls = Counter.builder("movies.client.singleflight.calls")
+                .tag("client", name)
+                .tag("result", "coalesced")
+                .register(meterRegistry);
+        meterRegistry.gaugeMapSize("movies.client.singleflight.inflight",
+                Tags.of("client", name), inFlight);
+    }
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        return Mono.defer(() -> {
+            var created = new boolean[1];
+            var shared = inFlight.computeIfAbsent(key, k -> {
+                created[0] = true;
+                return share(k, call.get());
+            });
+            if (created[0]) {
+                executedCalls.increment();
+            } else {
+                coalescedCalls.increment();
+            }
+            return Mono.deferContextual(context -> Deadline.current(context)
+                    .map(deadline -> shared.timeout(deadline.remaining(), Mono.error(Deadline::exceeded)))
+                    .orElse(shared));
+        });
+    }
+
+    /**
+     * Callers arriving after this start a new call for the key instead of joining the one in flight,
+     * for when its result is known to be outdated. Callers already waiting keep theirs.
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    public void forgetAll() {
+        inFlight.clear();
+    }
+
+    private Mono<V> share(K key, Mono<V> source) {
+        var shared = new AtomicReference<Mono<V>>();
+        shared.set(source
+                .contextWrite(Deadline::remove)
+                .doFinally(signalType -> inFlight.remove(key, shared.get()))
+                .flux()
+                .publish()
+                .refCount(1)
+                .singleOrEmpty());
+        return shared.get();
+    }
+}
@@ -0,0 +1,100 @@
+package com.reactivespring.client;
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.client.AutoConfigureWebClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebClient
+@AutoConfigureWireMock(port = 0)
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/moviesinfo",
+        "restClient.movieReviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.moviesInfoCache.enabled=false",
+        "restClient.hedge.reviews.enabled=true",
+        "restClient.hedge.reviews.minDelay=100ms",
+        "restClient.hedge.reviews.maxDelay=300ms",
+        "restClient.hedge.reviews.budgetPercent=50",
+})
+public class HedgedReviewsIntgTest {
+
+    @Autowired
+    ReviewsRestClient reviewsRestClient;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.reset();
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(reviews()));
+    }
+
+    @Test
+    void fastLookupIsNotHedged() {
+        var sentBefore = hedges("sent");
+
+        StepVerifier.create(reviewsRestClient.retrieveReviews("1"))
+                .expectNextCount(2)
+                .verifyComplete();
+
+        assertEquals(sentBefore, hedges("sent"));
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void slowLookupIsHedgedAndLoserCancelled() {
+        for (int i = 0; i < 10; i++) {
+            reviewsRestClient.retrieveReviews("warm-up-" + i).blockLast();
+        }
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo("2"))
+                .inScenario("slow first attempt")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willSetStateTo("hedged")
+                .willReturn(reviews().withFixedDelay(5000)));
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo("2"))
+                .inScenario("slow first attempt")
+                .whenScenarioStateIs("hedged")
+                .willReturn(reviews()));
+        var sentBefore = hedges("sent");
+        var wonBefore = hedges("won");
+
+        StepVerifier.create(reviewsRestClient.retrieveReviews("2"))
+                .expectNextCount(2)
+                .expectComplete()
+                .verify(Duration.ofSeconds(2));
+
+        assertEquals(1, hedges("sent") - sentBefore);
+        assertEquals(1, hedges("won") - wonBefore);
+        WireMock.verify(2, getRequestedFor(urlPathEqualTo("/v1/reviews")).withQueryParam("movieInfoId", equalTo("2")));
+    }
+
+    private static ResponseDefinitionBuilder reviews() {
+        return aResponse()
+                .withHeader("Content-Type", "application/json")
+                .withBodyFile("reviews.json");
+    }
+
+    private double hedges(String result) {
+        return meterRegistry.counter("movies.client.hedges", "client", "reviews", "result", result).count();
+    }
+}
@@ -0,0 +1,214 @@
+package com.reactivespring.client;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.MoviesInfoClientException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.client.AutoConfigureWebClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebClient
+@AutoConfigureWireMock(port = 0)
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/moviesinfo",
+        "restClient.movieReviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.moviesInfoCache.enabled=true",
+        "restClient.moviesInfoCache.streamReconnectDelay=100ms",
+})
+public class MovieInfoCacheIntgTest {
+
+    @Autowired
+    MoviesInfoRestClient moviesInfoRestClient;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.reset();
+    }
+
+    @Test
+    void repeatedLookupIsServedFromCache() {
+        stubMovieInfo("10");
+
+        moviesInfoRestClient.retrieveMovieInfo("10").block();
+        var hitsBefore = cacheGets("hit");
+
+        StepVerifier.create(moviesInfoRestClient.retrieveMovieInfo("10"))
+                .assertNext(movieInfo -> assertEquals("Batman Begins", movieInfo.getName()))
+                .verifyComplete();
+
+        assertEquals(1, cacheGets("hit") - hitsBefore);
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/moviesinfo/10")));
+    }
+
+    @Test
+    void notFoundLookupIsCached() {
+        stubFor(get(urlEqualTo("/v1/moviesinfo/11"))
+                .willReturn(aResponse().withStatus(404)));
+
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(moviesInfoRestClient.retrieveMovieInfo("11"))
+                    .expectErrorMatches(ex -> ex instanceof MoviesInfoClientException
+                            && ex.getMessage().equals("There is no MovieInfo available for the ID : 11"))
+                    .verify();
+        }
+
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/moviesinfo/11")));
+    }
+
+    @Test
+    void changeOnStreamEvictsEntry() throws InterruptedException {
+        stubMovieInfo("12");
+        moviesInfoRestClient.retrieveMovieInfo("12").block();
+        moviesInfoRestClient.retrieveMovieInfo("12").block();
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/moviesinfo/12")));
+
+        var invalidationsBefore = invalidations();
+        stubFor(get(urlEqualTo("/v1/moviesinfo/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                        .withBody("{\"sequence\":1,\"type\":\"MOVIE_INFO\","
+                                + "\"movieInfo\":{\"movieInfoId\":\"12\",\"name\":\"Batman Begins\",\"year\":2005}}\n")));
+
+        for (int i = 0; i < 100 && invalidations() == invalidationsBefore; i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(invalidations() > invalidationsBefore);
+
+        moviesInfoRestClient.retrieveMovieInfo("12").block();
+        WireMock.verify(2, getRequestedFor(urlEqualTo("/v1/moviesinfo/12")));
+    }
+
+    @Test
+    void deleteOnStreamEvictsEntry() throws InterruptedException {
+        stubMovieInfo("17");
+        moviesInfoRestClient.retrieveMovieInfo("17").block();
+
+        var invalidationsBefore = invalidations();
+        stubFor(get(urlEqualTo("/v1/moviesinfo/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                        .withBody("{\"sequence\":1,\"type\":\"DELETE\",\"movieInfo\":{\"movieInfoId\":\"17\"}}\n")));
+        for (int i = 0; i < 100 && invalidations() == invalidationsBefore; i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(invalidations() > invalidationsBefore);
+
+        stubFor(get(urlEqualTo("/v1/moviesinfo/17"))
+                .willReturn(aResponse().withStatus(404)));
+        StepVerifier.create(moviesInfoRestClient.retrieveMovieInfo("17"))
+                .expectError(MoviesInfoClientException.class)
+                .verify();
+    }
+
+    @Test
+    void reconnectResumesWithEpochAndSequence() throws InterruptedException {
+        stubFor(get(urlEqualTo("/v1/moviesinfo/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                        .withBody("{\"epoch\":\"before-restart\",\"sequence\":7,\"type\":\"MOVIE_INFO\","
+                                + "\"movieInfo\":{\"movieInfoId\":\"14\",\"name\":\"Batman Begins\",\"year\":2005}}\n")));
+
+        var resumed = getRequestedFor(urlEqualTo("/v1/moviesinfo/stream"))
+                .withHeader("Last-Event-ID", equalTo("before-restart:7"));
+        for (int i = 0; i < 100 && findAll(resumed).isEmpty(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(findAll(resumed).size() > 0);
+    }
+
+    @Test
+    void invalidationDuringLoadIsNotOverwritten() {
+        var cache = new MovieInfoCache(100, Duration.ofHours(1), Duration.ofMinutes(1), new SimpleMeterRegistry());
+        var loads = new AtomicInteger();
+        Supplier<Mono<MovieInfo>> loader = () -> Mono.delay(Duration.ofMillis(200))
+                .map(tick -> new MovieInfo("13", "Load " + loads.incrementAndGet(), 2005, List.of(), null));
+
+        Function<String, RuntimeException> notFound = movieId -> new MoviesInfoClientException(movieId, 404);
+
+        var inFlight = cache.get("13", loader, notFound).toFuture();
+        cache.invalidate("13");
+
+        assertEquals("Load 1", inFlight.join().getName());
+        StepVerifier.create(cache.get("13", loader, notFound))
+                .assertNext(movieInfo -> assertEquals("Load 2", movieInfo.getName()))
+                .verifyComplete();
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() {
+        stubFor(get(urlEqualTo("/v1/moviesinfo/16"))
+                .willReturn(aResponse()
+                        .withFixedDelay(300)
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        var coalescedBefore = singleFlightCalls("coalesced");
+
+        StepVerifier.create(Flux.merge(moviesInfoRestClient.retrieveMovieInfo("16"),
+                        moviesInfoRestClient.retrieveMovieInfo("16")))
+                .expectNextCount(2)
+                .verifyComplete();
+
+        assertEquals(1, singleFlightCalls("coalesced") - coalescedBefore);
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/moviesinfo/16")));
+    }
+
+    @Test
+    void cancelledLookupCancelsTheLoad() {
+        var cache = new MovieInfoCache(100, Duration.ofHours(1), Duration.ofMinutes(1), new SimpleMeterRegistry());
+        var cancelled = new AtomicBoolean();
+
+        var lookup = cache.get("15", () -> Mono.<MovieInfo>never().doOnCancel(() -> cancelled.set(true)),
+                        movieId -> new MoviesInfoClientException(movieId, 404))
+                .subscribe();
+        lookup.dispose();
+
+        assertTrue(cancelled.get());
+    }
+
+    private void stubMovieInfo(String movieId) {
+        stubFor(get(urlEqualTo("/v1/moviesinfo/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "moviesinfo").tag("result", result)
+                .functionCounter().count();
+    }
+
+    private double singleFlightCalls(String result) {
+        return meterRegistry.counter("movies.client.singleflight.calls", "client", "moviesinfo", "result", result)
+                .count();
+    }
+
+    private double invalidations() {
+        return meterRegistry.counter("movies.client.cache.invalidations", "cache", "moviesinfo").count();
+    }
+}
@@ -0,0 +1,121 @@
+package com.reactivespring.client;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.util.Deadline;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.client.AutoConfigureWebClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebClient
+@AutoConfigureWireMock(port = 8084)
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:8084/v1/moviesinfo",
+        "restClient.movieReviewsUrl=http://localhost:8084/v1/reviews",
+        "restClient.moviesInfoCache.enabled=false",
+})
+public class RestClientCoalescingIntgTest {
+
+    @Autowired
+    MoviesInfoRestClient moviesInfoRestClient;
+
+    @Autowired
+    ReviewsRestClient reviewsRestClient;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.reset();
+        stubFor(get(urlEqualTo("/v1/moviesinfo/1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(500)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo("1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(500)));
+    }
+
+    @Test
+    void concurrentCallersShareOneDownstreamCall() {
+        var callers = 50;
+        var coalescedBefore = coalescedCount("moviesinfo");
+
+        var movieInfos = Flux.range(0, callers)
+                .flatMap(i -> moviesInfoRestClient.retrieveMovieInfo("1"))
+                .collectList()
+                .block();
+
+        assertEquals(callers, movieInfos.size());
+        assertEquals(callers - 1, coalescedCount("moviesinfo") - coalescedBefore);
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/moviesinfo/1")));
+    }
+
+    @Test
+    void concurrentReviewCallersShareOneDownstreamCall() {
+        var callers = 50;
+
+        var reviewCounts = Flux.range(0, callers)
+                .flatMap(i -> reviewsRestClient.retrieveReviews("1").count())
+                .collectList()
+                .block();
+
+        reviewCounts.forEach(count -> assertEquals(2L, count));
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void cancelledCallerDoesNotCancelSharedCall() {
+        var impatient = moviesInfoRestClient.retrieveMovieInfo("1")
+                .timeout(Duration.ofMillis(100));
+        var patient = moviesInfoRestClient.retrieveMovieInfo("1");
+
+        StepVerifier.create(Flux.merge(impatient.onErrorResume(TimeoutException.class, e -> Mono.empty()), patient))
+                .assertNext(movieInfo -> assertEquals("Batman Begins", movieInfo.getName()))
+                .verifyComplete();
+
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/moviesinfo/1")));
+    }
+
+    @Test
+    void deadlineOfTheFirstCallerOnlyAppliesToIt() {
+        var impatient = moviesInfoRestClient.retrieveMovieInfo("1")
+                .contextWrite(context -> context.put(Deadline.class, Deadline.after(Duration.ofMillis(100))));
+        var patient = Mono.delay(Duration.ofMillis(50))
+                .then(moviesInfoRestClient.retrieveMovieInfo("1"))
+                .contextWrite(context -> context.put(Deadline.class, Deadline.after(Duration.ofSeconds(5))));
+
+        StepVerifier.create(Flux.merge(impatient.onErrorResume(ResponseStatusException.class, e -> Mono.empty()), patient))
+                .assertNext(movieInfo -> assertEquals("Batman Begins", movieInfo.getName()))
+                .verifyComplete();
+
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/moviesinfo/1")).withoutHeader(Deadline.TIMEOUT_HEADER));
+    }
+
+    private double coalescedCount(String client) {
+        return meterRegistry.counter("movies.client.singleflight.calls", "client", client, "result", "coalesced").count();
+    }
+}
@@ -0,0 +1,105 @@
+package com.reactivespring.client;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.exception.ReviewsServerException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.client.AutoConfigureWebClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.IntFunction;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Brownout of both downstream services: every lookup fails with a 500. The reviews client has a budget
+ * too large to matter and retries every failed lookup, the moviesinfo client runs out of budget.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebClient
+@AutoConfigureWireMock(port = 0)
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/moviesinfo",
+        "restClient.movieReviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.moviesInfoCache.enabled=false",
+        "restClient.retry.moviesinfo.minBackoff=1ms",
+        "restClient.retry.moviesinfo.maxBackoff=5ms",
+        "restClient.retry.moviesinfo.budgetPercent=10",
+        "restClient.retry.moviesinfo.budgetMinRetriesPerSecond=1",
+        "restClient.retry.moviesinfo.budgetWindow=60s",
+        "restClient.retry.reviews.minBackoff=1ms",
+        "restClient.retry.reviews.maxBackoff=5ms",
+        "restClient.retry.reviews.budgetMinRetriesPerSecond=100000",
+        "resilience4j.circuitbreaker.configs.default.slidingWindowSize=10000",
+        "resilience4j.circuitbreaker.configs.default.minimumNumberOfCalls=10000",
+})
+public class RetryBudgetIntgTest {
+
+    static final int LOOKUPS = 100;
+
+    @Autowired
+    MoviesInfoRestClient moviesInfoRestClient;
+
+    @Autowired
+    ReviewsRestClient reviewsRestClient;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.reset();
+    }
+
+    @Test
+    void budgetLimitsLoadAmplificationDuringBrownout() {
+        stubFor(get(urlPathMatching("/v1/moviesinfo/.*"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        lookUp(id -> moviesInfoRestClient.retrieveMovieInfo("ok-" + id).then(), null);
+
+        stubFor(get(urlPathMatching("/v1/moviesinfo/.*"))
+                .willReturn(aResponse().withStatus(500).withBody("down")));
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse().withStatus(500).withBody("down")));
+
+        lookUp(id -> moviesInfoRestClient.retrieveMovieInfo("down-" + id).then(), MoviesInfoServerException.class);
+        lookUp(id -> reviewsRestClient.retrieveReviews("down-" + id).then(), ReviewsServerException.class);
+
+        var reviewsRequests = findAll(getRequestedFor(urlPathEqualTo("/v1/reviews"))).size();
+        var moviesInfoRequests = findAll(getRequestedFor(urlPathMatching("/v1/moviesinfo/down-.*"))).size();
+        // 3 retries per lookup without a budget
+        assertEquals(LOOKUPS * 4, reviewsRequests);
+        // 60 retries of the reserve plus 10% of the 100 earlier successes
+        assertEquals(LOOKUPS + 60 + 10, moviesInfoRequests);
+        assertTrue(meterRegistry.counter("movies.client.retries", "client", "moviesinfo", "result", "budget_exhausted")
+                .count() > 0);
+    }
+
+    private void lookUp(IntFunction<Mono<Void>> lookup, Class<? extends Throwable> expectedError) {
+        var failures = Flux.range(0, LOOKUPS)
+                .flatMap(id -> lookup.apply(id)
+                        .then(Mono.just(false))
+                        .onErrorResume(ex -> {
+                            assertTrue(expectedError != null && expectedError.isInstance(ex), ex.toString());
+                            return Mono.just(true);
+                        }), 20)
+                .filter(failed -> failed)
+                .count()
+                .block(Duration.ofSeconds(30));
+        assertEquals(expectedError == null ? 0 : LOOKUPS, failures);
+    }
+}
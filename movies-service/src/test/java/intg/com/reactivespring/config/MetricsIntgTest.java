@@ -0,0 +1,64 @@
+package com.reactivespring.config;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.client.AutoConfigureWebClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebClient
+@AutoConfigureWireMock(port = 0)
+@AutoConfigureMetrics
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/moviesinfo",
+        "restClient.movieReviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.moviesInfoCache.enabled=false",
+})
+public class MetricsIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Test
+    void prometheusScrapeHasRouteAndDownstreamMetrics() {
+        WireMock.reset();
+        stubFor(get(urlPathEqualTo("/v1/moviesinfo/1234"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", "1234")
+                .exchange()
+                .expectStatus().isOk();
+
+        var scrape = webTestClient.get()
+                .uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertTrue(scrape.contains("http_server_requests_seconds_bucket{application=\"movies-service\","
+                + "exception=\"None\",method=\"GET\",outcome=\"SUCCESS\",status=\"200\",uri=\"/v1/movies/{id}\""), scrape);
+        assertTrue(scrape.matches("(?s).*http_client_requests_seconds_bucket\\{[^}]*client=\"moviesinfo\"[^}]*uri=\"/v1/moviesinfo/\\{id}\".*"));
+        assertTrue(scrape.matches("(?s).*http_client_requests_seconds_bucket\\{[^}]*client=\"reviews\"[^}]*uri=\"/v1/reviews\",.*"));
+        assertFalse(scrape.contains("1234"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.reactivespring.config;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.client.ReviewsRestClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWireMock(port = 0)
+@TestPropertySource(properties = {
+        "restClient.movieReviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.moviesInfoCache.enabled=false",
+        "restClient.pools.moviesinfo.h2c=true",
+        "restClient.pools.reviews.maxConnections=5",
+})
+public class WebClientPoolIntgTest {
+
+    static final List<String> moviesInfoProtocols = new CopyOnWriteArrayList<>();
+
+    static final DisposableServer moviesInfoServer = HttpServer.create()
+            .protocol(HttpProtocol.H2C)
+            .route(routes -> routes.get("/v1/moviesinfo/{id}", (request, response) -> {
+                // HTTP/2 requests reach the handler converted to HTTP/1.1 objects carrying the stream id
+                moviesInfoProtocols.add(request.requestHeaders().contains("x-http2-stream-id") ? "h2c" : "http/1.1");
+                return response.header("Content-Type", "application/json")
+                        .sendString(Mono.just("{\"movieInfoId\":\"" + request.param("id") + "\",\"name\":\"Batman Begins\",\"year\":2005}"));
+            }))
+            .bindNow();
+
+    @DynamicPropertySource
+    static void moviesInfoUrl(DynamicPropertyRegistry registry) {
+        registry.add("restClient.moviesInfoUrl", () -> "http://localhost:" + moviesInfoServer.port() + "/v1/moviesinfo");
+    }
+
+    @AfterAll
+    static void stopMoviesInfoServer() {
+        moviesInfoServer.disposeNow();
+    }
+
+    @Autowired
+    MoviesInfoRestClient moviesInfoRestClient;
+
+    @Autowired
+    ReviewsRestClient reviewsRestClient;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    ConnectionProvider reviewsConnectionProvider;
+
+    @Test
+    void moviesInfoIsCalledOverH2c() {
+        StepVerifier.create(moviesInfoRestClient.retrieveMovieInfo("1"))
+                .assertNext(movieInfo -> assertEquals("Batman Begins", movieInfo.getName()))
+                .verifyComplete();
+
+        assertEquals(List.of("h2c"), moviesInfoProtocols);
+        assertTrue(acquireCount("moviesinfo") >= 1);
+    }
+
+    @Test
+    void reviewsPoolIsConfiguredAndReported() {
+        stubFor(get(urlEqualTo("/v1/reviews?movieInfoId=1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        StepVerifier.create(reviewsRestClient.retrieveReviews("1"))
+                .expectNextCount(2)
+                .verifyComplete();
+
+        assertTrue(acquireCount("reviews") >= 1);
+        assertEquals(5, reviewsConnectionProvider.maxConnections());
+        var idleConnections = Metrics.globalRegistry.get("reactor.netty.connection.provider.idle.connections")
+                .tag("name", "reviews")
+                .gauge()
+                .value();
+        assertEquals(1, idleConnections);
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/reviews?movieInfoId=1")));
+    }
+
+    private long acquireCount(String client) {
+        return meterRegistry.get("movies.client.pool.acquire").tag("client", client).timer().count();
+    }
+}
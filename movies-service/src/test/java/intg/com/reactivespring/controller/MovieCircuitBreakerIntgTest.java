@@ -0,0 +1,143 @@
+package com.reactivespring.controller;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.domain.Movie;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnStateTransitionEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.client.AutoConfigureWebClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.context.event.EventListener;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebClient
+@AutoConfigureWireMock(port = 0)
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/moviesinfo",
+        "restClient.movieReviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.moviesInfoCache.enabled=false",
+        "restClient.retry.reviews.maxAttempts=0",
+        "resilience4j.circuitbreaker.instances.reviews.slidingWindowSize=3",
+        "resilience4j.circuitbreaker.instances.reviews.minimumNumberOfCalls=3",
+        "resilience4j.circuitbreaker.instances.reviews.failureRateThreshold=100",
+        "resilience4j.circuitbreaker.instances.reviews.waitDurationInOpenState=1m",
+})
+public class MovieCircuitBreakerIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    TransitionEvents transitionEvents;
+
+    @TestConfiguration
+    static class TransitionEvents {
+
+        final List<CircuitBreakerOnStateTransitionEvent> events = new CopyOnWriteArrayList<>();
+
+        @EventListener
+        void onTransition(CircuitBreakerOnStateTransitionEvent event) {
+            events.add(event);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        WireMock.reset();
+        stubFor(get(urlPathMatching("/v1/moviesinfo/.*"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+    }
+
+    @AfterEach
+    void tearDown() {
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(CircuitBreaker::reset);
+    }
+
+    @Test
+    void openReviewsBreakerServesLastKnownReviewsAsPartial() {
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+        var movie = retrieveMovie("1");
+        assertFalse(movie.isPartial());
+        assertEquals(2, movie.getReviewList().size());
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse().withStatus(500).withBody("down")));
+        for (int i = 0; i < 3; i++) {
+            webTestClient.get()
+                    .uri("/v1/movies/{id}", "1")
+                    .exchange()
+                    .expectStatus().is5xxServerError();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreakerRegistry.circuitBreaker("reviews").getState());
+        var reviewRequests = findAll(getRequestedFor(urlPathEqualTo("/v1/reviews"))).size();
+
+        var degraded = retrieveMovie("1");
+        assertTrue(degraded.isPartial());
+        assertEquals("Batman Begins", degraded.getMovieInfo().getName());
+        assertEquals(2, degraded.getReviewList().size());
+
+        var unknown = retrieveMovie("2");
+        assertTrue(unknown.isPartial());
+        assertTrue(unknown.getReviewList().isEmpty());
+
+        // the open breaker answers without calling the reviews service
+        assertEquals(reviewRequests, findAll(getRequestedFor(urlPathEqualTo("/v1/reviews"))).size());
+        assertEquals(1, meterRegistry.counter("movies.client.circuitbreaker.transitions",
+                "client", "reviews", "from", "CLOSED", "to", "OPEN").count());
+        assertEquals(1, transitionEvents.events.stream()
+                .filter(event -> event.getCircuitBreakerName().equals("reviews"))
+                .count());
+    }
+
+    @Test
+    void openMoviesInfoBreakerFailsFast() {
+        circuitBreakerRegistry.circuitBreaker("moviesinfo").transitionToForcedOpenState();
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", "1")
+                .exchange()
+                .expectStatus().isEqualTo(503);
+
+        WireMock.verify(0, getRequestedFor(urlPathMatching("/v1/moviesinfo/.*")));
+    }
+
+    private Movie retrieveMovie(String movieId) {
+        return webTestClient.get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
@@ -0,0 +1,236 @@
+package com.reactivespring.controller;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.matching.RequestPatternBuilder;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.reactivespring.domain.Movie;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@AutoConfigureWireMock(port = 0)
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/moviesinfo",
+        "restClient.movieReviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.moviesInfoCache.enabled=false",
+        "restClient.moviesInfoCache.streamReconnectDelay=10s",
+        "restClient.movieStream.reconnectDelay=10s",
+})
+public class MovieStreamIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.reset();
+        stubFor(get(urlEqualTo("/v1/reviews?movieInfoId=1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+        stubFor(get(urlEqualTo("/v1/moviesinfo/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                        .withBody("")));
+        stubFor(get(urlPathEqualTo("/v1/reviews/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                        .withBody("")));
+    }
+
+    @Test
+    void streamsCurrentMovieThenAddedReviews() {
+        stubMovieInfo();
+        stubFor(get(urlPathEqualTo("/v1/reviews/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                        .withBody("{\"reviewId\":\"4\",\"movieInfoId\":2,\"comment\":\"Other Movie\",\"rating\":7.0}\n"
+                                + "{\"reviewId\":\"3\",\"movieInfoId\":1,\"comment\":\"Great Movie\",\"rating\":9.5}\n")
+                        .withFixedDelay(300)));
+
+        StepVerifier.create(streamMovie())
+                .assertNext(movie -> assertEquals(2, movie.getReviewList().size()))
+                .assertNext(movie -> {
+                    assertEquals(3, movie.getReviewList().size());
+                    assertEquals("Great Movie", movie.getReviewList().get(2).getComment());
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void movieInfoChangeReloadsTheMovie() {
+        stubFor(get(urlEqualTo("/v1/moviesinfo/1"))
+                .inScenario("movie info update")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willSetStateTo("updated")
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        stubFor(get(urlEqualTo("/v1/moviesinfo/1"))
+                .inScenario("movie info update")
+                .whenScenarioStateIs("updated")
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"movieInfoId\":\"1\",\"name\":\"Batman Begins Remastered\",\"year\":2005}")));
+        stubFor(get(urlEqualTo("/v1/moviesinfo/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                        .withBody("{\"sequence\":1,\"type\":\"MOVIE_INFO\","
+                                + "\"movieInfo\":{\"movieInfoId\":\"1\",\"name\":\"Batman Begins Remastered\",\"year\":2005}}\n")
+                        .withFixedDelay(300)));
+
+        StepVerifier.create(streamMovie())
+                .assertNext(movie -> assertEquals("Batman Begins", movie.getMovieInfo().getName()))
+                .assertNext(movie -> assertEquals("Batman Begins Remastered", movie.getMovieInfo().getName()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void failedReloadKeepsTheStreamGoing() {
+        stubFor(get(urlEqualTo("/v1/moviesinfo/1"))
+                .inScenario("movie info gone")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willSetStateTo("gone")
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+        stubFor(get(urlEqualTo("/v1/moviesinfo/1"))
+                .inScenario("movie info gone")
+                .whenScenarioStateIs("gone")
+                .willReturn(aResponse().withStatus(404)));
+        stubFor(get(urlEqualTo("/v1/moviesinfo/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                        .withBody("{\"sequence\":1,\"type\":\"MOVIE_INFO\","
+                                + "\"movieInfo\":{\"movieInfoId\":\"1\",\"name\":\"Batman Begins\",\"year\":2005}}\n")
+                        .withFixedDelay(300)));
+        stubFor(get(urlPathEqualTo("/v1/reviews/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                        .withBody("{\"reviewId\":\"3\",\"movieInfoId\":1,\"comment\":\"Great Movie\",\"rating\":9.5}\n")
+                        .withFixedDelay(1000)));
+
+        StepVerifier.create(streamMovie())
+                .assertNext(movie -> assertEquals(2, movie.getReviewList().size()))
+                .assertNext(movie -> assertEquals(3, movie.getReviewList().size()))
+                .thenCancel()
+                .verify();
+        WireMock.verify(2, getRequestedFor(urlEqualTo("/v1/moviesinfo/1")));
+    }
+
+    @Test
+    void clientsOfTheSameMovieShareTheUpstreamStreams() throws InterruptedException {
+        stubMovieInfo();
+
+        StepVerifier.create(Flux.merge(streamMovie().take(1), streamMovie().take(1)))
+                .expectNextCount(2)
+                .verifyComplete();
+
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews/stream")));
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/moviesinfo/1")));
+
+        for (int i = 0; i < 100 && watchedMovies() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, watchedMovies());
+    }
+
+    @Test
+    void reviewsStreamAsksForTheWatchedMovies() throws InterruptedException {
+        stubMovieInfo();
+        stubFor(get(urlEqualTo("/v1/moviesinfo/2"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"movieInfoId\":\"2\",\"name\":\"The Dark Knight\",\"year\":2008}")));
+        stubFor(get(urlEqualTo("/v1/reviews?movieInfoId=2"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[]")));
+
+        var watching = streamMovie("1").subscribe();
+        try {
+            awaitRequests(getRequestedFor(urlPathEqualTo("/v1/reviews/stream")), 1);
+            StepVerifier.create(streamMovie("2").take(1))
+                    .expectNextCount(1)
+                    .verifyComplete();
+        } finally {
+            watching.dispose();
+        }
+
+        WireMock.verify(getRequestedFor(urlPathEqualTo("/v1/reviews/stream"))
+                .withQueryParam("movieInfoIds", equalTo("1")));
+        WireMock.verify(getRequestedFor(urlPathEqualTo("/v1/reviews/stream"))
+                .withQueryParam("movieInfoIds", equalTo("1,2")));
+    }
+
+    @Test
+    void gapOnTheReviewsStreamReloadsTheMovie() throws InterruptedException {
+        stubMovieInfo();
+        stubFor(get(urlPathEqualTo("/v1/reviews/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                        .withBody("{\"gap\":true}\n")
+                        .withFixedDelay(300)));
+
+        var watching = streamMovie().subscribe();
+        try {
+            awaitRequests(getRequestedFor(urlEqualTo("/v1/moviesinfo/1")), 2);
+        } finally {
+            watching.dispose();
+        }
+
+        WireMock.verify(2, getRequestedFor(urlEqualTo("/v1/moviesinfo/1")));
+    }
+
+    private Flux<Movie> streamMovie() {
+        return streamMovie("1");
+    }
+
+    private Flux<Movie> streamMovie(String movieId) {
+        return webTestClient
+                .get()
+                .uri("/v1/movies/{id}/stream", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Movie.class)
+                .getResponseBody();
+    }
+
+    private void stubMovieInfo() {
+        stubFor(get(urlEqualTo("/v1/moviesinfo/1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+    }
+
+    private void awaitRequests(RequestPatternBuilder requests, int count) throws InterruptedException {
+        for (int i = 0; i < 100 && findAll(requests).size() < count; i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    private double watchedMovies() {
+        return meterRegistry.get("movies.stream.watched").gauge().value();
+    }
+}
@@ -2,20 +2,26 @@ package com.reactivespring.controller;
 
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieBatchResult;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.client.AutoConfigureWebClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
 
+import java.util.List;
 import java.util.Objects;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -25,6 +31,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 @TestPropertySource(properties = {
         "restClient.moviesInfoUrl=http://localhost:8084/v1/moviesinfo",
         "restClient.movieReviewsUrl=http://localhost:8084/v1/reviews",
+        "restClient.moviesInfoCache.enabled=false",
+        "movieBatch.maxIds=5",
 })
 public class MoviesControllerIntgTest {
 
@@ -64,6 +72,141 @@ public class MoviesControllerIntgTest {
                 );
     }
 
+    @Test
+    void retrieveMovieById_callsDownstreamConcurrently() {
+        var movieId = "1";
+        stubFor(get(urlEqualTo("/v1/moviesinfo" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(1000)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoId", equalTo(movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(1000)));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", "1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                            var movie = movieEntityExchangeResult.getResponseBody();
+                            assert Objects.requireNonNull(movie).getReviewList().size() == 2;
+                        }
+                );
+
+        // the reviews request must reach the server while the info request is still being served
+        var infoRequest = findAll(getRequestedFor(urlEqualTo("/v1/moviesinfo" + "/" + movieId))).get(0);
+        var reviewsRequest = findAll(getRequestedFor(urlPathEqualTo("/v1/reviews"))).get(0);
+        var gapMillis = Math.abs(reviewsRequest.getLoggedDate().getTime() - infoRequest.getLoggedDate().getTime());
+        assertTrue(gapMillis < 500, "downstream calls did not overlap, gap was " + gapMillis + "ms");
+    }
+
+    @Test
+    void retrieveMoviesByIds() {
+        stubFor(get(urlPathEqualTo("/v1/moviesinfo"))
+                .withQueryParam("ids", equalTo("2,3,1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfos.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoIds", equalTo("2,3,1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews-batch.json")));
+
+        var results = webTestClient.get()
+                .uri("/v1/movies?ids=2,3,1,2")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(MovieBatchResult.class)
+                .getResponseBody();
+
+        StepVerifier.create(results)
+                .assertNext(result -> {
+                    assertEquals("2", result.getMovieId());
+                    assertEquals("The Dark Knight", result.getMovie().getMovieInfo().getName());
+                    assertEquals(1, result.getMovie().getReviewList().size());
+                })
+                .assertNext(result -> {
+                    assertEquals("3", result.getMovieId());
+                    assertFalse(result.isFound());
+                })
+                .assertNext(result -> {
+                    assertEquals("1", result.getMovieId());
+                    assertEquals(2, result.getMovie().getReviewList().size());
+                })
+                .assertNext(result -> assertEquals("2", result.getMovieId()))
+                .verifyComplete();
+
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/moviesinfo")));
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void retrieveMoviesByIdsReportsInvalidIdsAsNotFound() {
+        stubFor(get(urlPathEqualTo("/v1/moviesinfo"))
+                .withQueryParam("ids", equalTo("2,1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfos.json")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoIds", equalTo("2,1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews-batch.json")));
+
+        var results = webTestClient.get()
+                .uri("/v1/movies?ids=2,abc,1")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(MovieBatchResult.class)
+                .getResponseBody();
+
+        StepVerifier.create(results)
+                .assertNext(result -> assertEquals(1, result.getMovie().getReviewList().size()))
+                .assertNext(result -> {
+                    assertEquals("abc", result.getMovieId());
+                    assertFalse(result.isFound());
+                })
+                .assertNext(result -> assertEquals(2, result.getMovie().getReviewList().size()))
+                .verifyComplete();
+
+        // only invalid ids, nothing to ask
+        webTestClient.get()
+                .uri("/v1/movies?ids=abc")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieBatchResult.class)
+                .isEqualTo(List.of(MovieBatchResult.notFound("abc")));
+
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/moviesinfo")));
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void retrieveMoviesByIdsRejectsTooManyIds() {
+        webTestClient.get()
+                .uri("/v1/movies?ids=1,2,3,4,5,6")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("ids : at most 5 ids per request");
+
+        WireMock.verify(0, getRequestedFor(urlPathEqualTo("/v1/moviesinfo")));
+        WireMock.verify(0, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
     @Test
     void retrieveMovieById404() {
         var movieId = "1";
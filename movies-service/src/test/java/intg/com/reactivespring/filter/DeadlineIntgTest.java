@@ -0,0 +1,116 @@
+package com.reactivespring.filter;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.matching.UrlPattern;
+import com.reactivespring.util.Deadline;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.client.AutoConfigureWebClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebClient
+@AutoConfigureWireMock(port = 0)
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/moviesinfo",
+        "restClient.movieReviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.moviesInfoCache.enabled=false",
+})
+public class DeadlineIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.reset();
+        stubFor(get(urlPathMatching("/v1/moviesinfo/.*"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+    }
+
+    @Test
+    void remainingTimeIsForwardedToBothServices() {
+        stubFor(get(urlPathEqualTo("/v1/moviesinfo"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfos.json")));
+        stubReviews(0);
+
+        webTestClient.get()
+                .uri("/v1/movies?ids=1")
+                .header(Deadline.TIMEOUT_HEADER, "5000")
+                .exchange()
+                .expectStatus().isOk();
+
+        assertForwardedTimeout(urlPathEqualTo("/v1/moviesinfo"), 5000);
+        assertForwardedTimeout(urlPathEqualTo("/v1/reviews"), 5000);
+    }
+
+    @Test
+    void sharedCallsDoNotForwardTheDeadlineOfOneCaller() {
+        stubReviews(0);
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", "1")
+                .header(Deadline.TIMEOUT_HEADER, "5000")
+                .exchange()
+                .expectStatus().isOk();
+
+        WireMock.verify(getRequestedFor(urlPathEqualTo("/v1/moviesinfo/1")).withoutHeader(Deadline.TIMEOUT_HEADER));
+        WireMock.verify(getRequestedFor(urlPathEqualTo("/v1/reviews")).withoutHeader(Deadline.TIMEOUT_HEADER));
+    }
+
+    @Test
+    void slowDownstreamCallIsCancelledAtTheDeadline() {
+        stubReviews(5000);
+
+        var start = System.nanoTime();
+        webTestClient.get()
+                .uri("/v1/movies/{id}", "1")
+                .header(Deadline.TIMEOUT_HEADER, "300")
+                .exchange()
+                .expectStatus().isEqualTo(504);
+
+        var elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMillis < 2000, "answered after " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void withoutDeadlineNothingIsForwarded() {
+        stubReviews(0);
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", "1")
+                .exchange()
+                .expectStatus().isOk();
+
+        WireMock.verify(getRequestedFor(urlPathEqualTo("/v1/reviews")).withoutHeader(Deadline.TIMEOUT_HEADER));
+    }
+
+    private void stubReviews(int delayMillis) {
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(delayMillis)));
+    }
+
+    private static void assertForwardedTimeout(UrlPattern url, long atMost) {
+        var requests = findAll(getRequestedFor(url));
+        assertEquals(1, requests.size());
+        var forwarded = Long.parseLong(requests.get(0).getHeader(Deadline.TIMEOUT_HEADER));
+        assertTrue(forwarded > 0 && forwarded <= atMost, "forwarded " + forwarded);
+    }
+}
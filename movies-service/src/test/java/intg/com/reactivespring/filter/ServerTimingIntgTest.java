@@ -0,0 +1,80 @@
+package com.reactivespring.filter;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.util.ServerTiming;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.client.AutoConfigureWebClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebClient
+@AutoConfigureWireMock(port = 0)
+@TestPropertySource(properties = {
+        "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/moviesinfo",
+        "restClient.movieReviewsUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+        "restClient.moviesInfoCache.enabled=false",
+        "serverTiming.enabled=true",
+})
+public class ServerTimingIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.reset();
+        stubFor(get(urlPathEqualTo("/v1/moviesinfo/1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader(ServerTiming.HEADER, "mongo;dur=1.5, encode;dur=0.2, total;dur=2.1")
+                        .withBodyFile("movieinfo.json")));
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader(ServerTiming.HEADER, "mongo;dur=3.0, total;dur=3.4")
+                        .withFixedDelay(100)
+                        .withBodyFile("reviews.json")));
+    }
+
+    @Test
+    void phasesAndDownstreamTimingsAreAnswered() {
+        var header = webTestClient.get()
+                .uri("/v1/movies/{id}", "1")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseHeaders()
+                .getFirst(ServerTiming.HEADER);
+
+        assertTrue(header.matches("moviesinfo;dur=[0-9.]+, reviews;dur=[0-9.]+, encode;dur=[0-9.]+, "
+                + "total;dur=[0-9.]+(, .*)?"), header);
+        assertTrue(header.contains("moviesinfo-mongo;dur=1.5"), header);
+        assertTrue(header.contains("moviesinfo-total;dur=2.1"), header);
+        assertTrue(header.contains("reviews-mongo;dur=3.0"), header);
+        var reviewsMillis = Double.parseDouble(header.replaceAll(".*\\breviews;dur=([0-9.]+).*", "$1"));
+        assertTrue(reviewsMillis >= 100, header);
+    }
+
+    @Test
+    void failedRequestsAreTimedToo() {
+        stubFor(get(urlPathEqualTo("/v1/moviesinfo/2"))
+                .willReturn(aResponse().withStatus(404)));
+
+        webTestClient.get()
+                .uri("/v1/movies/{id}", "2")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectHeader().value(ServerTiming.HEADER, header ->
+                        assertTrue(header.startsWith("moviesinfo;dur="), header));
+    }
+}
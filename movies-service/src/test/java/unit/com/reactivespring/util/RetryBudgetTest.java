@@ -0,0 +1,55 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.DownstreamRetryProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RetryBudgetTest {
+
+    AtomicLong nanos = new AtomicLong(TimeUnit.SECONDS.toNanos(1000));
+
+    @Test
+    void successesOutsideTheWindowAreNotCounted() {
+        var budget = budget();
+        for (var i = 0; i < 100; i++) {
+            budget.recordSuccess();
+        }
+
+        // past the window, with the bucket of the successes not reused since
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(15));
+        assertEquals(0, retries(budget));
+    }
+
+    @Test
+    void successesWithinTheWindowAreCounted() {
+        var budget = budget();
+        for (var i = 0; i < 100; i++) {
+            budget.recordSuccess();
+        }
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertEquals(10, retries(budget));
+    }
+
+    private RetryBudget budget() {
+        var properties = new DownstreamRetryProperties();
+        properties.setBudgetPercent(10);
+        properties.setBudgetMinRetriesPerSecond(0);
+        properties.setBudgetWindow(Duration.ofSeconds(10));
+        return new RetryBudget("moviesinfo", properties, new SimpleMeterRegistry(), nanos::get);
+    }
+
+    private int retries(RetryBudget budget) {
+        var retries = 0;
+        while (retries < 1000 && budget.tryRetry()) {
+            retries++;
+        }
+        return retries;
+    }
+}